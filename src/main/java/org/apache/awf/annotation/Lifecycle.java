@@ -0,0 +1,62 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.apache.awf.web.handler.RequestHandler;
+
+/**
+ * Annotation used by implementations of {@link RequestHandler} to choose how
+ * instances serving requests are obtained from the registered one. Handlers
+ * without it are cloned for every request.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Lifecycle {
+
+    Scope value();
+
+    /**
+     * The number of idle instances kept per thread by {@link Scope#POOLED}.
+     */
+    int poolSize() default 64;
+
+    enum Scope {
+
+        /** A clone of the registered instance per request. */
+        CLONE,
+
+        /** The registered instance serves every request. */
+        SINGLETON,
+
+        /** One clone per thread, i.e. per <code>IOLoop</code>. */
+        PER_IOLOOP,
+
+        /**
+         * Clones kept in a per thread pool, taken for a request and returned
+         * when its response is finished.
+         */
+        POOLED
+    }
+}
@@ -23,6 +23,7 @@ import java.util.Map;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import org.apache.awf.io.IOLoopBalancer;
 import org.apache.awf.web.HttpServer;
 import org.apache.awf.web.handler.RequestHandler;
 
@@ -53,6 +54,55 @@ public class Configuration {
      */
     private boolean createETags;
 
+    /**
+     * Indicates whether each <code>IOLoop</code> should get its own
+     * <code>SO_REUSEPORT</code> listening socket.
+     */
+    private boolean reusePort;
+
+    /**
+     * Balancer used by a dedicated acceptor <code>IOLoop</code>, or
+     * <code>null</code> if every <code>IOLoop</code> accepts by itself.
+     */
+    private IOLoopBalancer acceptorBalancer;
+
+    /**
+     * Indicates whether the <code>IOLoop</code>s use a hashed timing wheel for
+     * their timeouts.
+     */
+    private boolean hashedWheelTimeouts;
+
+    /**
+     * Maximum total size in bytes of cached static files, 0 to disable the
+     * cache.
+     */
+    private long staticCacheSize;
+
+    /**
+     * Maximum size in bytes of a single cached static file.
+     */
+    private int staticCacheMaxFileSize = 64 * 1024;
+
+    /**
+     * Maximum size in bytes of a memory-mapped static file, 0 to never map.
+     */
+    private long staticCacheMaxMappedFileSize;
+
+    /**
+     * Indicates whether precompressed sidecars of static files should be sent.
+     */
+    private boolean staticPrecompressed;
+
+    /**
+     * Indicates whether dynamic responses should be compressed on the fly.
+     */
+    private boolean compressResponses;
+
+    /**
+     * Minimum size in bytes of a response body to compress.
+     */
+    private int compressionThreshold = 1024;
+
     /**
      * Contains manually mapped handlers
      */
@@ -143,4 +193,214 @@ public class Configuration {
         this.createETags = createETags;
         return this;
     }
+
+    /**
+     * Determine whether a multi-threaded <code>HttpServer</code> should open one
+     * <code>SO_REUSEPORT</code> listening socket per <code>IOLoop</code>.
+     * 
+     * @return <code>true</code> if so; <code>false</code> otherwise.
+     */
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Set whether a multi-threaded <code>HttpServer</code> should open one
+     * <code>SO_REUSEPORT</code> listening socket per <code>IOLoop</code>, and
+     * let the kernel balance new connections between them. Only supported on
+     * Linux (running Java 9 or later), elsewhere the server falls back to a
+     * single listening socket shared by all <code>IOLoop</code>s.
+     * 
+     * @param reusePort <code>true</code> to open a socket per
+     *            <code>IOLoop</code>; <code>false</code> otherwise.
+     */
+    public Configuration setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+        return this;
+    }
+
+    /**
+     * Retrieve the {@link IOLoopBalancer} used by the dedicated acceptor
+     * <code>IOLoop</code> of a multi-threaded <code>HttpServer</code>.
+     * 
+     * @return the balancer, or <code>null</code> if no dedicated acceptor is
+     *         used.
+     */
+    public IOLoopBalancer getAcceptorBalancer() {
+        return acceptorBalancer;
+    }
+
+    /**
+     * Set the {@link IOLoopBalancer} of a dedicated acceptor
+     * <code>IOLoop</code>. When set, a multi-threaded <code>HttpServer</code>
+     * runs one extra <code>IOLoop</code> that only accepts new connections and
+     * hands them to the worker <code>IOLoop</code> picked by the balancer
+     * (see {@link org.apache.awf.io.IOLoopBalancers}). Takes precedence over
+     * {@link #setReusePort(boolean)}.
+     * 
+     * @param acceptorBalancer the balancer, or <code>null</code> to let every
+     *            <code>IOLoop</code> accept by itself.
+     */
+    public Configuration setAcceptorBalancer(IOLoopBalancer acceptorBalancer) {
+        this.acceptorBalancer = acceptorBalancer;
+        return this;
+    }
+
+    /**
+     * Determine whether the <code>IOLoop</code>s of the
+     * <code>HttpServer</code> use a hashed timing wheel for their timeouts.
+     * 
+     * @return <code>true</code> if they do; <code>false</code> otherwise.
+     */
+    public boolean isHashedWheelTimeouts() {
+        return hashedWheelTimeouts;
+    }
+
+    /**
+     * Set whether the <code>IOLoop</code>s of the <code>HttpServer</code> use
+     * a {@link org.apache.awf.io.timeout.HashedWheelTimeoutManager}, which
+     * adds, prolongs and cancels timeouts in constant time, instead of the
+     * default sorted timeout queue. Recommended for servers with many
+     * keep-alive connections.
+     * 
+     * @param hashedWheelTimeouts <code>true</code> to use a timing wheel;
+     *            <code>false</code> otherwise.
+     */
+    public Configuration setHashedWheelTimeouts(boolean hashedWheelTimeouts) {
+        this.hashedWheelTimeouts = hashedWheelTimeouts;
+        return this;
+    }
+
+    /**
+     * Retrieve the maximum total size in bytes of static files kept in memory.
+     * 
+     * @return the size, or 0 if static files are not cached.
+     */
+    public long getStaticCacheSize() {
+        return staticCacheSize;
+    }
+
+    /**
+     * Set the maximum total size in bytes of static files kept in memory by
+     * the {@link org.apache.awf.web.handler.StaticContentHandler}. Least
+     * recently used files are evicted first.
+     * 
+     * @param staticCacheSize the size, or 0 to disable the cache.
+     */
+    public Configuration setStaticCacheSize(long staticCacheSize) {
+        this.staticCacheSize = staticCacheSize;
+        return this;
+    }
+
+    /**
+     * Retrieve the maximum size in bytes of a single cached static file.
+     * 
+     * @return the size; larger files are always read from disk.
+     */
+    public int getStaticCacheMaxFileSize() {
+        return staticCacheMaxFileSize;
+    }
+
+    /**
+     * Set the maximum size in bytes of a single cached static file. Defaults
+     * to 64 KB.
+     * 
+     * @param staticCacheMaxFileSize the size; larger files are always read
+     *            from disk.
+     */
+    public Configuration setStaticCacheMaxFileSize(int staticCacheMaxFileSize) {
+        this.staticCacheMaxFileSize = staticCacheMaxFileSize;
+        return this;
+    }
+
+    /**
+     * Retrieve the maximum size in bytes of a memory-mapped static file.
+     * 
+     * @return the size, or 0 if files are never mapped.
+     */
+    public long getStaticCacheMaxMappedFileSize() {
+        return staticCacheMaxMappedFileSize;
+    }
+
+    /**
+     * Set the maximum size in bytes of a memory-mapped static file. Files
+     * larger than {@link #getStaticCacheMaxFileSize()} but not larger than
+     * this are mapped once and shared by all connections; larger files are
+     * sent from disk with <code>FileChannel.transferTo</code>. Mapped files
+     * count towards {@link #getStaticCacheSize()}.
+     * 
+     * @param staticCacheMaxMappedFileSize the size, or 0 to never map files.
+     */
+    public Configuration setStaticCacheMaxMappedFileSize(long staticCacheMaxMappedFileSize) {
+        this.staticCacheMaxMappedFileSize = staticCacheMaxMappedFileSize;
+        return this;
+    }
+
+    /**
+     * Determine whether precompressed sidecars of static files are sent.
+     * 
+     * @return <code>true</code> if they are; <code>false</code> otherwise.
+     */
+    public boolean isStaticPrecompressed() {
+        return staticPrecompressed;
+    }
+
+    /**
+     * Set whether a precompressed sidecar of a static file, e.g. "app.js.br"
+     * (Brotli) or "app.js.gz" (gzip) for "app.js", is sent with the matching
+     * "Content-Encoding" when the client accepts it and the sidecar is not
+     * older than the file.
+     * 
+     * @param staticPrecompressed <code>true</code> to send sidecars;
+     *            <code>false</code> otherwise.
+     */
+    public Configuration setStaticPrecompressed(boolean staticPrecompressed) {
+        this.staticPrecompressed = staticPrecompressed;
+        return this;
+    }
+
+    /**
+     * Determine whether responses are compressed on the fly.
+     * 
+     * @return <code>true</code> if they are; <code>false</code> otherwise.
+     */
+    public boolean isCompressResponses() {
+        return compressResponses;
+    }
+
+    /**
+     * Set whether responses are compressed on the fly, with gzip (or deflate)
+     * as allowed by the request's "Accept-Encoding", and sent with the chunked
+     * transfer coding. Only HTTP/1.1 responses whose body is at least
+     * {@link #getCompressionThreshold()} bytes when the headers are sent, and
+     * that have neither a "Content-Length" nor a "Content-Encoding" set by
+     * the handler, are compressed; static files never are.
+     * 
+     * @param compressResponses <code>true</code> to compress responses;
+     *            <code>false</code> otherwise.
+     */
+    public Configuration setCompressResponses(boolean compressResponses) {
+        this.compressResponses = compressResponses;
+        return this;
+    }
+
+    /**
+     * Retrieve the minimum size in bytes of a response body to compress.
+     * 
+     * @return the size.
+     */
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Set the minimum size in bytes of a response body to compress. Defaults
+     * to 1 KB, smaller bodies gain little and cost a deflater.
+     * 
+     * @param compressionThreshold the size.
+     */
+    public Configuration setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
 }
@@ -30,9 +30,10 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.UnresolvedAddressException;
 
+import org.apache.awf.io.buffer.CompositeByteBuffer;
 import org.apache.awf.io.buffer.DynamicByteBuffer;
+import org.apache.awf.util.ByteScanner;
 import org.apache.awf.util.Closeables;
-import org.apache.awf.util.KnuthMorrisPrattAlgorithm;
 import org.apache.awf.util.NopAsyncResult;
 import org.apache.awf.web.AsyncCallback;
 import org.apache.awf.web.AsyncResult;
@@ -47,7 +48,6 @@ public class AsynchronousSocket implements IOHandler {
 
     private static final int DEFAULT_BYTEBUFFER_SIZE = 1024;
     private static final int DEFAULT_INITIAL_READ_BYTEBUFFER_SIZE = 1024;
-    private static final int DEFAULT_INITIAL_WRITE_BYTEBUFFER_SIZE = 1024;
 
     private final AsyncResult<byte[]> nopAsyncByteArrayResult = NopAsyncResult.of(byte[].class).nopAsyncResult;
     private final AsyncResult<Boolean> nopAsyncBooleanResult = NopAsyncResult.of(Boolean.class).nopAsyncResult;
@@ -56,6 +56,8 @@ public class AsynchronousSocket implements IOHandler {
     private int interestOps;
 
     private byte[] readDelimiter = "".getBytes();
+    /** Bytes of the read buffer already searched for the read delimiter. */
+    private int scanned = 0;
     private int readBytes = Integer.MAX_VALUE;
 
     private AsyncResult<Boolean> connectCallback = nopAsyncBooleanResult;
@@ -64,7 +66,7 @@ public class AsynchronousSocket implements IOHandler {
     private AsyncCallback writeCallback = AsyncCallback.nopCb;
 
     private final DynamicByteBuffer readBuffer = DynamicByteBuffer.allocate(DEFAULT_INITIAL_READ_BYTEBUFFER_SIZE);
-    private final DynamicByteBuffer writeBuffer = DynamicByteBuffer.allocate(DEFAULT_INITIAL_WRITE_BYTEBUFFER_SIZE);
+    private final CompositeByteBuffer writeBuffer;
 
     private boolean reachedEOF = false;
     
@@ -113,6 +115,7 @@ public class AsynchronousSocket implements IOHandler {
     public AsynchronousSocket(IOLoop ioLoop, SocketChannel channel) {
         this.ioLoop = ioLoop;
         this.channel = channel;
+        writeBuffer = new CompositeByteBuffer(ioLoop.getDirectBufferPool());
         try {
             channel.configureBlocking(false);
         } catch (IOException e) {
@@ -151,6 +154,7 @@ public class AsynchronousSocket implements IOHandler {
      */
     public void close() {
         Closeables.closeQuietly(ioLoop, channel);
+        writeBuffer.release();
         invokeCloseCallback();
     }
 
@@ -196,29 +200,32 @@ public class AsynchronousSocket implements IOHandler {
     @Override
     public void handleRead(SelectionKey key) throws IOException {
         logger.debug("handle read...");
-        ByteBuffer buffer = ByteBuffer.allocate(DEFAULT_BYTEBUFFER_SIZE);
-        // TODO RS 110723 reuse byte buffers
+        ByteBuffer buffer = ioLoop.getBufferPool().acquire(DEFAULT_BYTEBUFFER_SIZE);
         int read = 0;
         try {
             read = channel.read(buffer);
+            buffer.flip();
+            if (read > 0) {
+                readBuffer.put(buffer);
+            }
         } catch (IOException e) {
             logger.error("IOException during read: {}", e.getMessage());
             invokeCloseCallback();
             Closeables.closeQuietly(ioLoop, channel);
             return;
+        } finally {
+            ioLoop.getBufferPool().release(buffer);
         }
 
         if (read == -1) { // EOF
             reachedEOF = true;
             ioLoop.updateHandler(channel, interestOps &= ~SelectionKey.OP_READ);
-            if (writeBuffer.position() == 0) {
+            if (!writeBuffer.hasRemaining()) {
                 invokeCloseCallback();
             }
 
             return;
         }
-        buffer.flip();
-        readBuffer.put(buffer);
         logger.debug("readBuffer size: {}", readBuffer.position());
         checkReadState();
     }
@@ -237,8 +244,11 @@ public class AsynchronousSocket implements IOHandler {
      * When it its, the given AsyncResult will be invoked.
      */
     public void readUntil(byte[] delimiter, AsyncResult<byte[]> rcb) {
-        logger.debug("readUntil delimiter: {}", new String(delimiter));
+        if (logger.isDebugEnabled()) {
+            logger.debug("readUntil delimiter: {}", new String(delimiter));
+        }
         readDelimiter = delimiter;
+        scanned = 0;
         readCallback = rcb;
         checkReadState();
     }
@@ -265,8 +275,15 @@ public class AsynchronousSocket implements IOHandler {
             invokeReadFailureCallback(new EOFException("Reached end-of-stream"));
             return;
         }
-        int index = KnuthMorrisPrattAlgorithm.indexOf(readBuffer.array(), 0, readBuffer.position(), readDelimiter);
-        if (index != -1 && readDelimiter.length > 0) {
+        int index = -1;
+        if (readDelimiter.length > 0) {
+            // resume where the last search stopped, a delimiter might have
+            // been cut by the previous read
+            int from = Math.max(0, scanned - readDelimiter.length + 1);
+            index = ByteScanner.indexOf(readBuffer.getByteBuffer(), from, readBuffer.position(), readDelimiter);
+            scanned = readBuffer.position();
+        }
+        if (index != -1) {
             byte[] result = getResult(index, readDelimiter.length);
             readDelimiter = "".getBytes();
             invokeReadSuccessfulCallback(result);
@@ -295,6 +312,7 @@ public class AsynchronousSocket implements IOHandler {
         // "delete" the result data (data after result is left intact and will
         // not be overwritten)
         readBuffer.compact();
+        scanned = 0;
         logger.debug("readBuffer size: {}", readBuffer.position());
         return result;
     }
@@ -341,9 +359,11 @@ public class AsynchronousSocket implements IOHandler {
      * is successfully transmitted, the given AsyncCallback will be invoked
      */
     public void write(byte[] data, AsyncCallback wcb) {
-        logger.debug("write data: {}", new String(data));
+        if (logger.isDebugEnabled()) {
+            logger.debug("write data: {}", new String(data));
+        }
         writeBuffer.put(data);
-        logger.debug("writeBuffer size: {}", writeBuffer.position());
+        logger.debug("writeBuffer size: {}", writeBuffer.size());
         writeCallback = wcb;
         doWrite();
     }
@@ -353,23 +373,22 @@ public class AsynchronousSocket implements IOHandler {
      * finished => invoke writeCallback
      */
     private void doWrite() {
-        int written = 0;
+        long written = 0;
         try {
             if (channel.isConnected()) {
-                writeBuffer.flip(); // prepare for write
-                written = channel.write(writeBuffer.getByteBuffer());
-                // make room for more data be "read" in
-                writeBuffer.compact();
+                // gathering write, written segments go back to the pool
+                written = writeBuffer.writeTo(channel);
             }
         } catch (IOException e) {
             logger.error("IOException during write: {}", e.getMessage());
             invokeCloseCallback();
             Closeables.closeQuietly(ioLoop, channel);
+            writeBuffer.release();
             return;
         }
         logger.debug("wrote: {} bytes", written);
-        logger.debug("writeBuffer size: {}", writeBuffer.position());
-        if (writeBuffer.position() > 0) {
+        logger.debug("writeBuffer size: {}", writeBuffer.size());
+        if (writeBuffer.hasRemaining()) {
             ioLoop.updateHandler(channel, interestOps |= SelectionKey.OP_WRITE);
         } else {
             ioLoop.updateHandler(channel, interestOps &= ~SelectionKey.OP_WRITE);
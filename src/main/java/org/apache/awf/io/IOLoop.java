@@ -35,8 +35,9 @@ import java.util.concurrent.atomic.AtomicInteger;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import org.apache.awf.io.buffer.ByteBufferPool;
 import org.apache.awf.io.callback.CallbackManager;
-import org.apache.awf.io.callback.JMXDebuggableCallbackManager;
+import org.apache.awf.io.callback.RingBufferCallbackManager;
 import org.apache.awf.io.timeout.JMXDebuggableTimeoutManager;
 import org.apache.awf.io.timeout.Timeout;
 import org.apache.awf.io.timeout.TimeoutManager;
@@ -65,8 +66,15 @@ public class IOLoop implements IOLoopMXBean {
 
     private final Map<SelectableChannel, IOHandler> handlers = Maps.newHashMap();
 
-    private final TimeoutManager tm = new JMXDebuggableTimeoutManager();
-    private final CallbackManager cm = new JMXDebuggableCallbackManager();
+    /** Client connections assigned to this IOLoop that are not closed yet. */
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private TimeoutManager tm;
+    private final CallbackManager cm;
+
+    private final ByteBufferPool bufferPool = new ByteBufferPool();
+    private final ByteBufferPool directBufferPool = new ByteBufferPool(ByteBufferPool.DEFAULT_MIN_SIZE,
+            ByteBufferPool.DEFAULT_MAX_SIZE, ByteBufferPool.DEFAULT_MAX_POOLED, true);
 
     private final int ID;
 
@@ -74,11 +82,24 @@ public class IOLoop implements IOLoopMXBean {
 
 
     public IOLoop() {
+        this(new JMXDebuggableTimeoutManager());
+    }
+
+    /**
+     * Creates a new {@code IOLoop} that will use the given {@code TimeoutManager}
+     * (e.g. a {@link org.apache.awf.io.timeout.HashedWheelTimeoutManager} for servers with many keep-alive
+     * connections).
+     * 
+     * @param tm the {@code TimeoutManager} that will be owned by this IOLoop.
+     */
+    public IOLoop(TimeoutManager tm) {
+        this.tm = tm;
         try {
             selector = Selector.open();
         } catch (IOException e) {
             logger.error("Could not open selector: {}", e.getMessage());
         }
+        cm = new RingBufferCallbackManager(selector);
         ID = sequence.incrementAndGet();
         MXBeanUtil.registerMXBean(this, "IOLoop",this.getClass().getSimpleName()+"-"+ID);
     }
@@ -176,6 +197,39 @@ public class IOLoop implements IOLoopMXBean {
         return registerChannel(channel, interestOps, attachment);
     }
 
+    /**
+     * The pool of read buffers owned by this {@code IOLoop}. Must only be used
+     * from the thread running this {@code IOLoop}.
+     */
+    public ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * The pool of direct (off-heap) buffers owned by this {@code IOLoop}, e.g.
+     * for the segments of write buffers. Must only be used from the thread
+     * running this {@code IOLoop}.
+     */
+    public ByteBufferPool getDirectBufferPool() {
+        return directBufferPool;
+    }
+
+    /**
+     * Thread safe variant of {@link #addHandler}. The registration is queued
+     * (see {@link #addCallback}) and performed by the thread running this
+     * {@code IOLoop} during its next iteration.
+     */
+    public void queueHandler(final SelectableChannel channel, final IOHandler handler, final int interestOps,
+            final Object attachment) {
+        addCallback(new AsyncCallback() {
+
+            @Override
+            public void onCallback() {
+                addHandler(channel, handler, interestOps, attachment);
+            }
+        });
+    }
+
     /**
      * Unregisters the previously registered {@code IOHandler}.
      * 
@@ -184,6 +238,7 @@ public class IOLoop implements IOLoopMXBean {
      */
     public void removeHandler(SelectableChannel channel) {
         handlers.remove(channel);
+        tm.cancelKeepAliveTimeout(channel);
     }
 
     /**
@@ -225,6 +280,30 @@ public class IOLoop implements IOLoopMXBean {
         return tm.hasKeepAliveTimeout(channel);
     }
 
+    /**
+     * Marks the given channel as active so that its keep-alive timeout will be
+     * prolonged (lazily, when it fires) instead of closing the channel.
+     * 
+     * @return false if the channel has no keep-alive timeout.
+     */
+    public boolean touchKeepAliveTimeout(SelectableChannel channel) {
+        return tm.touchKeepAliveTimeout(channel);
+    }
+
+    /**
+     * Replaces the {@code TimeoutManager} of this IOLoop, e.g. of
+     * {@link #INSTANCE}. Must be invoked before the IOLoop is started, from
+     * the thread that starts it, while no timeout is scheduled.
+     * 
+     * @throws IllegalStateException if the IOLoop is running.
+     */
+    public void setTimeoutManager(TimeoutManager tm) {
+        if (running) {
+            throw new IllegalStateException("Can not replace the TimeoutManager of a running IOLoop");
+        }
+        this.tm = tm;
+    }
+
     public void addTimeout(Timeout timeout) {
         tm.addTimeout(timeout);
     }
@@ -244,6 +323,32 @@ public class IOLoop implements IOLoopMXBean {
         return handlers.size();
     }
 
+    /**
+     * The number of client connections assigned to this {@code IOLoop} (see
+     * {@link #connectionAssigned()}) that are not closed yet. Unlike
+     * {@link #getNumberOfRegisteredIOHandlers()} it may be read from any
+     * thread, and includes connections handed over but not registered yet.
+     */
+    @Override
+    public int getNumberOfConnections() {
+        return connections.get();
+    }
+
+    /**
+     * Counts a client connection handed over to this {@code IOLoop}. May be
+     * invoked from any thread.
+     */
+    public void connectionAssigned() {
+        connections.incrementAndGet();
+    }
+
+    /**
+     * Counts a client connection of this {@code IOLoop} that is closed.
+     */
+    public void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
     @Override
     public List<String> getRegisteredIOHandlers() {
         Map<SelectableChannel, IOHandler> defensive = new HashMap<SelectableChannel, IOHandler>(handlers);
@@ -0,0 +1,106 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.io;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Factory methods for the provided {@link IOLoopBalancer}s. The returned
+ * instances are not thread safe and are intended to be used by a single
+ * acceptor thread.
+ */
+public class IOLoopBalancers {
+
+    private IOLoopBalancers() {
+    }
+
+    /**
+     * Hands connections to the {@code IOLoop}s in turn.
+     */
+    public static IOLoopBalancer roundRobin() {
+        return new IOLoopBalancer() {
+
+            private int next = 0;
+
+            @Override
+            public IOLoop select(List<IOLoop> ioLoops) {
+                if (next >= ioLoops.size()) {
+                    next = 0;
+                }
+                return ioLoops.get(next++);
+            }
+        };
+    }
+
+    /**
+     * Hands connections to the {@code IOLoop} with the fewest open connections
+     * (see {@link IOLoop#getNumberOfConnections()}).
+     */
+    public static IOLoopBalancer leastConnections() {
+        return new IOLoopBalancer() {
+
+            @Override
+            public IOLoop select(List<IOLoop> ioLoops) {
+                IOLoop selected = ioLoops.get(0);
+                int min = selected.getNumberOfConnections();
+                for (int i = 1; i < ioLoops.size(); i++) {
+                    IOLoop candidate = ioLoops.get(i);
+                    int load = candidate.getNumberOfConnections();
+                    if (load < min) {
+                        selected = candidate;
+                        min = load;
+                    }
+                }
+                return selected;
+            }
+        };
+    }
+
+    /**
+     * Picks two {@code IOLoop}s at random and hands the connection to the one
+     * with the fewest open connections ("power of two choices").
+     * Almost as even as {@link #leastConnections()} but without looking at
+     * every {@code IOLoop}.
+     */
+    public static IOLoopBalancer randomOfTwo() {
+        return new IOLoopBalancer() {
+
+            private final Random random = new Random();
+
+            @Override
+            public IOLoop select(List<IOLoop> ioLoops) {
+                int size = ioLoops.size();
+                if (size == 1) {
+                    return ioLoops.get(0);
+                }
+                int first = random.nextInt(size);
+                int second = random.nextInt(size - 1);
+                if (second >= first) {
+                    second++; // two distinct IOLoops
+                }
+                IOLoop a = ioLoops.get(first);
+                IOLoop b = ioLoops.get(second);
+                return a.getNumberOfConnections() <= b.getNumberOfConnections() ? a : b;
+            }
+        };
+    }
+
+}
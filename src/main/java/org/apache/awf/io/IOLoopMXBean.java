@@ -25,6 +25,8 @@ public interface IOLoopMXBean {
 
     int getNumberOfRegisteredIOHandlers();
 
+    int getNumberOfConnections();
+
     List<String> getRegisteredIOHandlers();
 
 }
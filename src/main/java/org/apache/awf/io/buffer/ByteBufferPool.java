@@ -0,0 +1,166 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.io.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of heap (or direct) {@code ByteBuffer}s organised in power of two size classes.
+ * Buffers are meant to be borrowed for the duration of a single io event
+ * (e.g. one {@code read}) and released right after, so that idle connections
+ * do not hold on to a buffer of their own.
+ * <p>
+ * A {@code ByteBufferPool} is not thread safe. Every {@code IOLoop} owns one
+ * (see {@code IOLoop#getBufferPool()}) that must only be used from the
+ * {@code IOLoop} thread.
+ * <p>
+ * Direct buffers are expensive to allocate and free, so a direct pool (see
+ * {@code IOLoop#getDirectBufferPool()}) is the cheapest way to use them for
+ * short-lived data.
+ */
+public class ByteBufferPool {
+
+	public static final int DEFAULT_MIN_SIZE = 1024;
+	public static final int DEFAULT_MAX_SIZE = 64 * 1024;
+	public static final int DEFAULT_MAX_POOLED = 64;
+
+	private final int minSize;
+	private final int maxSize;
+	private final int maxPooled;
+	private final int minShift;
+	private final boolean direct;
+
+	/** One free list per size class, smallest first. */
+	private final List<ArrayDeque<ByteBuffer>> classes;
+
+	public ByteBufferPool() {
+		this(DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_MAX_POOLED);
+	}
+
+	/**
+	 * @param minSize size of the smallest size class (a power of two)
+	 * @param maxSize size of the largest size class (a power of two), larger
+	 *            requests are allocated but never pooled
+	 * @param maxPooled maximum number of idle buffers kept per size class
+	 */
+	public ByteBufferPool(int minSize, int maxSize, int maxPooled) {
+		this(minSize, maxSize, maxPooled, false);
+	}
+
+	/**
+	 * @param minSize size of the smallest size class (a power of two)
+	 * @param maxSize size of the largest size class (a power of two), larger
+	 *            requests are allocated but never pooled
+	 * @param maxPooled maximum number of idle buffers kept per size class
+	 * @param direct {@code true} to pool direct (off-heap) buffers
+	 */
+	public ByteBufferPool(int minSize, int maxSize, int maxPooled, boolean direct) {
+		if (Integer.bitCount(minSize) != 1 || Integer.bitCount(maxSize) != 1 || minSize > maxSize) {
+			throw new IllegalArgumentException("Size classes must be powers of two (min: " + minSize + ", max: "
+					+ maxSize + ")");
+		}
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.maxPooled = maxPooled;
+		this.direct = direct;
+		this.minShift = Integer.numberOfTrailingZeros(minSize);
+		int n = Integer.numberOfTrailingZeros(maxSize) - minShift + 1;
+		classes = new ArrayList<ArrayDeque<ByteBuffer>>(n);
+		for (int i = 0; i < n; i++) {
+			classes.add(new ArrayDeque<ByteBuffer>());
+		}
+	}
+
+	/**
+	 * Borrow a cleared buffer with a capacity of at least {@code capacity}
+	 * bytes (rounded up to the next size class). Should be returned with
+	 * {@link #release(ByteBuffer)} once the caller is done with it.
+	 */
+	public ByteBuffer acquire(int capacity) {
+		if (capacity > maxSize) {
+			return allocate(capacity);
+		}
+		int size = sizeClass(capacity);
+		ByteBuffer buffer = classes.get(indexOf(size)).pollFirst();
+		if (buffer == null) {
+			return allocate(size);
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Return a buffer previously borrowed with {@link #acquire(int)}. The
+	 * caller must not use the buffer afterwards. Buffers that do not belong to
+	 * a size class, and buffers exceeding the pool limit, are dropped (and
+	 * freed, if direct).
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer == null || buffer.isDirect() != direct || buffer.isReadOnly()) {
+			return;
+		}
+		int capacity = buffer.capacity();
+		if (capacity >= minSize && capacity <= maxSize && Integer.bitCount(capacity) == 1) {
+			ArrayDeque<ByteBuffer> free = classes.get(indexOf(capacity));
+			if (free.size() < maxPooled) {
+				free.addFirst(buffer); // LIFO, the most recently used buffer is likely still cached
+				return;
+			}
+		}
+		DirectBuffers.free(buffer);
+	}
+
+	/**
+	 * @return {@code true} if this pool hands out direct buffers.
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * @return the number of idle buffers currently held by this pool.
+	 */
+	public int getNumberOfPooledBuffers() {
+		int n = 0;
+		for (ArrayDeque<ByteBuffer> free : classes) {
+			n += free.size();
+		}
+		return n;
+	}
+
+	private ByteBuffer allocate(int capacity) {
+		return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+	}
+
+	private int sizeClass(int capacity) {
+		if (capacity <= minSize) {
+			return minSize;
+		}
+		return Integer.highestOneBit(capacity - 1) << 1;
+	}
+
+	private int indexOf(int size) {
+		return Integer.numberOfTrailingZeros(size) - minShift;
+	}
+
+}
@@ -0,0 +1,298 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.io.buffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * A growable buffer made of a list of fixed-size segments borrowed from a
+ * {@link ByteBufferPool}. Unlike {@link DynamicByteBuffer} it never
+ * reallocates: appending adds a segment once the last one is full, prepending
+ * inserts a segment in front, and the content is written to a channel with a
+ * single gathering write. Segments are returned to the pool as soon as they
+ * have been written.
+ * <p>
+ * Like the pool it borrows from, a {@code CompositeByteBuffer} is not thread
+ * safe.
+ */
+public class CompositeByteBuffer {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 4096;
+
+	private final ByteBufferPool pool;
+	private final int segmentSize;
+
+	/** Segments ready to be written (position/limit delimit their content), in order. */
+	private final ArrayDeque<Segment> segments = new ArrayDeque<Segment>();
+
+	/** The segment currently appended to (in "write mode"), or null. */
+	private ByteBuffer tail;
+
+	/** Number of bytes not yet written. */
+	private long size;
+
+	private static final class Segment {
+
+		final ByteBuffer buffer;
+		final boolean pooled;
+		/** Run once the segment is written or discarded, or null. */
+		final Runnable onRelease;
+
+		Segment(ByteBuffer buffer, boolean pooled) {
+			this(buffer, pooled, null);
+		}
+
+		Segment(ByteBuffer buffer, boolean pooled, Runnable onRelease) {
+			this.buffer = buffer;
+			this.pooled = pooled;
+			this.onRelease = onRelease;
+		}
+	}
+
+	public CompositeByteBuffer(ByteBufferPool pool) {
+		this(pool, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param pool the pool segments are borrowed from and returned to
+	 * @param segmentSize the capacity of each segment
+	 */
+	public CompositeByteBuffer(ByteBufferPool pool, int segmentSize) {
+		this.pool = pool;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Append the data.
+	 */
+	public void put(byte[] src) {
+		put(src, 0, src.length);
+	}
+
+	/**
+	 * Append count bytes of the given array starting at offset.
+	 */
+	public void put(byte[] src, int offset, int count) {
+		size += count;
+		while (count > 0) {
+			ByteBuffer segment = writableTail();
+			int n = Math.min(count, segment.remaining());
+			segment.put(src, offset, n);
+			offset += n;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Append the remaining bytes of the given src (advancing its position).
+	 */
+	public void put(ByteBuffer src) {
+		size += src.remaining();
+		int limit = src.limit();
+		while (src.hasRemaining()) {
+			ByteBuffer segment = writableTail();
+			src.limit(src.position() + Math.min(src.remaining(), segment.remaining()));
+			segment.put(src);
+			src.limit(limit);
+		}
+	}
+
+	/**
+	 * Append the remaining bytes of the given buffer without copying anything.
+	 * The buffer is owned by this {@code CompositeByteBuffer} afterwards and
+	 * must not be modified.
+	 */
+	public void append(ByteBuffer data) {
+		append(data, null);
+	}
+
+	/**
+	 * Like {@link #append(ByteBuffer)}, and runs the given callback (if not
+	 * null) as soon as the data has been written completely or discarded, e.g.
+	 * to release a shared buffer.
+	 */
+	public void append(ByteBuffer data, Runnable onRelease) {
+		sealTail();
+		size += data.remaining();
+		segments.addLast(new Segment(data, false, onRelease));
+	}
+
+	/**
+	 * Move the content of the given {@code CompositeByteBuffer}, borrowed from
+	 * the same pool, to the end of this one without copying anything. The
+	 * given one is left empty.
+	 */
+	public void append(CompositeByteBuffer other) {
+		sealTail();
+		other.sealTail();
+		size += other.size;
+		segments.addAll(other.segments);
+		other.segments.clear();
+		other.size = 0;
+	}
+
+	/**
+	 * Insert the remaining bytes of the given buffer in front of the current
+	 * content without copying anything. The buffer is owned by this
+	 * {@code CompositeByteBuffer} afterwards and must not be modified.
+	 */
+	public void prepend(ByteBuffer data) {
+		size += data.remaining();
+		segments.addFirst(new Segment(data, false));
+	}
+
+	/**
+	 * Insert a copy of the remaining bytes of the given src (advancing its
+	 * position) in front of the current content. The copy is made into
+	 * segments borrowed from the pool, so the src can be reused right away.
+	 */
+	public void prependCopyOf(ByteBuffer src) {
+		ArrayDeque<Segment> copies = new ArrayDeque<Segment>(2);
+		int limit = src.limit();
+		while (src.hasRemaining()) {
+			ByteBuffer segment = pool.acquire(segmentSize);
+			src.limit(src.position() + Math.min(src.remaining(), segment.remaining()));
+			segment.put(src);
+			src.limit(limit);
+			segment.flip();
+			copies.addFirst(new Segment(segment, true));
+		}
+		for (Segment copy : copies) {
+			size += copy.buffer.remaining();
+			segments.addFirst(copy);
+		}
+	}
+
+	/**
+	 * Write as much of the content as the channel accepts using a single
+	 * gathering write. Segments that have been written completely are returned
+	 * to the pool.
+	 * 
+	 * @return the number of bytes written
+	 */
+	public long writeTo(GatheringByteChannel channel) throws IOException {
+		sealTail();
+		ByteBuffer[] buffers = new ByteBuffer[segments.size()];
+		int i = 0;
+		for (Segment segment : segments) {
+			buffers[i++] = segment.buffer;
+		}
+		long written = channel.write(buffers);
+		size -= written;
+		while (!segments.isEmpty() && !segments.peekFirst().buffer.hasRemaining()) {
+			release(segments.pollFirst());
+		}
+		return written;
+	}
+
+	/**
+	 * @return the number of bytes not yet written.
+	 */
+	public long size() {
+		return size;
+	}
+
+	public boolean hasRemaining() {
+		return size > 0;
+	}
+
+	/**
+	 * Returns read only views of the content not yet written, in order. The
+	 * state of this {@code CompositeByteBuffer} is left unchanged.
+	 */
+	public ByteBuffer[] getByteBuffers() {
+		ByteBuffer[] views = new ByteBuffer[segments.size() + (tail != null ? 1 : 0)];
+		int i = 0;
+		for (Segment segment : segments) {
+			views[i++] = segment.buffer.asReadOnlyBuffer();
+		}
+		if (tail != null) {
+			ByteBuffer view = tail.asReadOnlyBuffer();
+			view.flip();
+			views[i] = view;
+		}
+		return views;
+	}
+
+	/**
+	 * Copies the content not yet written into a new array.
+	 */
+	public byte[] toByteArray() {
+		byte[] bytes = new byte[(int) size];
+		int offset = 0;
+		for (ByteBuffer view : getByteBuffers()) {
+			int n = view.remaining();
+			view.get(bytes, offset, n);
+			offset += n;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns all segments to the pool and discards the content. Callbacks of
+	 * appended buffers are run.
+	 */
+	public void release() {
+		for (Iterator<Segment> it = segments.iterator(); it.hasNext();) {
+			release(it.next());
+			it.remove();
+		}
+		if (tail != null) {
+			pool.release(tail);
+			tail = null;
+		}
+		size = 0;
+	}
+
+	private ByteBuffer writableTail() {
+		if (tail != null && !tail.hasRemaining()) {
+			sealTail();
+		}
+		if (tail == null) {
+			tail = pool.acquire(segmentSize);
+		}
+		return tail;
+	}
+
+	/** Moves the tail (if any) to the segments that are ready to be written. */
+	private void sealTail() {
+		if (tail != null && tail.position() == 0) {
+			pool.release(tail);
+			tail = null;
+		} else if (tail != null) {
+			tail.flip();
+			segments.addLast(new Segment(tail, true));
+			tail = null;
+		}
+	}
+
+	private void release(Segment segment) {
+		if (segment.pooled) {
+			pool.release(segment.buffer);
+		} else if (segment.onRelease != null) {
+			segment.onRelease.run();
+		}
+	}
+
+}
@@ -56,10 +56,21 @@ public class DynamicByteBuffer {
 	 * Append the bytes from the given src. Will reallocate if needed.
 	 */
 	public void put(ByteBuffer src) {
-		ensureCapacity(src.limit());
+		ensureCapacity(src.remaining());
 		backend.put(src);
 	}
 
+	/**
+	 * Append the next count bytes from the given src (advancing its position). Will reallocate if needed.
+	 */
+	public void put(ByteBuffer src, int count) {
+		ensureCapacity(count);
+		int limit = src.limit();
+		src.limit(src.position() + count);
+		backend.put(src);
+		src.limit(limit);
+	}
+
 
     /**
      * Append count bytes in the given byte array start at array position
@@ -78,11 +89,11 @@ public class DynamicByteBuffer {
 	public void prepend(String data) {
 		byte[] bytes = data.getBytes(Charsets.UTF_8);
 		int newSize = bytes.length + backend.position();
-		byte[] newBuffer = new byte[newSize];
-		System.arraycopy(bytes, 0, newBuffer, 0, bytes.length);	// initial line and headers
-		System.arraycopy(backend.array(), 0, newBuffer, bytes.length, backend.position()); // body
-		backend = ByteBuffer.wrap(newBuffer);
-		backend.position(newSize);
+		ByteBuffer newBuffer = ByteBuffer.allocate(newSize);
+		newBuffer.put(bytes);	// initial line and headers
+		backend.flip();
+		newBuffer.put(backend); // body
+		backend = newBuffer;
 	}
 
 	/**
@@ -101,14 +112,24 @@ public class DynamicByteBuffer {
 
 	// Preserves position.
 	private void reallocate(int newCapacity) {
-		int oldPosition = backend.position();
-		byte[] newBuffer = new byte[newCapacity];
-		System.arraycopy(backend.array(), 0, newBuffer, 0, backend.position());
-		backend = ByteBuffer.wrap(newBuffer);
-		backend.position(oldPosition);
+		ByteBuffer newBuffer = ByteBuffer.allocate(newCapacity);
+		backend.flip();
+		newBuffer.put(backend);
+		backend = newBuffer;
 		logger.debug("allocated new DynamicByteBufer, new capacity: {}", backend.capacity());
 	}
 
+	/**
+	 * Copies the bytes between 0 and the current position into a new array.
+	 */
+	public byte[] toByteArray() {
+		ByteBuffer view = backend.duplicate();
+		view.flip();
+		byte[] bytes = new byte[view.remaining()];
+		view.get(bytes);
+		return bytes;
+	}
+
 	/**
 	 * Returns the {@code ByteBuffer} that is used internally by this {@code DynamicByteBufer}.
 	 * Changes made to the returned {@code ByteBuffer} will be incur modifications in this {@code DynamicByteBufer}.
@@ -0,0 +1,169 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.io.callback;
+
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.awf.util.MXBeanUtil;
+import org.apache.awf.web.AsyncCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@code CallbackManager} backed by a bounded, array based,
+ * multi-producer/single-consumer ring buffer.
+ * <p>
+ * {@link #addCallback(AsyncCallback)} may be invoked from any thread and is
+ * lock-free. {@link #execute()} must only be invoked by the IOLoop thread; it
+ * drains the ring in place and executes at most {@code maxBatchSize} callbacks
+ * per invocation (callbacks added during the invocation are executed during the
+ * next one). The given {@code Selector} is woken up when the manager goes
+ * from empty to non-empty, so callbacks added from other threads are picked up
+ * immediately instead of after the select timeout.
+ * <p>
+ * Should the ring ever be full, callbacks are put on an unbounded overflow
+ * queue (executed after the ring is drained) rather than blocking the caller,
+ * which might be the IOLoop thread itself. Until the overflow queue is drained
+ * every new callback goes there too, so callbacks added by one thread are
+ * always executed in the order they were added.
+ */
+public class RingBufferCallbackManager implements CallbackManager, CallbackManagerMXBean {
+
+	private final Logger logger = LoggerFactory.getLogger(RingBufferCallbackManager.class);
+
+	public static final int DEFAULT_CAPACITY = 4096;
+	public static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+
+	private static final AtomicInteger sequence = new AtomicInteger();
+
+	private final Selector selector;
+	private final int maxBatchSize;
+
+	private final AtomicReferenceArray<AsyncCallback> ring;
+	private final int mask;
+	/** Next slot to be claimed by a producer. */
+	private final AtomicLong tail = new AtomicLong();
+	/** Next slot to be consumed. Only written by the IOLoop thread. */
+	private volatile long head = 0;
+
+	private final Queue<AsyncCallback> overflow = new ConcurrentLinkedQueue<AsyncCallback>();
+
+	/** Number of added but not yet executed callbacks (ring and overflow). */
+	private final AtomicInteger pending = new AtomicInteger();
+
+	public RingBufferCallbackManager(Selector selector) {
+		this(selector, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE);
+	}
+
+	/**
+	 * @param selector the {@code Selector} to wake up when the first callback is added, may be null.
+	 * @param capacity the ring capacity, rounded up to a power of two.
+	 * @param maxBatchSize the maximum number of callbacks executed per {@link #execute()} invocation.
+	 */
+	public RingBufferCallbackManager(Selector selector, int capacity, int maxBatchSize) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be greater than 0: " + capacity);
+		}
+		if (maxBatchSize <= 0) {
+			throw new IllegalArgumentException("maxBatchSize must be greater than 0: " + maxBatchSize);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.selector = selector;
+		this.maxBatchSize = maxBatchSize;
+		ring = new AtomicReferenceArray<AsyncCallback>(size);
+		mask = size - 1;
+		MXBeanUtil.registerMXBean(this, "CallbackManager", getClass().getSimpleName() + "-" + sequence.incrementAndGet());
+	}
+
+	@Override
+	public void addCallback(AsyncCallback callback) {
+		// never overtake a callback waiting in the overflow queue
+		if (!overflow.isEmpty() || !offer(callback)) {
+			overflow.add(callback);
+			logger.debug("Callback ring full, callback added to overflow queue");
+		}
+		if (pending.getAndIncrement() == 0 && selector != null) {
+			selector.wakeup();
+		}
+	}
+
+	private boolean offer(AsyncCallback callback) {
+		long t;
+		do {
+			t = tail.get();
+			if (t - head >= ring.length()) {
+				return false;
+			}
+		} while (!tail.compareAndSet(t, t + 1));
+		// the slot is claimed, publish the callback (the consumer waits for it to become non-null)
+		ring.lazySet((int) (t & mask), callback);
+		return true;
+	}
+
+	@Override
+	public boolean execute() {
+		int executed = 0;
+		try {
+			long h = head;
+			// callbacks added while executing are deferred to the next invocation (avoids IO starvation)
+			final long end = tail.get();
+			while (h < end && executed < maxBatchSize) {
+				int slot = (int) (h & mask);
+				AsyncCallback callback = ring.get(slot);
+				if (callback == null) {
+					break;	// empty, or claimed but not yet published
+				}
+				ring.lazySet(slot, null);
+				head = ++h;
+				executed++;
+				callback.onCallback();
+			}
+			while (executed < maxBatchSize && h == end) {
+				AsyncCallback callback = overflow.poll();
+				if (callback == null) {
+					break;
+				}
+				executed++;
+				callback.onCallback();
+			}
+		} finally {
+			if (executed > 0) {
+				logger.debug("{} callbacks executed", executed);
+				pending.addAndGet(-executed);
+			}
+		}
+		return pending.get() > 0;
+	}
+
+	// implements CallbackManagerMXBean
+	@Override
+	public int getNumberOfCallbacks() {
+		return pending.get();
+	}
+
+}
@@ -0,0 +1,329 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.io.timeout;
+
+import java.nio.channels.SelectableChannel;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.awf.util.MXBeanUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.Maps;
+
+/**
+ * A {@code TimeoutManager} backed by a hashed timing wheel.
+ * <p>
+ * Every timeout is hashed into a bucket (a doubly linked list) by its deadline
+ * tick, which gives O(1) add, cancel and reschedule. Each call to
+ * {@link #execute()} only visits the buckets for the ticks that elapsed since
+ * the previous call, so nothing is copied or re-sorted per IOLoop iteration.
+ * Timeouts further away than one wheel revolution simply stay in their bucket
+ * and are skipped until their deadline has passed.
+ * <p>
+ * The precision of this manager is bounded by the tick duration. Like every
+ * other {@code TimeoutManager} it must only be accessed from the IOLoop thread.
+ */
+public class HashedWheelTimeoutManager implements TimeoutManager, TimeoutManagerMXBean {
+
+	private final Logger logger = LoggerFactory.getLogger(HashedWheelTimeoutManager.class);
+
+	/** Default duration of one tick, in ms. */
+	public static final long DEFAULT_TICK_DURATION = 10;
+
+	/** Default number of buckets in the wheel (one revolution = 5.12 s with the default tick). */
+	public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+	private static final AtomicInteger sequence = new AtomicInteger();
+
+	private final long tickDuration;
+	private final WheelTimeout[] wheel;
+	private final int mask;
+
+	/** One bit per bucket, set if the bucket is not empty. */
+	private final long[] occupied;
+
+	/** The last tick for which all expired timeouts are known to be executed. */
+	private long lastTick;
+
+	private final Map<SelectableChannel, WheelTimeout> index = Maps.newHashMap();
+	private int numberOfTimeouts = 0;
+
+	public HashedWheelTimeoutManager() {
+		this(DEFAULT_TICK_DURATION, DEFAULT_TICKS_PER_WHEEL);
+	}
+
+	/**
+	 * @param tickDuration the duration of one tick in ms (the timer precision)
+	 * @param ticksPerWheel the number of buckets, rounded up to a power of two
+	 */
+	public HashedWheelTimeoutManager(long tickDuration, int ticksPerWheel) {
+		if (tickDuration <= 0) {
+			throw new IllegalArgumentException("tickDuration must be greater than 0: " + tickDuration);
+		}
+		if (ticksPerWheel <= 0) {
+			throw new IllegalArgumentException("ticksPerWheel must be greater than 0: " + ticksPerWheel);
+		}
+		this.tickDuration = tickDuration;
+		int size = Integer.highestOneBit(ticksPerWheel);
+		if (size < ticksPerWheel) {
+			size <<= 1;
+		}
+		wheel = new WheelTimeout[size];
+		mask = size - 1;
+		occupied = new long[(size + 63) >>> 6];
+		lastTick = System.currentTimeMillis() / tickDuration - 1;
+		MXBeanUtil.registerMXBean(this, "TimeoutManager", getClass().getSimpleName() + "-" + sequence.incrementAndGet());
+	}
+
+	@Override
+	public void addTimeout(Timeout timeout) {
+		logger.debug("added generic timeout: {}", timeout);
+		schedule(new WheelTimeout(null, timeout), timeout.getTimeout());
+		numberOfTimeouts++;
+	}
+
+	@Override
+	public void addKeepAliveTimeout(SelectableChannel channel, Timeout timeout) {
+		logger.debug("added keep-alive timeout: {}", timeout);
+		WheelTimeout existing = index.get(channel);
+		if (existing != null) {
+			// reschedule, reusing the bucket entry
+			unlink(existing);
+			existing.timeout = timeout;
+			existing.armed = existing.lastActivity = System.currentTimeMillis();
+			schedule(existing, timeout.getTimeout());
+		} else {
+			WheelTimeout wt = new WheelTimeout(channel, timeout);
+			wt.armed = wt.lastActivity = System.currentTimeMillis();
+			schedule(wt, timeout.getTimeout());
+			index.put(channel, wt);
+			numberOfTimeouts++;
+		}
+	}
+
+	@Override
+	public boolean touchKeepAliveTimeout(SelectableChannel channel) {
+		WheelTimeout wt = index.get(channel);
+		if (wt == null) {
+			return false;
+		}
+		wt.lastActivity = System.currentTimeMillis();
+		return true;
+	}
+
+	@Override
+	public boolean hasKeepAliveTimeout(SelectableChannel channel) {
+		return index.containsKey(channel);
+	}
+
+	@Override
+	public void cancelKeepAliveTimeout(SelectableChannel channel) {
+		WheelTimeout wt = index.remove(channel);
+		if (wt != null) {
+			unlink(wt);
+			numberOfTimeouts--;
+		}
+	}
+
+	@Override
+	public long execute() {
+		final long now = System.currentTimeMillis();
+		final long currentTick = now / tickDuration;
+
+		// Unlink everything that has expired before invoking any callbacks, so callbacks are free to
+		// add, reschedule or cancel timeouts. Timeouts added by the callbacks will be executed during
+		// the next invocation at the earliest (avoids IO starvation).
+		long from = lastTick + 1;
+		if (currentTick - from >= wheel.length) {
+			from = currentTick - wheel.length + 1; // a full revolution visits every bucket
+		}
+		WheelTimeout expired = null;
+		for (long tick = from; tick <= currentTick; tick++) {
+			WheelTimeout candidate = wheel[(int) (tick & mask)];
+			while (candidate != null) {
+				WheelTimeout next = candidate.next;
+				if (candidate.deadline <= now) {
+					unlink(candidate);
+					long prolonged = candidate.prolongedDeadline();
+					if (prolonged > now) {
+						// active since the deadline was set, push it forward instead of expiring it
+						candidate.armed = candidate.lastActivity;
+						schedule(candidate, prolonged);
+					} else {
+						candidate.next = expired;
+						expired = candidate;
+					}
+				}
+				candidate = next;
+			}
+		}
+		// the current tick is not over yet, visit its bucket again next time
+		lastTick = currentTick - 1;
+
+		while (expired != null) {
+			WheelTimeout candidate = expired;
+			expired = candidate.next;
+			candidate.next = null;
+			if (candidate.channel != null) {
+				index.remove(candidate.channel);
+			}
+			numberOfTimeouts--;
+			try {
+				candidate.timeout.getCallback().onCallback();
+				logger.debug("Timeout triggered: {}", candidate.timeout);
+			} catch (RuntimeException e) {
+				// the other expired timeouts are already unlinked, they must still fire
+				logger.error("Exception in timeout callback: {}", e);
+			}
+		}
+
+		return nextDeadline(now, currentTick);
+	}
+
+	/**
+	 * @return the number of ms until the next timeout is due (at most one tick
+	 *         early), or {@code Long.MAX_VALUE} if there are no scheduled
+	 *         timeouts. Only non-empty buckets are visited, found through the
+	 *         occupancy bitmap, so a sparse wheel costs little to search.
+	 */
+	private long nextDeadline(long now, long currentTick) {
+		if (numberOfTimeouts == 0) {
+			return Long.MAX_VALUE;
+		}
+		final int current = (int) (currentTick & mask);
+		long earliest = Long.MAX_VALUE;
+		for (int distance = 0; distance < wheel.length; distance++) {
+			distance = nextOccupied(current, distance);
+			if (distance < 0) {
+				break;
+			}
+			long tickEnd = (currentTick + distance + 1) * tickDuration;
+			long deadline = Long.MAX_VALUE;
+			for (WheelTimeout wt = wheel[(current + distance) & mask]; wt != null; wt = wt.next) {
+				deadline = Math.min(deadline, wt.deadline);
+			}
+			earliest = Math.min(earliest, Math.max(deadline, tickEnd - tickDuration));
+			if (deadline < tickEnd) {
+				// due during this revolution, later buckets can only be due later
+				break;
+			}
+		}
+		return earliest == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(1, earliest - now);
+	}
+
+	/**
+	 * @return the smallest distance (from the given bucket, going round the
+	 *         wheel) not below {@code from} of a non-empty bucket, or -1.
+	 */
+	private int nextOccupied(int bucket, int from) {
+		for (int distance = from; distance < wheel.length;) {
+			int index = (bucket + distance) & mask;
+			long bits = occupied[index >>> 6] >>> (index & 63);
+			if (bits != 0) {
+				int skip = Long.numberOfTrailingZeros(bits);
+				if (distance + skip < wheel.length) {
+					return distance + skip;
+				}
+			}
+			// continue with the next word, or at the start of the wheel
+			int end = Math.min((index | 63) + 1, mask + 1);
+			distance += end - index;
+		}
+		return -1;
+	}
+
+	private void schedule(WheelTimeout wt, long deadline) {
+		wt.deadline = deadline;
+		long tick = Math.max(deadline / tickDuration, lastTick + 1);
+		int bucket = (int) (tick & mask);
+		WheelTimeout head = wheel[bucket];
+		if (head == null) {
+			occupied[bucket >>> 6] |= 1L << (bucket & 63);
+		}
+		wt.bucket = bucket;
+		wt.prev = null;
+		wt.next = head;
+		if (head != null) {
+			head.prev = wt;
+		}
+		wheel[bucket] = wt;
+	}
+
+	private void unlink(WheelTimeout wt) {
+		if (wt.prev != null) {
+			wt.prev.next = wt.next;
+		} else {
+			wheel[wt.bucket] = wt.next;
+			if (wt.next == null) {
+				occupied[wt.bucket >>> 6] &= ~(1L << (wt.bucket & 63));
+			}
+		}
+		if (wt.next != null) {
+			wt.next.prev = wt.prev;
+		}
+		wt.prev = null;
+		wt.next = null;
+	}
+
+	// implements TimeoutManagerMXBean
+	@Override
+	public int getNumberOfKeepAliveTimeouts() {
+		return index.size();
+	}
+
+	@Override
+	public int getNumberOfTimeouts() {
+		return numberOfTimeouts;
+	}
+
+	private static class WheelTimeout {
+
+		final SelectableChannel channel;
+		Timeout timeout;
+		long deadline;
+		int bucket;
+		WheelTimeout prev;
+		WheelTimeout next;
+
+		/** When the current (keep-alive) deadline was set and when the channel was last active. */
+		long armed;
+		long lastActivity;
+
+		WheelTimeout(SelectableChannel channel, Timeout timeout) {
+			this.channel = channel;
+			this.timeout = timeout;
+		}
+
+		/**
+		 * @return the deadline this timeout would have had if it was set at the last activity, or
+		 *         {@code Long.MIN_VALUE} if there was no activity since the deadline was set.
+		 */
+		long prolongedDeadline() {
+			if (channel == null || lastActivity <= armed) {
+				return Long.MIN_VALUE;
+			}
+			return lastActivity + (deadline - armed);
+		}
+
+	}
+
+}
@@ -56,11 +56,21 @@ public class JMXDebuggableTimeoutManager implements TimeoutManager, TimeoutManag
 		if (oldTimeout != null) {
 			keepAliveTimeouts.remove(oldTimeout);
 		}
-		DecoratedTimeout decorated = new DecoratedTimeout(channel, timeout);
+		DecoratedTimeout decorated = new DecoratedTimeout(channel, timeout, System.currentTimeMillis());
 		keepAliveTimeouts.add(decorated);
 		index.put(channel, decorated);
 	}
 
+	@Override
+	public boolean touchKeepAliveTimeout(SelectableChannel channel) {
+		DecoratedTimeout timeout = index.get(channel);
+		if (timeout == null) {
+			return false;
+		}
+		timeout.lastActivity = System.currentTimeMillis();
+		return true;
+	}
+
 	@Override
 	public void addTimeout(Timeout timeout) {
 		logger.debug("added generic timeout: {}", timeout);
@@ -72,6 +82,14 @@ public class JMXDebuggableTimeoutManager implements TimeoutManager, TimeoutManag
 		return index.containsKey(channel);
 	}
 
+	@Override
+	public void cancelKeepAliveTimeout(SelectableChannel channel) {
+		DecoratedTimeout timeout = index.remove(channel);
+		if (timeout != null) {
+			keepAliveTimeouts.remove(timeout);
+		}
+	}
+
 	@Override
 	public long execute() {
 		return Math.min(executeKeepAliveTimeouts(), executeTimeouts());
@@ -85,10 +103,21 @@ public class JMXDebuggableTimeoutManager implements TimeoutManager, TimeoutManag
 		while (iter.hasNext()) {
 			DecoratedTimeout candidate = iter.next();
 			if (candidate.timeout.getTimeout() > now) { break; }
-			candidate.timeout.getCallback().onCallback();
-			index.remove(candidate.channel);
 			iter.remove();
 			keepAliveTimeouts.remove(candidate);
+			if (candidate.lastActivity > candidate.armed) {
+				long prolonged = candidate.lastActivity + (candidate.timeout.getTimeout() - candidate.armed);
+				if (prolonged > now) {
+					// active since the deadline was set, push it forward instead of expiring it
+					DecoratedTimeout decorated = new DecoratedTimeout(candidate.channel, 
+							new Timeout(prolonged, candidate.timeout.getCallback()), candidate.lastActivity);
+					keepAliveTimeouts.add(decorated);
+					index.put(candidate.channel, decorated);
+					continue;
+				}
+			}
+			candidate.timeout.getCallback().onCallback();
+			index.remove(candidate.channel);
 			logger.debug("Keep-alive timeout triggered: {}", candidate.timeout);
 		}
 		return keepAliveTimeouts.isEmpty() ? Long.MAX_VALUE : Math.max(1, keepAliveTimeouts.iterator().next().timeout.getTimeout() - now);
@@ -125,10 +154,14 @@ public class JMXDebuggableTimeoutManager implements TimeoutManager, TimeoutManag
 
 		public final SelectableChannel channel;
 		public final Timeout timeout;
+		public final long armed;
+		public long lastActivity;
 
-		public DecoratedTimeout(SelectableChannel channel, Timeout timeout) {
+		public DecoratedTimeout(SelectableChannel channel, Timeout timeout, long armed) {
 			this.channel = channel;
 			this.timeout = timeout;
+			this.armed = armed;
+			this.lastActivity = armed;
 		}
 
 		@Override
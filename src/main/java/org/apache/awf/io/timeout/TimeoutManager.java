@@ -29,6 +29,20 @@ public interface TimeoutManager {
 	void addKeepAliveTimeout(SelectableChannel channel, Timeout timeout);
 	
 	boolean hasKeepAliveTimeout(SelectableChannel channel);
+
+	/**
+	 * Records activity on the given channel without touching its keep-alive timeout. When the
+	 * keep-alive deadline is reached, a channel that has been active since the deadline was set
+	 * gets a new deadline (relative to its last activity) instead of being timed out.
+	 * 
+	 * @return false if there is no keep-alive timeout registered for the given channel.
+	 */
+	boolean touchKeepAliveTimeout(SelectableChannel channel);
+
+	/**
+	 * Removes the keep-alive timeout (if any) that is registered for the given channel.
+	 */
+	void cancelKeepAliveTimeout(SelectableChannel channel);
 	
 	/**
 	 * 
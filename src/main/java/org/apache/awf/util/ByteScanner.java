@@ -0,0 +1,131 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Searches (heap or direct) buffers for delimiters eight bytes at a time. Each
+ * step reads a <code>long</code> and tests all of its bytes at once with
+ * SIMD-within-a-register arithmetic, only the tail shorter than a
+ * <code>long</code> is scanned byte by byte.
+ */
+public final class ByteScanner {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_SEVEN_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private ByteScanner() {
+    }
+
+    /**
+     * @return the index of the first occurrence of b in [from, to) of the
+     *         buffer, or -1.
+     */
+    public static int indexOf(ByteBuffer buffer, int from, int to, byte b) {
+        return indexOfAny(buffer, from, to, b, b, b);
+    }
+
+    /**
+     * @return the index of the first occurrence of b1 or b2 in [from, to) of
+     *         the buffer, or -1.
+     */
+    public static int indexOfAny(ByteBuffer buffer, int from, int to, byte b1, byte b2) {
+        return indexOfAny(buffer, from, to, b1, b2, b2);
+    }
+
+    /**
+     * @return the index of the first occurrence of b1, b2 or b3 in [from, to)
+     *         of the buffer, or -1.
+     */
+    public static int indexOfAny(ByteBuffer buffer, int from, int to, byte b1, byte b2, byte b3) {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        long p1 = broadcast(b1);
+        long p2 = broadcast(b2);
+        long p3 = broadcast(b3);
+
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = buffer.getLong(i);
+            long found = zeroBytes(word ^ p1) | zeroBytes(word ^ p2) | zeroBytes(word ^ p3);
+            if (found != 0) {
+                // the first byte in memory is the most significant one of a
+                // big endian long
+                return i + ((bigEndian ? Long.numberOfLeadingZeros(found) : Long.numberOfTrailingZeros(found)) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b == b1 || b == b2 || b == b3) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Search for pattern in [from, to) of the buffer. The candidates are found
+     * by scanning for the first byte of the pattern, which makes this suited
+     * for short delimiters such as CRLF.
+     * 
+     * @return the index of the first match, or -1 if there is none or if the
+     *         pattern is of length 0.
+     */
+    public static int indexOf(ByteBuffer buffer, int from, int to, byte[] pattern) {
+        if (pattern.length == 0) {
+            return -1;
+        }
+        int last = to - pattern.length;
+        for (int i = from; i <= last; i++) {
+            i = indexOf(buffer, i, last + 1, pattern[0]);
+            if (i < 0) {
+                return -1;
+            }
+            if (matchesAt(buffer, i, pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matchesAt(ByteBuffer buffer, int index, byte[] pattern) {
+        for (int j = 1; j < pattern.length; j++) {
+            if (buffer.get(index + j) != pattern[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long broadcast(byte b) {
+        return (b & 0xFFL) * ONES;
+    }
+
+    /**
+     * @return a word with the high bit set in (exactly) every byte of the
+     *         given word that is zero.
+     */
+    private static long zeroBytes(long word) {
+        long t = (word & LOW_SEVEN_BITS) + LOW_SEVEN_BITS;
+        return ~(t | word | LOW_SEVEN_BITS);
+    }
+
+}
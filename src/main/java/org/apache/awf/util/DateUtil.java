@@ -22,7 +22,6 @@ package org.apache.awf.util;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
@@ -33,19 +32,42 @@ public class DateUtil {
     private final static Locale LOCALE = Locale.US;
     private final static TimeZone GMT_ZONE;
     private final static String RFC_1123_PATTERN = "EEE, dd MMM yyyy HH:mm:ss zzz";
-    private final static DateFormat RFC_1123_FORMAT;
+
+    /**
+     * <code>SimpleDateFormat</code> is not thread safe and several IOLoops may
+     * format or parse dates concurrently, so every thread gets its own.
+     */
+    private final static ThreadLocal<DateFormat> RFC_1123_FORMAT = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            DateFormat format = new SimpleDateFormat(DateUtil.RFC_1123_PATTERN, DateUtil.LOCALE);
+            format.setTimeZone(DateUtil.GMT_ZONE);
+            return format;
+        }
+    };
 
     /** Pattern to find digits only. */
     private final static Pattern DIGIT_PATTERN = Pattern.compile("^\\d+$");
 
     static {
-        RFC_1123_FORMAT = new SimpleDateFormat(DateUtil.RFC_1123_PATTERN, DateUtil.LOCALE);
         GMT_ZONE = TimeZone.getTimeZone("GMT");
-        DateUtil.RFC_1123_FORMAT.setTimeZone(DateUtil.GMT_ZONE);
     }
 
+    /**
+     * @return the current date in the <em>RFC 1123</em> format, served from
+     *         {@link HttpDateClock}.
+     */
     public static String getCurrentAsString() {
-        return DateUtil.RFC_1123_FORMAT.format(new Date());
+        return HttpDateClock.currentAsString();
+    }
+
+    /**
+     * Format the given milliseconds since epoch. Dates within the current
+     * second are served from {@link HttpDateClock} without formatting.
+     */
+    static String format(final long dateValue) {
+        String cached = HttpDateClock.asStringIfCurrent(dateValue);
+        return cached != null ? cached : DateUtil.RFC_1123_FORMAT.get().format(new Date(dateValue));
     }
 
     /**
@@ -59,8 +81,12 @@ public class DateUtil {
      */
     private static long parseDateStringToMilliseconds(final String dateString) {
 
+        long cached = HttpDateClock.parseIfCurrent(dateString);
+        if (cached >= 0) {
+            return cached;
+        }
         try {
-            return DateUtil.RFC_1123_FORMAT.parse(dateString).getTime();
+            return DateUtil.RFC_1123_FORMAT.get().parse(dateString).getTime();
         } catch (final ParseException e) {
             return 0;
         }
@@ -98,10 +124,7 @@ public class DateUtil {
      */
     public static String parseToRFC1123(final long dateValue) {
 
-        final Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(dateValue);
-
-        return DateUtil.RFC_1123_FORMAT.format(calendar.getTime());
+        return format(dateValue);
     }
 
     /**
@@ -112,7 +135,7 @@ public class DateUtil {
      * @return a <code>String</code> representation of the date.
      */
     public static String getDateAsString(Date date) {
-        return RFC_1123_FORMAT.format(date);
+        return format(date.getTime());
     }
 
 }
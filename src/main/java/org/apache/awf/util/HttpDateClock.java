@@ -0,0 +1,107 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.util;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A clock shared by all IOLoops that formats the current date in the
+ * <em>RFC 1123</em> format at most once per second.
+ * <p>
+ * The formatted second is kept in an immutable {@link Tick} that is published
+ * through a volatile field. Whichever thread first notices that the second
+ * has passed formats the new one; concurrent updates are harmless because all
+ * of them compute the same value.
+ */
+public final class HttpDateClock {
+
+    private static volatile Tick current = new Tick(System.currentTimeMillis() / 1000);
+
+    private HttpDateClock() {
+    }
+
+    /**
+     * @return the current date as a <code>String</code>.
+     */
+    public static String currentAsString() {
+        return tick().date;
+    }
+
+    /**
+     * @return the complete "Date" header line for the current second,
+     *         including the trailing CRLF. The returned array is shared and
+     *         must not be modified.
+     */
+    public static byte[] currentHeaderLine() {
+        return tick().headerLine;
+    }
+
+    /**
+     * @return the formatted date if the given milliseconds fall into the
+     *         second of the clock, otherwise <code>null</code>.
+     */
+    static String asStringIfCurrent(long millis) {
+        Tick tick = current;
+        return millis >= 0 && millis / 1000 == tick.second ? tick.date : null;
+    }
+
+    /**
+     * @return the milliseconds of the second of the clock if the given date
+     *         equals its formatted form, otherwise -1.
+     */
+    static long parseIfCurrent(String date) {
+        Tick tick = current;
+        return tick.date.equals(date) ? tick.second * 1000 : -1;
+    }
+
+    private static Tick tick() {
+        long second = System.currentTimeMillis() / 1000;
+        Tick tick = current;
+        if (tick.second != second) {
+            tick = new Tick(second);
+            current = tick;
+        }
+        return tick;
+    }
+
+    private static final class Tick {
+
+        private final long second;
+        private final String date;
+        private final byte[] headerLine;
+
+        Tick(long second) {
+            // formatted at most once per second, a private instance keeps this
+            // independent of the thread-local formats of DateUtil
+            DateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            this.second = second;
+            date = format.format(new Date(second * 1000));
+            headerLine = ("Date: " + date + "\r\n").getBytes(Charsets.ISO_8859_1);
+        }
+    }
+
+}
@@ -21,8 +21,10 @@ package org.apache.awf.util;
 
 import java.io.File;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 import org.apache.awf.web.http.HttpRequest;
 
@@ -34,6 +36,12 @@ public class HttpUtil {
      */
     private static final ThreadLocal<MessageDigest> md = new ThreadLocal<MessageDigest>();
 
+    /**
+     * Maximum number of ranges honoured in a "Range" header, requests for more
+     * get the complete representation.
+     */
+    public static final int MAX_BYTE_RANGES = 16;
+
     public static boolean verifyRequest(HttpRequest request) {
         String version = request.getVersion();
         boolean requestOk = true;
@@ -45,7 +53,118 @@ public class HttpUtil {
         return requestOk;
     }
 
+    /**
+     * Parse the value of a "Range" header, e.g. "bytes=0-499, -500", against a
+     * representation of the given length.
+     * 
+     * @return the first and last byte positions (inclusive) of each
+     *         satisfiable range, in pairs; an empty array if no range is
+     *         satisfiable; or <code>null</code> if the header is malformed or
+     *         asks for too many ranges, and must be ignored.
+     */
+    public static long[] parseByteRanges(String range, long length) {
+        if (!range.regionMatches(true, 0, "bytes=", 0, 6)) {
+            return null;
+        }
+        String[] specs = range.substring(6).split(",");
+        if (specs.length > MAX_BYTE_RANGES) {
+            return null;
+        }
+        long[] ranges = new long[2 * specs.length];
+        int n = 0;
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            long first;
+            long last;
+            try {
+                if (dash == 0) {
+                    // suffix, e.g. "-500" for the last 500 bytes
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    first = Math.max(0, length - suffix);
+                    last = suffix == 0 ? -1 : length - 1;
+                } else if (dash > 0) {
+                    first = Long.parseLong(spec.substring(0, dash));
+                    last = Long.MAX_VALUE;
+                    if (dash < spec.length() - 1) {
+                        last = Long.parseLong(spec.substring(dash + 1));
+                        if (last < first) {
+                            return null;
+                        }
+                    }
+                    last = Math.min(last, length - 1);
+                } else {
+                    return null;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (first < length && first <= last) {
+                ranges[n++] = first;
+                ranges[n++] = last;
+            }
+        }
+        return Arrays.copyOf(ranges, n);
+    }
+
+    /**
+     * Determine whether the value of an "Accept-Encoding" header allows the
+     * given content coding, e.g. "gzip", by name or through "*". A coding
+     * with a quality value of 0 is not acceptable.
+     */
+    public static boolean acceptsEncoding(String acceptEncoding, String coding) {
+        float wildcard = 0;
+        for (String element : acceptEncoding.split(",")) {
+            int semicolon = element.indexOf(';');
+            String name = (semicolon < 0 ? element : element.substring(0, semicolon)).trim();
+            float quality = semicolon < 0 ? 1 : parseQuality(element.substring(semicolon + 1));
+            if (name.equalsIgnoreCase(coding)) {
+                return quality > 0;
+            } else if (name.equals("*")) {
+                wildcard = quality;
+            }
+        }
+        return wildcard > 0;
+    }
+
+    /**
+     * @return the "q" parameter of the given parameters, 1 if absent and 0 if
+     *         malformed.
+     */
+    private static float parseQuality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
     public static String getEtag(byte[] bytes) {
+        return toEtag(getMessageDigest().digest(bytes));
+    }
+
+    /**
+     * Etag of the remaining bytes of the given (heap or direct) buffers, in
+     * order. The buffers' positions are left unchanged.
+     */
+    public static String getEtag(ByteBuffer... buffers) {
+        MessageDigest digest = getMessageDigest();
+        for (ByteBuffer buffer : buffers) {
+            digest.update(buffer.duplicate());
+        }
+        return toEtag(digest.digest());
+    }
+
+    private static MessageDigest getMessageDigest() {
         if (md.get() == null) {
             try {
                 md.set(MessageDigest.getInstance("MD5"));
@@ -53,11 +172,13 @@ public class HttpUtil {
                 throw new RuntimeException("MD5 cryptographic algorithm is not available.", e);
             }
         }
-        byte[] digest = md.get().digest(bytes);
+        return md.get();
+    }
+
+    private static String toEtag(byte[] digest) {
         BigInteger number = new BigInteger(1, digest);
         // prepend a '0' to get a proper MD5 hash
         return '0' + number.toString(16);
-
     }
 
     public static String getEtag(File file) {
@@ -19,8 +19,8 @@
  */
 package org.apache.awf.web;
 
+import java.util.Arrays;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 import org.apache.awf.configuration.Configuration;
 import org.apache.awf.util.HttpUtil;
@@ -32,131 +32,117 @@ import org.apache.awf.web.handler.RequestHandler;
 import org.apache.awf.web.handler.RequestHandlerFactory;
 import org.apache.awf.web.handler.StaticContentHandler;
 import org.apache.awf.web.http.HttpRequest;
-
-import com.google.common.collect.ImmutableMap;
+import org.apache.awf.web.http.HttpRequestImpl;
+import org.apache.awf.web.http.protocol.HttpVerb;
 
 public class Application {
 
-    /**
-     * "Normal/Absolute" (non group capturing) RequestHandlers e.g. "/",
-     * "/persons"
-     */
-    private final ImmutableMap<String, RequestHandler> absoluteHandlers;
+    private static final int[] NO_CAPTURES = new int[0];
 
     /**
-     * Group capturing RequestHandlers e.g. "/persons/([0-9]+)",
-     * "/persons/(\\d{1,3})"
+     * Scratch array receiving the path captures of the route being looked
+     * up, one per (IOLoop) thread. Only the captures of a matching route
+     * with parameters are copied, for the request.
      */
-    private final ImmutableMap<String, RequestHandler> capturingHandlers;
+    private final ThreadLocal<int[]> captures = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return NO_CAPTURES;
+        }
+    };
 
     /**
-     * A mapping between group capturing RequestHandlers and their corresponding
-     * pattern ( e.g. "([0-9]+)" )
+     * Maps request paths, e.g. "/", "/persons/([0-9]+)" or
+     * "/persons/{id:int}/phone_numbers", to their RequestHandlers.
      */
-    private final ImmutableMap<RequestHandler, Pattern> patterns;
+    private final Router router = new Router();
 
     /**
      * The directory where static content (files) will be served from.
      */
     private String staticContentDir;
 
+    /**
+     * Serves the files of the static content directory.
+     */
+    private StaticContentHandler staticContentHandler = StaticContentHandler.getInstance();
+
     /**
      * A copy of the <code>Configuration</code> used to create this type.
      */
     private Configuration configuration;
 
     public Application(Map<String, RequestHandler> handlers) {
-        ImmutableMap.Builder<String, RequestHandler> builder = new ImmutableMap.Builder<String, RequestHandler>();
-        ImmutableMap.Builder<String, RequestHandler> capturingBuilder = new ImmutableMap.Builder<String, RequestHandler>();
-        ImmutableMap.Builder<RequestHandler, Pattern> patternsBuilder = new ImmutableMap.Builder<RequestHandler, Pattern>();
-
-        for (String path : handlers.keySet()) {
-            int index = path.lastIndexOf("/");
-            String group = path.substring(index + 1, path.length());
-            if (containsCapturingGroup(group)) {
-                // path ends with capturing group, e.g path ==
-                // "/person/([0-9]+)"
-                capturingBuilder.put(path.substring(0, index + 1), handlers.get(path));
-                patternsBuilder.put(handlers.get(path), Pattern.compile(group));
-            } else {
-                // "normal" path, e.g. path == "/"
-                builder.put(path, handlers.get(path));
-            }
+        for (Map.Entry<String, RequestHandler> entry : handlers.entrySet()) {
+            router.add(entry.getKey(), entry.getValue());
         }
-        absoluteHandlers = builder.build();
-        capturingHandlers = capturingBuilder.build();
-        patterns = patternsBuilder.build();
     }
 
     /**
      * 
-     * @param path Requested path
-     * @return Returns the {@link RequestHandler} associated with the given
-     *         path. If no mapping exists a {@link NotFoundRequestHandler} is
-     *         returned.
+     * @param request the current request, which receives the path parameters
+     *            of the matched route
+     * @return Returns the {@link RequestHandler} associated with the requested
+     *         path and method. If no mapping exists a
+     *         {@link NotFoundRequestHandler} is returned.
      */
-    private RequestHandler getHandler(String path) {
-
-        RequestHandler rh = absoluteHandlers.get(path);
-        if (rh == null) {
-            rh = getCapturingHandler(path);
-            if (rh == null) {
-                rh = getStaticContentHandler(path);
-                if (rh != null) {
-                    return rh;
-                }
-            } else {
-                return RequestHandlerFactory.cloneHandler(rh);
+    private RequestHandler getHandler(HttpVerb method, String path, HttpRequest request) {
+        int[] captures = this.captures.get();
+        if (captures.length < 2 * router.getMaxCaptures()) {
+            captures = new int[2 * router.getMaxCaptures()];
+            this.captures.set(captures);
+        }
+        Router.Route route = router.find(method, path, captures);
+        if (route != null) {
+            String[] names = route.getParameterNames();
+            if (names.length > 0 && request instanceof HttpRequestImpl) {
+                ((HttpRequestImpl) request).setPathParameters(names, Arrays.copyOf(captures, 2 * names.length));
             }
-        } else {
-            return RequestHandlerFactory.cloneHandler(rh);
+            return route.acquireHandler();
         }
 
+        RequestHandler rh = getStaticContentHandler(path);
+        if (rh != null) {
+            return rh;
+        }
         return NotFoundRequestHandler.getInstance();
     }
 
     public RequestHandler getHandler(HttpRequest request) {
 
-        if (!HttpUtil.verifyRequest(request)) {
-            return BadRequestRequestHandler.getInstance();
-        }
-        // if @Authenticated annotation is present, make sure that the
-        // request/user is authenticated
-        // (i.e RequestHandler.getCurrentUser() != null).
-        RequestHandler rh = getHandler(request.getRequestedPath());
-        if (rh.isMethodAuthenticated(request.getMethod()) && rh.getCurrentUser(request) == null) {
-            return ForbiddenRequestHandler.getInstance();
+        RequestHandler rh = route(request);
+        if (rh == BadRequestRequestHandler.getInstance() || rh == ForbiddenRequestHandler.getInstance()) {
+            return rh;
         }
 
         if (request.expectContinue()) {
+            RequestHandlerFactory.release(rh);
             return HttpContinueRequestHandler.getInstance();
         }
 
         return rh;
     }
 
-    private boolean containsCapturingGroup(String group) {
-        boolean containsGroup = group.matches("^\\(.*\\)$");
-        Pattern.compile(group); // throws PatternSyntaxException if group is
-        // malformed regular expression
-        return containsGroup;
-    }
+    /**
+     * Like {@link #getHandler(HttpRequest)}, except that the handler of the
+     * request is returned even if the client waits for a "100 Continue".
+     * Used to route a request as soon as its headers are parsed.
+     */
+    public RequestHandler route(HttpRequest request) {
 
-    private RequestHandler getCapturingHandler(String path) {
-        int index = path.lastIndexOf("/");
-        if (index != -1) {
-            String init = path.substring(0, index + 1); // path without its last
-            // segment
-            String group = path.substring(index + 1, path.length());
-            RequestHandler handler = capturingHandlers.get(init);
-            if (handler != null) {
-                Pattern regex = patterns.get(handler);
-                if (regex.matcher(group).matches()) {
-                    return handler;
-                }
-            }
+        if (!HttpUtil.verifyRequest(request)) {
+            return BadRequestRequestHandler.getInstance();
         }
-        return null;
+        // if @Authenticated annotation is present, make sure that the
+        // request/user is authenticated
+        // (i.e RequestHandler.getCurrentUser() != null).
+        RequestHandler rh = getHandler(request.getMethod(), request.getRequestedPath(), request);
+        if (rh.isMethodAuthenticated(request.getMethod()) && rh.getCurrentUser(request) == null) {
+            RequestHandlerFactory.release(rh);
+            return ForbiddenRequestHandler.getInstance();
+        }
+
+        return rh;
     }
 
     private RequestHandler getStaticContentHandler(String path) {
@@ -165,7 +151,7 @@ public class Application {
         }
 
         if (path.substring(1).startsWith(staticContentDir)) {
-            return StaticContentHandler.getInstance();
+            return staticContentHandler;
         } else {
             return null;
         }
@@ -175,6 +161,10 @@ public class Application {
         staticContentDir = scd;
     }
 
+    void setStaticContentHandler(StaticContentHandler handler) {
+        staticContentHandler = handler;
+    }
+
     /**
      * Set the <code>Configuration</code> for use with this type.
      * 
@@ -20,6 +20,7 @@
 package org.apache.awf.web;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
@@ -29,12 +30,21 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.apache.awf.configuration.AnnotationsScanner;
 import org.apache.awf.configuration.Configuration;
+import org.apache.awf.io.IOHandler;
 import org.apache.awf.io.IOLoop;
+import org.apache.awf.io.IOLoopBalancer;
 import org.apache.awf.io.IOLoopObserver;
+import org.apache.awf.io.timeout.HashedWheelTimeoutManager;
+import org.apache.awf.io.timeout.JMXDebuggableTimeoutManager;
+import org.apache.awf.io.timeout.TimeoutManager;
 import org.apache.awf.util.Closeables;
 import org.apache.awf.web.handler.RequestHandler;
+import org.apache.awf.web.handler.StaticContentHandler;
+import org.apache.awf.web.handler.StaticFileCache;
+import org.apache.awf.web.http.HttpAcceptor;
 import org.apache.awf.web.http.HttpProtocol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +60,21 @@ public class HttpServer {
     private ServerSocketChannel serverChannel;
     private final List<IOLoop> ioLoops = Lists.newLinkedList();
 
+    /**
+     * The listening socket of each <code>IOLoop</code> (all the same unless
+     * <code>SO_REUSEPORT</code> is used).
+     */
+    private final Map<IOLoop, ServerSocketChannel> serverChannels = Maps.newHashMap();
+
+    /**
+     * <code>StandardSocketOptions.SO_REUSEPORT</code> (Java 9+, Linux), or
+     * <code>null</code> if not available.
+     */
+    private static final Object SO_REUSEPORT = lookupReusePortOption();
+
+    private int port;
+    private boolean reusePort = false;
+
     private final Configuration configuration;
 
     private final Application application;
@@ -64,6 +89,17 @@ public class HttpServer {
         application = new Application(handlers);
         application.setStaticContentDir(configuration.getStaticDirectory());
         application.setConfiguration(configuration);
+        if (configuration.getStaticCacheSize() > 0 || configuration.isStaticPrecompressed()) {
+            // configured for this server only, the shared instance is left alone
+            StaticFileCache cache = null;
+            if (configuration.getStaticCacheSize() > 0) {
+                cache = new StaticFileCache(configuration.getStaticCacheSize(),
+                        configuration.getStaticCacheMaxFileSize(), configuration.getStaticCacheMaxMappedFileSize(),
+                        StaticFileCache.DEFAULT_REVALIDATE_INTERVAL);
+            }
+            application.setStaticContentHandler(new StaticContentHandler(cache,
+                    configuration.isStaticPrecompressed()));
+        }
     }
     
     public HttpServer(Configuration configuration, Application application) {
@@ -79,56 +115,171 @@ public class HttpServer {
      */
     public void listen(int port) {
         bind(port);
+        if (configuration != null && configuration.isHashedWheelTimeouts()) {
+            IOLoop.INSTANCE.setTimeoutManager(newTimeoutManager());
+        }
         ioLoops.add(IOLoop.INSTANCE);
-        registerHandler(IOLoop.INSTANCE, new HttpProtocol(application));
+        serverChannels.put(IOLoop.INSTANCE, serverChannel);
+        registerHandler(IOLoop.INSTANCE, new HttpProtocol(application), serverChannel);
     }
 
+    /**
+     * Binds the listening socket. If {@link Configuration#isReusePort()} is
+     * set and <code>SO_REUSEPORT</code> is supported, the socket is bound with
+     * <code>SO_REUSEPORT</code> enabled so that {@link #start(int)} can bind
+     * one more socket per additional <code>IOLoop</code>.
+     */
     public void bind(int port) {
         if (port <= MIN_PORT_NUMBER || port > MAX_PORT_NUMBER) {
             throw new IllegalArgumentException("Invalid port number. Valid range: [" + MIN_PORT_NUMBER + ", "
                     + MAX_PORT_NUMBER + ")");
         }
+        this.port = port;
+        reusePort = configuration != null && configuration.isReusePort();
+        if (reusePort && SO_REUSEPORT == null) {
+            logger.warn("SO_REUSEPORT is not supported on this platform, all IOLoops will share one listening socket");
+            reusePort = false;
+        }
+        serverChannel = reusePort ? openReusePortChannel(port) : null;
+        if (reusePort && serverChannel == null) {
+            logger.warn("Could not listen with SO_REUSEPORT, all IOLoops will share one listening socket");
+            reusePort = false;
+        }
+        if (serverChannel == null) {
+            serverChannel = openServerChannel(port);
+        }
+    }
+
+    private ServerSocketChannel openServerChannel(int port) {
+        ServerSocketChannel channel = null;
         try {
-            serverChannel = ServerSocketChannel.open();
+            channel = ServerSocketChannel.open();
 
-            boolean reuse = serverChannel.socket().getReuseAddress();
+            boolean reuse = channel.socket().getReuseAddress();
             if (!reuse) {
                 logger.info("Enabling SO_REUSEADDR (was disabled)");
-                serverChannel.socket().setReuseAddress(true);
+                channel.socket().setReuseAddress(true);
             }
-            serverChannel.configureBlocking(false);
+            channel.configureBlocking(false);
         } catch (IOException e) {
             logger.error("Error creating ServerSocketChannel: {}", e);
         }
 
         InetSocketAddress endpoint = new InetSocketAddress(port);
         try {
-            serverChannel.socket().bind(endpoint);
+            channel.socket().bind(endpoint);
         } catch (IOException e) {
             logger.error("Could not bind socket: {}", e);
         }
+        return channel;
     }
 
+    /**
+     * Opens a listening socket with <code>SO_REUSEPORT</code> enabled.
+     * 
+     * @return the bound socket, or <code>null</code> if it could not be opened
+     *         with <code>SO_REUSEPORT</code> or bound.
+     */
+    private ServerSocketChannel openReusePortChannel(int port) {
+        ServerSocketChannel channel = null;
+        try {
+            channel = ServerSocketChannel.open();
+            channel.socket().setReuseAddress(true);
+            if (!enableReusePort(channel)) {
+                com.google.common.io.Closeables.closeQuietly(channel);
+                return null;
+            }
+            channel.configureBlocking(false);
+            channel.socket().bind(new InetSocketAddress(port));
+            return channel;
+        } catch (IOException e) {
+            logger.error("Could not bind socket with SO_REUSEPORT: {}", e);
+            com.google.common.io.Closeables.closeQuietly(channel);
+            return null;
+        }
+    }
+
+    /**
+     * Starts <code>numThreads</code> <code>IOLoop</code>s serving HTTP
+     * requests. If {@link Configuration#getAcceptorBalancer()} is set, one
+     * extra <code>IOLoop</code> is started that only accepts new connections
+     * and hands them to the other <code>IOLoop</code>s.
+     */
     public void start(int numThreads) {
+        IOLoopBalancer balancer = configuration != null ? configuration.getAcceptorBalancer() : null;
+        if (balancer != null) {
+            startWithAcceptor(numThreads, balancer);
+            return;
+        }
 
         observer = new LatchObserver(numThreads);
 
         for (int i = 0; i < numThreads; i++) {
-            final IOLoop ioLoop = new IOLoop();
+            final IOLoop ioLoop = new IOLoop(newTimeoutManager());
             ioLoops.add(ioLoop);
-            final HttpProtocol protocol = new HttpProtocol(ioLoop, application);
-            Thread thread = new Thread(new Runnable() {
+            // with SO_REUSEPORT every IOLoop accepts on its own socket and the
+            // kernel balances the connections, otherwise all IOLoops race for
+            // accept() on the same socket.
+            ServerSocketChannel channel = (i == 0 || !reusePort) ? null : openReusePortChannel(port);
+            if (channel == null) {
+                channel = serverChannel;
+            }
+            serverChannels.put(ioLoop, channel);
+            startLoop(ioLoop, new HttpProtocol(ioLoop, application), channel);
+        }
+        awaitStarted();
+    }
 
-                @Override
-                public void run() {
+    private void startWithAcceptor(int numThreads, IOLoopBalancer balancer) {
 
-                    registerHandler(ioLoop, protocol);
-                    ioLoop.start(observer);
-                }
-            });
-            thread.setDaemon(true);
-            thread.start();
+        observer = new LatchObserver(numThreads + 1);
+
+        Map<IOLoop, HttpProtocol> protocols = Maps.newLinkedHashMap();
+        for (int i = 0; i < numThreads; i++) {
+            IOLoop ioLoop = new IOLoop(newTimeoutManager());
+            ioLoops.add(ioLoop);
+            protocols.put(ioLoop, new HttpProtocol(ioLoop, application));
+            startLoop(ioLoop, null, null);
         }
+        IOLoop acceptor = new IOLoop(newTimeoutManager());
+        ioLoops.add(acceptor);
+        serverChannels.put(acceptor, serverChannel);
+        startLoop(acceptor, new HttpAcceptor(balancer, protocols), serverChannel);
+        awaitStarted();
+    }
+
+    /**
+     * @return a new <code>TimeoutManager</code> for an <code>IOLoop</code>, as
+     *         chosen by {@link Configuration#isHashedWheelTimeouts()}.
+     */
+    private TimeoutManager newTimeoutManager() {
+        if (configuration != null && configuration.isHashedWheelTimeouts()) {
+            return new HashedWheelTimeoutManager();
+        }
+        return new JMXDebuggableTimeoutManager();
+    }
+
+    /**
+     * Starts the given <code>IOLoop</code> on a new thread, accepting
+     * connections on <code>channel</code> (if not <code>null</code>) with
+     * <code>handler</code>.
+     */
+    private void startLoop(final IOLoop ioLoop, final IOHandler handler, final ServerSocketChannel channel) {
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                if (channel != null) {
+                    registerHandler(ioLoop, handler, channel);
+                }
+                ioLoop.start(observer);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void awaitStarted() {
         try {
             observer.started.await(LATCH_TIMEOUT, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
@@ -149,7 +300,10 @@ public class HttpServer {
             ioLoop.addCallback(new AsyncCallback() {
                 @Override
                 public void onCallback() {
-                    Closeables.closeQuietly(ioLoop, serverChannel);
+                    ServerSocketChannel channel = serverChannels.get(ioLoop);
+                    if (channel != null) {
+                        Closeables.closeQuietly(ioLoop, channel);
+                    }
                     ioLoop.stop();
                 }
             });
@@ -161,8 +315,35 @@ public class HttpServer {
         }
     }
 
-    private void registerHandler(IOLoop ioLoop, HttpProtocol protocol) {
-        ioLoop.addHandler(serverChannel, protocol, SelectionKey.OP_ACCEPT, null);
+    private void registerHandler(IOLoop ioLoop, IOHandler handler, ServerSocketChannel channel) {
+        ioLoop.addHandler(channel, handler, SelectionKey.OP_ACCEPT, null);
+    }
+
+    private static Object lookupReusePortOption() {
+        if (!System.getProperty("os.name", "").toLowerCase().contains("linux")) {
+            return null; // SO_REUSEPORT does not balance connections on other platforms
+        }
+        try {
+            return Class.forName("java.net.StandardSocketOptions").getField("SO_REUSEPORT").get(null);
+        } catch (Exception e) {
+            return null; // Java < 9
+        }
+    }
+
+    /**
+     * @return <code>false</code> if <code>SO_REUSEPORT</code> could not be
+     *         enabled.
+     */
+    private boolean enableReusePort(ServerSocketChannel channel) {
+        try {
+            Method setOption = ServerSocketChannel.class.getMethod("setOption", Class.forName("java.net.SocketOption"),
+                    Object.class);
+            setOption.invoke(channel, SO_REUSEPORT, Boolean.TRUE);
+            return true;
+        } catch (Exception e) {
+            logger.error("Could not enable SO_REUSEPORT: {}", e);
+            return false;
+        }
     }
 
     /**
@@ -178,6 +359,15 @@ public class HttpServer {
     	return serverChannel;
     }
 
+    /**
+     * Added for test purposes.
+     * 
+     * @return the listening socket used by the given <code>IOLoop</code>.
+     */
+    protected ServerSocketChannel getServerChannel(IOLoop ioLoop) {
+        return serverChannels.get(ioLoop);
+    }
+
     private volatile LatchObserver observer;
 
     class LatchObserver implements IOLoopObserver {
@@ -0,0 +1,473 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.awf.web;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.awf.web.handler.RequestHandler;
+import org.apache.awf.web.handler.RequestHandlerFactory;
+import org.apache.awf.web.http.protocol.HttpVerb;
+
+import com.google.common.collect.Lists;
+
+/**
+ * A radix tree mapping request paths to {@link RequestHandler}s.
+ * <p>
+ * Static parts of the registered patterns share their common prefixes, so a
+ * lookup walks the requested path once, character by character. A pattern
+ * segment may also be dynamic:
+ * <ul>
+ * <li><code>{name}</code> matches any non-empty segment,</li>
+ * <li><code>{name:int}</code> matches a segment of ASCII digits,</li>
+ * <li><code>{name:uuid}</code> matches a segment formatted as a UUID,</li>
+ * <li><code>{name:regex}</code> and <code>(regex)</code> match a segment
+ * against a regular expression,</li>
+ * <li><code>*</code> or <code>*name</code>, as the last segment, matches the
+ * remainder of the path.</li>
+ * </ul>
+ * Static segments take precedence over dynamic ones, typed segments over
+ * regular expressions and <code>{name}</code>, and those over wildcards. A
+ * pattern may be prefixed by an HTTP verb (e.g. <code>"GET /persons"</code>) to
+ * restrict it to that verb; otherwise it matches any verb.
+ * <p>
+ * Lookups do not allocate: the boundaries of the dynamic segments are written
+ * into a caller supplied array.
+ */
+public class Router {
+
+    private static final char[] NO_CHARS = new char[0];
+    private static final Node[] NO_NODES = new Node[0];
+
+    private final Node root = new Node("");
+
+    /** Largest number of dynamic segments in any registered pattern. */
+    private int maxCaptures;
+
+    /**
+     * Register a handler for the given pattern, optionally prefixed by the
+     * verb it is restricted to.
+     *
+     * @throws java.util.regex.PatternSyntaxException if a segment is a
+     *             malformed regular expression
+     */
+    public Router add(String pattern, RequestHandler handler) {
+        int space = pattern.indexOf(' ');
+        if (space > 0) {
+            HttpVerb verb = HttpVerb.valueOf(pattern.substring(0, space));
+            return add(verb, pattern.substring(space + 1).trim(), handler);
+        }
+        return add(null, pattern, handler);
+    }
+
+    /**
+     * Register a handler for the given pattern and verb, <code>null</code>
+     * meaning any verb.
+     */
+    public Router add(HttpVerb verb, String pattern, RequestHandler handler) {
+        List<String> names = Lists.newArrayList();
+        Node node = root;
+        StringBuilder literal = new StringBuilder();
+        int start = 0;
+        while (start <= pattern.length()) {
+            int end = pattern.indexOf('/', start);
+            if (end == -1) {
+                end = pattern.length();
+            }
+            String segment = pattern.substring(start, end);
+            if (segment.startsWith("*")) {
+                if (end != pattern.length()) {
+                    throw new IllegalArgumentException("Wildcard must be the last segment: " + pattern);
+                }
+                node = insertStatic(node, literal.toString());
+                literal.setLength(0);
+                if (node.wildcard == null) {
+                    node.wildcard = new Node("");
+                }
+                node = node.wildcard;
+                names.add(segment.length() > 1 ? segment.substring(1) : null);
+            } else if (isDynamic(segment)) {
+                node = insertStatic(node, literal.toString());
+                literal.setLength(0);
+                String name = null;
+                String type = segment.substring(1, segment.length() - 1);
+                if (segment.charAt(0) == '{') {
+                    int colon = type.indexOf(':');
+                    name = colon == -1 ? type : type.substring(0, colon);
+                    type = colon == -1 ? null : type.substring(colon + 1);
+                }
+                node = insertParam(node, SegmentMatcher.forType(type));
+                names.add(name);
+            } else {
+                literal.append(segment);
+            }
+            if (end < pattern.length()) {
+                literal.append('/');
+            }
+            start = end + 1;
+        }
+        node = insertStatic(node, literal.toString());
+        node.setRoute(verb, new Route(handler, names.toArray(new String[names.size()])), pattern);
+        maxCaptures = Math.max(maxCaptures, names.size());
+        return this;
+    }
+
+    /**
+     * The largest number of dynamic segments a match may report. The array
+     * given to {@link #find} must hold at least twice as many entries.
+     */
+    public int getMaxCaptures() {
+        return maxCaptures;
+    }
+
+    /**
+     * Find the route matching the given verb and path.
+     *
+     * @param captures receives the start (inclusive) and end (exclusive)
+     *            offsets into <code>path</code> of each dynamic segment of the
+     *            matched pattern, in order
+     * @return the matching route, or <code>null</code> if there is none
+     */
+    public Route find(HttpVerb verb, String path, int[] captures) {
+        return match(root, verb, path, 0, captures, 0);
+    }
+
+    private Route match(Node node, HttpVerb verb, String path, int pos, int[] captures, int capture) {
+        int length = path.length();
+        if (pos == length) {
+            Route route = node.route(verb);
+            if (route != null) {
+                return route;
+            }
+        } else {
+            int i = indexOf(node.indices, path.charAt(pos));
+            if (i != -1) {
+                Node child = node.children[i];
+                String label = child.label;
+                if (path.regionMatches(pos, label, 0, label.length())) {
+                    Route route = match(child, verb, path, pos + label.length(), captures, capture);
+                    if (route != null) {
+                        return route;
+                    }
+                }
+            }
+        }
+        if (node.params.length > 0) {
+            int end = path.indexOf('/', pos);
+            if (end == -1) {
+                end = length;
+            }
+            for (Node param : node.params) {
+                if (param.matcher.matches(path, pos, end)) {
+                    Route route = match(param, verb, path, end, captures, capture + 1);
+                    if (route != null) {
+                        captures[2 * capture] = pos;
+                        captures[2 * capture + 1] = end;
+                        return route;
+                    }
+                }
+            }
+        }
+        if (node.wildcard != null) {
+            Route route = node.wildcard.route(verb);
+            if (route != null) {
+                captures[2 * capture] = pos;
+                captures[2 * capture + 1] = length;
+                return route;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isDynamic(String segment) {
+        int last = segment.length() - 1;
+        return last > 0
+                && ((segment.charAt(0) == '{' && segment.charAt(last) == '}') || (segment.charAt(0) == '(' && segment
+                        .charAt(last) == ')'));
+    }
+
+    private static Node insertStatic(Node node, String s) {
+        while (s.length() > 0) {
+            int i = indexOf(node.indices, s.charAt(0));
+            if (i == -1) {
+                Node child = new Node(s);
+                node.addChild(child);
+                return child;
+            }
+            Node child = node.children[i];
+            int common = commonPrefix(child.label, s);
+            if (common < child.label.length()) {
+                Node split = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                split.addChild(child);
+                node.children[i] = split;
+                child = split;
+            }
+            node = child;
+            s = s.substring(common);
+        }
+        return node;
+    }
+
+    private static Node insertParam(Node node, SegmentMatcher matcher) {
+        for (Node param : node.params) {
+            if (param.matcher.equals(matcher)) {
+                return param;
+            }
+        }
+        Node param = new Node("");
+        param.matcher = matcher;
+        Node[] params = Arrays.copyOf(node.params, node.params.length + 1);
+        int i = params.length - 1;
+        while (i > 0 && params[i - 1].matcher.precedence() > matcher.precedence()) {
+            params[i] = params[i - 1];
+            i--;
+        }
+        params[i] = param;
+        node.params = params;
+        return param;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int indexOf(char[] chars, char c) {
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A registered handler together with the names of the dynamic segments of
+     * its pattern (<code>null</code> for unnamed ones).
+     */
+    public static final class Route {
+
+        private final RequestHandler handler;
+        private final RequestHandlerFactory.Provider provider;
+        private final String[] names;
+
+        Route(RequestHandler handler, String[] names) {
+            this.handler = handler;
+            this.provider = RequestHandlerFactory.providerFor(handler);
+            this.names = names;
+        }
+
+        /**
+         * @return the registered handler.
+         */
+        public RequestHandler getHandler() {
+            return handler;
+        }
+
+        /**
+         * @return the instance of the registered handler to serve a request,
+         *         as chosen by its {@link org.apache.awf.annotation.Lifecycle}.
+         */
+        public RequestHandler acquireHandler() {
+            return provider.acquire();
+        }
+
+        public String[] getParameterNames() {
+            return names;
+        }
+    }
+
+    private static final class Node {
+
+        /** Static text consumed when entering this node. */
+        String label;
+        char[] indices = NO_CHARS;
+        Node[] children = NO_NODES;
+        /** Dynamic single segment children, in order of precedence. */
+        Node[] params = NO_NODES;
+        Node wildcard;
+        /** Matcher of the segment this node consumes, if dynamic. */
+        SegmentMatcher matcher;
+        Route[] routes;
+        Route any;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        void addChild(Node child) {
+            indices = Arrays.copyOf(indices, indices.length + 1);
+            indices[indices.length - 1] = child.label.charAt(0);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = child;
+        }
+
+        void setRoute(HttpVerb verb, Route route, String pattern) {
+            if (verb == null) {
+                if (any != null) {
+                    throw new IllegalArgumentException("Duplicate route: " + pattern);
+                }
+                any = route;
+                return;
+            }
+            if (routes == null) {
+                routes = new Route[HttpVerb.values().length];
+            }
+            if (routes[verb.ordinal()] != null) {
+                throw new IllegalArgumentException("Duplicate route: " + verb + " " + pattern);
+            }
+            routes[verb.ordinal()] = route;
+        }
+
+        Route route(HttpVerb verb) {
+            if (routes != null && verb != null && routes[verb.ordinal()] != null) {
+                return routes[verb.ordinal()];
+            }
+            return any;
+        }
+    }
+
+    /**
+     * Decides whether a path segment, given as a region of the path, matches a
+     * dynamic pattern segment.
+     */
+    abstract static class SegmentMatcher {
+
+        static final SegmentMatcher INT = new SegmentMatcher() {
+            @Override
+            boolean matches(String path, int from, int to) {
+                if (from == to) {
+                    return false;
+                }
+                for (int i = from; i < to; i++) {
+                    char c = path.charAt(i);
+                    if (c < '0' || c > '9') {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            int precedence() {
+                return 0;
+            }
+        };
+
+        static final SegmentMatcher UUID = new SegmentMatcher() {
+            @Override
+            boolean matches(String path, int from, int to) {
+                if (to - from != 36) {
+                    return false;
+                }
+                for (int i = 0; i < 36; i++) {
+                    char c = path.charAt(from + i);
+                    if (i == 8 || i == 13 || i == 18 || i == 23) {
+                        if (c != '-') {
+                            return false;
+                        }
+                    } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            int precedence() {
+                return 0;
+            }
+        };
+
+        static final SegmentMatcher ANY = new SegmentMatcher() {
+            @Override
+            boolean matches(String path, int from, int to) {
+                return from < to;
+            }
+
+            @Override
+            int precedence() {
+                return 2;
+            }
+        };
+
+        abstract boolean matches(String path, int from, int to);
+
+        /** Lower values are tried first. */
+        abstract int precedence();
+
+        static SegmentMatcher forType(String type) {
+            if (type == null || type.isEmpty()) {
+                return ANY;
+            }
+            if ("int".equals(type) || "[0-9]+".equals(type) || "\\d+".equals(type)) {
+                return INT;
+            }
+            if ("uuid".equals(type)) {
+                return UUID;
+            }
+            return new RegexMatcher(Pattern.compile(type));
+        }
+    }
+
+    private static final class RegexMatcher extends SegmentMatcher {
+
+        private final Pattern pattern;
+
+        /** The router is shared by all IOLoops, each gets its own matcher. */
+        private final ThreadLocal<Matcher> matcher = new ThreadLocal<Matcher>() {
+            @Override
+            protected Matcher initialValue() {
+                return pattern.matcher("");
+            }
+        };
+
+        RegexMatcher(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        boolean matches(String path, int from, int to) {
+            return matcher.get().reset(path).region(from, to).matches();
+        }
+
+        @Override
+        int precedence() {
+            return 1;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RegexMatcher && ((RegexMatcher) o).pattern.pattern().equals(pattern.pattern());
+        }
+
+        @Override
+        public int hashCode() {
+            return pattern.pattern().hashCode();
+        }
+    }
+}
@@ -20,7 +20,8 @@
 package org.apache.awf.web.handler;
 
 import java.lang.annotation.Annotation;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.awf.annotation.Asynchronous;
 import org.apache.awf.annotation.Authenticated;
@@ -29,42 +30,36 @@ import org.apache.awf.web.http.HttpResponse;
 import org.apache.awf.web.http.protocol.HttpStatus;
 import org.apache.awf.web.http.protocol.HttpVerb;
 
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Maps;
-
 public abstract class RequestHandler implements Cloneable {
 
-    private final ImmutableMap<HttpVerb, Boolean> asynchVerbs;
-    private final ImmutableMap<HttpVerb, Boolean> authVerbs;
+    /**
+     * The annotations of the verb methods, computed once per handler class.
+     */
+    private static final ConcurrentMap<Class<?>, VerbAnnotations> annotations = new ConcurrentHashMap<Class<?>, VerbAnnotations>();
 
-    public RequestHandler() {
+    private final VerbAnnotations verbs;
 
-        Map<HttpVerb, Boolean> asyncV = Maps.newHashMap();
-        Map<HttpVerb, Boolean> authV = Maps.newHashMap();
-        for (HttpVerb verb : HttpVerb.values()) {
-            asyncV.put(verb, isMethodAnnotated(verb, Asynchronous.class));
-            authV.put(verb, isMethodAnnotated(verb, Authenticated.class));
-        }
+    /** The pool this instance returns to, if it is a pooled clone. */
+    RequestHandlerFactory.Pool pool;
 
-        asynchVerbs = ImmutableMap.copyOf(asyncV);
-        authVerbs = ImmutableMap.copyOf(authV);
-    }
-
-    private boolean isMethodAnnotated(HttpVerb verb, Class<? extends Annotation> annotation) {
-        try {
-            Class<?>[] parameterTypes = { HttpRequest.class, HttpResponse.class };
-            return getClass().getMethod(verb.toString().toLowerCase(), parameterTypes).getAnnotation(annotation) != null;
-        } catch (NoSuchMethodException nsme) {
-            return false;
+    public RequestHandler() {
+        VerbAnnotations cached = annotations.get(getClass());
+        if (cached == null) {
+            cached = new VerbAnnotations(getClass());
+            VerbAnnotations raced = annotations.putIfAbsent(getClass(), cached);
+            if (raced != null) {
+                cached = raced;
+            }
         }
+        verbs = cached;
     }
 
     public boolean isMethodAsynchronous(HttpVerb verb) {
-        return asynchVerbs.get(verb);
+        return verbs.asynchronous[verb.ordinal()];
     }
 
     public boolean isMethodAuthenticated(HttpVerb verb) {
-        return authVerbs.get(verb);
+        return verbs.authenticated[verb.ordinal()];
     }
 
     // Default implementation of HttpMethods return a 501 page
@@ -97,6 +92,33 @@ public abstract class RequestHandler implements Cloneable {
         return null;
     }
 
+    /**
+     * Which verb methods of a handler class are {@link Asynchronous} or
+     * {@link Authenticated}, indexed by <code>HttpVerb.ordinal()</code>.
+     */
+    private static final class VerbAnnotations {
+
+        final boolean[] asynchronous = new boolean[HttpVerb.values().length];
+        final boolean[] authenticated = new boolean[HttpVerb.values().length];
+
+        VerbAnnotations(Class<?> handlerClass) {
+            for (HttpVerb verb : HttpVerb.values()) {
+                asynchronous[verb.ordinal()] = isMethodAnnotated(handlerClass, verb, Asynchronous.class);
+                authenticated[verb.ordinal()] = isMethodAnnotated(handlerClass, verb, Authenticated.class);
+            }
+        }
+
+        private static boolean isMethodAnnotated(Class<?> handlerClass, HttpVerb verb,
+                Class<? extends Annotation> annotation) {
+            try {
+                Class<?>[] parameterTypes = { HttpRequest.class, HttpResponse.class };
+                return handlerClass.getMethod(verb.toString().toLowerCase(), parameterTypes).getAnnotation(annotation) != null;
+            } catch (NoSuchMethodException nsme) {
+                return false;
+            }
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public Object clone() throws CloneNotSupportedException {
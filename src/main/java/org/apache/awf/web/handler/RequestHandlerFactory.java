@@ -19,6 +19,9 @@
  */
 package org.apache.awf.web.handler;
 
+import java.util.ArrayDeque;
+
+import org.apache.awf.annotation.Lifecycle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,4 +54,113 @@ public class RequestHandlerFactory {
 
         return null;
     }
+
+    /**
+     * Create the <code>Provider</code> of instances for the given registered
+     * <code>RequestHandler</code>, as chosen by its {@link Lifecycle}
+     * annotation.
+     * 
+     * @param handler the registered <code>RequestHandler</code>.
+     * @return the <code>Provider</code> to obtain instances from.
+     */
+    public static Provider providerFor(final RequestHandler handler) {
+        Lifecycle lifecycle = handler.getClass().getAnnotation(Lifecycle.class);
+        Lifecycle.Scope scope = lifecycle == null ? Lifecycle.Scope.CLONE : lifecycle.value();
+        switch (scope) {
+        case SINGLETON:
+            return new Provider() {
+                @Override
+                public RequestHandler acquire() {
+                    return handler;
+                }
+            };
+        case PER_IOLOOP:
+            return new Provider() {
+                private final ThreadLocal<RequestHandler> instance = new ThreadLocal<RequestHandler>() {
+                    @Override
+                    protected RequestHandler initialValue() {
+                        return cloneHandler(handler);
+                    }
+                };
+
+                @Override
+                public RequestHandler acquire() {
+                    return instance.get();
+                }
+            };
+        case POOLED:
+            return new Pool(handler, lifecycle.poolSize());
+        default:
+            return new Provider() {
+                @Override
+                public RequestHandler acquire() {
+                    return cloneHandler(handler);
+                }
+            };
+        }
+    }
+
+    /**
+     * Return an instance obtained from a <code>Provider</code> once it has
+     * finished serving its request. Only pooled instances are affected.
+     * 
+     * @param handler the instance that served the request.
+     */
+    public static void release(RequestHandler handler) {
+        if (handler != null && handler.pool != null) {
+            handler.pool.release(handler);
+        }
+    }
+
+    /**
+     * Supplies the instances serving the requests routed to a registered
+     * <code>RequestHandler</code>.
+     */
+    public abstract static class Provider {
+
+        /**
+         * @return the instance to serve the current request.
+         */
+        public abstract RequestHandler acquire();
+    }
+
+    /**
+     * Keeps up to <code>size</code> idle clones per thread. Requests of an
+     * <code>IOLoop</code> are served, and finished, on its own thread.
+     */
+    static final class Pool extends Provider {
+
+        private final RequestHandler handler;
+        private final int size;
+        private final ThreadLocal<ArrayDeque<RequestHandler>> idle = new ThreadLocal<ArrayDeque<RequestHandler>>() {
+            @Override
+            protected ArrayDeque<RequestHandler> initialValue() {
+                return new ArrayDeque<RequestHandler>();
+            }
+        };
+
+        Pool(RequestHandler handler, int size) {
+            this.handler = handler;
+            this.size = size;
+        }
+
+        @Override
+        public RequestHandler acquire() {
+            RequestHandler instance = idle.get().pollFirst();
+            if (instance == null) {
+                instance = cloneHandler(handler);
+                if (instance != null) {
+                    instance.pool = this;
+                }
+            }
+            return instance;
+        }
+
+        void release(RequestHandler instance) {
+            ArrayDeque<RequestHandler> instances = idle.get();
+            if (instances.size() < size) {
+                instances.addFirst(instance);
+            }
+        }
+    }
 }
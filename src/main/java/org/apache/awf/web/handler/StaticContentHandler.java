@@ -20,10 +20,13 @@
 package org.apache.awf.web.handler;
 
 import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import javax.activation.FileTypeMap;
 
 import org.apache.awf.util.DateUtil;
+import org.apache.awf.util.HttpUtil;
 import org.apache.awf.web.http.HttpException;
 import org.apache.awf.web.http.HttpRequest;
 import org.apache.awf.web.http.HttpResponse;
@@ -47,6 +50,49 @@ public class StaticContentHandler extends RequestHandler {
 
     private final FileTypeMap mimeTypeMap = FileTypeMap.getDefaultFileTypeMap();
 
+    /** Content codings of sidecar files, in order of preference, with their extension. */
+    private final static String[][] SIDECARS = { { "br", ".br" }, { "gzip", ".gz" } };
+
+    /** Cache of small files, <code>null</code> if disabled. */
+    private final StaticFileCache cache;
+
+    /** Whether precompressed sidecar files are looked for. */
+    private final boolean precompressed;
+
+    /** Maximum number of files whose sidecars are remembered. */
+    private final static int MAX_SIDECAR_LOOKUPS = 1024;
+
+    /** The sidecars found per request path, the eldest is the least recently used. */
+    private final Map<String, Sidecars> sidecars = new LinkedHashMap<String, Sidecars>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Sidecars> eldest) {
+            return size() > MAX_SIDECAR_LOOKUPS;
+        }
+    };
+
+    public StaticContentHandler() {
+        this(null, false);
+    }
+
+    /**
+     * @param cache the cache to serve small files from, <code>null</code> to
+     *            disable caching
+     * @param precompressed whether a precompressed sidecar of the requested
+     *            file, e.g. "app.js.br" or "app.js.gz" for "app.js", is sent
+     *            instead when the client accepts its encoding and it is not
+     *            older than the file
+     */
+    public StaticContentHandler(StaticFileCache cache, boolean precompressed) {
+        this.cache = cache;
+        this.precompressed = precompressed;
+    }
+
+    /**
+     * @return the shared instance, without cache nor precompressed files.
+     */
     public static StaticContentHandler getInstance() {
         return instance;
     }
@@ -72,6 +118,23 @@ public class StaticContentHandler extends RequestHandler {
     private void perform(final HttpRequest request, final HttpResponse response, boolean hasBody) {
 
         final String path = request.getRequestedPath();
+        final String range = request.getHeader("Range");
+        if (precompressed) {
+            response.setHeader("Vary", "Accept-Encoding");
+            // ranges always apply to the uncompressed file
+            if (range == null && performPrecompressed(request, response, hasBody, path)) {
+                return;
+            }
+        }
+        // ranges are always sent from the file
+        final StaticFileCache cache = range == null ? this.cache : null;
+        if (cache != null) {
+            StaticFileCache.Entry entry = cache.get(path);
+            if (entry != null && perform(request, response, hasBody, entry)) {
+                return;
+            }
+        }
+
         final File file = new File(path.substring(1)); // remove the leading '/'
         if (!file.exists()) {
             throw new HttpException(HttpStatus.CLIENT_ERROR_NOT_FOUND);
@@ -79,26 +142,204 @@ public class StaticContentHandler extends RequestHandler {
             throw new HttpException(HttpStatus.CLIENT_ERROR_FORBIDDEN, path + "is not a file");
         }
 
-        final long lastModified = file.lastModified();
-        response.setHeader("Last-Modified", DateUtil.parseToRFC1123(lastModified));
-        response.setHeader("Cache-Control", "public");
+        final String mimeType = getContentType(file);
+        if (cache != null) {
+            StaticFileCache.Entry entry = cache.load(path, file, mimeType);
+            if (entry != null && perform(request, response, hasBody, entry)) {
+                return;
+            }
+        }
+        send(request, response, hasBody, file, mimeType, range);
+    }
+
+    /**
+     * Sends the sidecar of the requested file with the preferred encoding
+     * accepted by the client, if any.
+     * 
+     * @return <code>false</code> if there is no suitable sidecar, nothing has
+     *         been sent then.
+     */
+    private boolean performPrecompressed(HttpRequest request, HttpResponse response, boolean hasBody, String path) {
+        final String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        final Sidecars found = getSidecars(path);
+        for (int i = 0; i < SIDECARS.length; i++) {
+            final File compressed = found.files[i];
+            if (compressed == null || !HttpUtil.acceptsEncoding(acceptEncoding, SIDECARS[i][0])) {
+                continue;
+            }
+            response.setHeader("Content-Encoding", SIDECARS[i][0]);
+            if (cache != null) {
+                StaticFileCache.Entry entry = cache.get(found.keys[i]);
+                if (entry == null) {
+                    entry = cache.load(found.keys[i], compressed, found.contentType);
+                }
+                if (entry != null && perform(request, response, hasBody, entry)) {
+                    return true;
+                }
+            }
+            send(request, response, hasBody, compressed, found.contentType, null);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Looks up the sidecars of the file of the given request path. The result
+     * is remembered and the file system checked again at most once per
+     * {@link StaticFileCache#DEFAULT_REVALIDATE_INTERVAL}.
+     */
+    private Sidecars getSidecars(String path) {
+        Sidecars found;
+        synchronized (sidecars) {
+            found = sidecars.get(path);
+        }
+        final long now = System.currentTimeMillis();
+        if (found != null && now - found.checked < StaticFileCache.DEFAULT_REVALIDATE_INTERVAL) {
+            return found;
+        }
+
+        final File file = new File(path.substring(1));
+        final File[] files = new File[SIDECARS.length];
+        if (file.isFile()) {
+            final long lastModified = file.lastModified();
+            for (int i = 0; i < SIDECARS.length; i++) {
+                final File compressed = new File(file.getPath() + SIDECARS[i][1]);
+                // a stale sidecar is never sent
+                if (compressed.isFile() && compressed.lastModified() >= lastModified) {
+                    files[i] = compressed;
+                }
+            }
+        }
+        found = new Sidecars(path, now, files, getContentType(file));
+        synchronized (sidecars) {
+            sidecars.put(path, found);
+        }
+        return found;
+    }
+
+    private String getContentType(File file) {
         String mimeType = mimeTypeMap.getContentType(file);
         if ("text/plain".equals(mimeType)) {
             mimeType += "; charset=utf-8";
         }
+        return mimeType;
+    }
+
+    /**
+     * Sends the given file, or the ranges of it requested by the given
+     * "Range" header (if not <code>null</code>).
+     */
+    private void send(HttpRequest request, HttpResponse response, boolean hasBody, File file, String mimeType,
+            String range) {
+        final long lastModified = file.lastModified();
+        response.setHeader("Last-Modified", DateUtil.parseToRFC1123(lastModified));
+        response.setHeader("Cache-Control", "public");
+        response.setHeader("Accept-Ranges", "bytes");
         response.setHeader("Content-Type", mimeType);
-        final String ifModifiedSince = request.getHeader("If-Modified-Since");
-        if (ifModifiedSince != null) {
-            final long ims = DateUtil.parseToMilliseconds(ifModifiedSince);
-            if (lastModified <= ims) {
-                response.setStatus(HttpStatus.REDIRECTION_NOT_MODIFIED);
-                logger.debug("not modified");
-                return;
+        if (isNotModified(request, lastModified)) {
+            response.setStatus(HttpStatus.REDIRECTION_NOT_MODIFIED);
+            logger.debug("not modified");
+            return;
+        }
+
+        final long length = file.length();
+        final long[] ranges = range != null && isRangeApplicable(request, lastModified) ? HttpUtil.parseByteRanges(
+                range, length) : null;
+        if (ranges == null) {
+            if (hasBody) {
+                response.write(file);
+            }
+        } else if (ranges.length == 0) {
+            response.setStatus(HttpStatus.CLIENT_ERROR_REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.setHeader("Content-Range", "bytes */" + length);
+        } else if (ranges.length == 2) {
+            response.setStatus(HttpStatus.SUCCESS_PARTIAL_CONTENT);
+            response.setHeader("Content-Range", "bytes " + ranges[0] + "-" + ranges[1] + "/" + length);
+            if (hasBody) {
+                response.write(file, ranges[0], ranges[1] - ranges[0] + 1);
+            }
+        } else {
+            response.setStatus(HttpStatus.SUCCESS_PARTIAL_CONTENT);
+            if (hasBody) {
+                response.writeRanges(file, ranges, mimeType);
+            }
+        }
+    }
+
+    /**
+     * Evaluates "If-Range": the ranges only apply if the file is unchanged.
+     * Static files have no entity tag, so only an exact date can match.
+     */
+    private boolean isRangeApplicable(HttpRequest request, long lastModified) {
+        final String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return false;
+        }
+        // Last-Modified is sent with a precision of one second
+        return DateUtil.parseToMilliseconds(ifRange) == lastModified / 1000 * 1000;
+    }
+
+    /**
+     * Serves a file from the cache.
+     * 
+     * @return <code>false</code> if the entry was evicted (and freed) in the
+     *         meantime, nothing has been sent then.
+     */
+    private boolean perform(HttpRequest request, HttpResponse response, boolean hasBody, StaticFileCache.Entry entry) {
+        response.setEncodedHeaders(entry.getHeaders());
+        if (isNotModified(request, entry.getLastModified())) {
+            response.setStatus(HttpStatus.REDIRECTION_NOT_MODIFIED);
+            logger.debug("not modified");
+            return true;
+        }
+
+        if (hasBody && !entry.writeTo(response)) {
+            response.setEncodedHeaders(null);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The usable sidecars of a file, as found at a given time.
+     */
+    private static final class Sidecars {
+
+        private final long checked;
+
+        /** Per entry of {@link #SIDECARS}, <code>null</code> if missing or stale. */
+        private final File[] files;
+
+        /** Per entry of {@link #SIDECARS}, the key of the sidecar in the cache. */
+        private final String[] keys;
+
+        /** Of the uncompressed file. */
+        private final String contentType;
+
+        Sidecars(String path, long checked, File[] files, String contentType) {
+            this.checked = checked;
+            this.files = files;
+            this.contentType = contentType;
+            keys = new String[SIDECARS.length];
+            for (int i = 0; i < SIDECARS.length; i++) {
+                // not a request path, so never mixed up with a request for the sidecar itself
+                keys[i] = SIDECARS[i][0] + ":" + path;
             }
         }
+    }
 
-        if (hasBody) {
-            response.write(file);
+    private boolean isNotModified(HttpRequest request, long lastModified) {
+        final String ifModifiedSince = request.getHeader("If-Modified-Since");
+        if (ifModifiedSince != null) {
+            final long ims = DateUtil.parseToMilliseconds(ifModifiedSince);
+            return lastModified <= ims;
         }
+        return false;
     }
 }
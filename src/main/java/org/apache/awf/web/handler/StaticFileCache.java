@@ -0,0 +1,295 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.handler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.awf.io.buffer.DirectBuffers;
+import org.apache.awf.util.DateUtil;
+import org.apache.awf.web.http.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+
+/**
+ * Keeps the content of static files in memory, together with their
+ * pre-encoded headers, so that hot files are served without touching the file
+ * system. Small files are copied into direct buffers, medium-sized files (up
+ * to the configured maximum) are memory-mapped, larger files are not cached
+ * and left to {@link org.apache.awf.web.http.HttpResponse#write(File)}. The
+ * cache is bounded by the total size of the content and evicts the least
+ * recently used files first.
+ * <p>
+ * The buffer of an entry is shared read-only by all connections (and
+ * <code>IOLoop</code>s) sending it, and reference counted: the memory is
+ * freed, or the file unmapped, once the entry has been evicted and the last
+ * response using it is done.
+ * <p>
+ * A cached file is checked for modification (or removal) at most once per
+ * revalidation interval, hits in between cost no system call at all.
+ */
+public class StaticFileCache {
+
+    private final static Logger logger = LoggerFactory.getLogger(StaticFileCache.class);
+
+    /** Default time between two checks of a cached file, in milliseconds. */
+    public static final long DEFAULT_REVALIDATE_INTERVAL = 1000;
+
+    private final long maxSize;
+    private final long maxFileSize;
+    private final long maxMappedFileSize;
+    private final long revalidateInterval;
+
+    /** In access order, the eldest entry is the least recently used. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    private long size;
+
+    /**
+     * @param maxSize the maximum number of bytes of content to keep.
+     * @param maxFileSize the size of the largest file to cache.
+     */
+    public StaticFileCache(long maxSize, long maxFileSize) {
+        this(maxSize, maxFileSize, 0, DEFAULT_REVALIDATE_INTERVAL);
+    }
+
+    /**
+     * @param maxSize the maximum number of bytes of content to keep.
+     * @param maxFileSize the size of the largest file to cache.
+     * @param revalidateInterval the time between two checks of a cached file,
+     *            in milliseconds.
+     */
+    public StaticFileCache(long maxSize, long maxFileSize, long revalidateInterval) {
+        this(maxSize, maxFileSize, 0, revalidateInterval);
+    }
+
+    /**
+     * @param maxSize the maximum number of bytes of content to keep.
+     * @param maxFileSize the size of the largest file to copy into memory.
+     * @param maxMappedFileSize the size of the largest file to map, files
+     *            between both sizes are memory-mapped.
+     * @param revalidateInterval the time between two checks of a cached file,
+     *            in milliseconds.
+     */
+    public StaticFileCache(long maxSize, long maxFileSize, long maxMappedFileSize, long revalidateInterval) {
+        this.maxSize = maxSize;
+        this.maxFileSize = Math.min(maxFileSize, maxSize);
+        this.maxMappedFileSize = Math.min(Math.min(maxMappedFileSize, maxSize), Integer.MAX_VALUE);
+        this.revalidateInterval = revalidateInterval;
+    }
+
+    /**
+     * Retrieve the cached file of the given request path.
+     * 
+     * @return the entry, or <code>null</code> if the file is not cached or
+     *         has changed since it was cached.
+     */
+    public Entry get(String path) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(path);
+        }
+        if (entry == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - entry.checked >= revalidateInterval) {
+            if (entry.file.lastModified() != entry.lastModified || entry.file.length() != entry.length) {
+                remove(path, entry);
+                return null;
+            }
+            entry.checked = now;
+        }
+        return entry;
+    }
+
+    /**
+     * Read (or map) the given file into the cache, unless it is too large.
+     * 
+     * @param path the request path the file is served for.
+     * @param file the file, known to exist.
+     * @param contentType the value of its "Content-Type" header.
+     * @return the entry, or <code>null</code> if the file is not cached.
+     */
+    public Entry load(String path, File file, String contentType) {
+        long lastModified = file.lastModified();
+        long length = file.length();
+        if (length > maxFileSize && length > maxMappedFileSize) {
+            return null;
+        }
+        ByteBuffer content;
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            if (length > maxFileSize) {
+                // the mapping stays valid once the channel is closed
+                content = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            } else {
+                content = ByteBuffer.allocateDirect((int) length);
+                while (content.hasRemaining() && channel.read(content) >= 0) {
+                }
+                if (content.hasRemaining()) {
+                    DirectBuffers.free(content);
+                    return null; // truncated while read
+                }
+                content.flip();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not cache static file {}: {}", file, e.getMessage());
+            return null;
+        } finally {
+            Closeables.closeQuietly(in);
+        }
+
+        Entry entry = new Entry(file, lastModified, length, contentType, content, length > maxFileSize);
+        List<Entry> evicted = new ArrayList<Entry>(1);
+        synchronized (this) {
+            Entry previous = entries.put(path, entry);
+            if (previous != null) {
+                size -= previous.length;
+                evicted.add(previous);
+            }
+            size += length;
+            for (Iterator<Entry> it = entries.values().iterator(); size > maxSize && it.hasNext();) {
+                Entry eldest = it.next();
+                size -= eldest.length;
+                evicted.add(eldest);
+                it.remove();
+            }
+        }
+        for (Entry e : evicted) {
+            e.release();
+        }
+        return entry;
+    }
+
+    /**
+     * @return the number of bytes of content currently kept.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    private void remove(String path, Entry entry) {
+        synchronized (this) {
+            if (entries.get(path) != entry) {
+                return; // already removed
+            }
+            entries.remove(path);
+            size -= entry.length;
+        }
+        entry.release();
+    }
+
+    /**
+     * A cached file.
+     */
+    public static final class Entry {
+
+        private final File file;
+        private final long lastModified;
+        private final long length;
+        private final byte[] headers;
+        private final ByteBuffer buffer;
+        private final ByteBuffer content;
+        private final boolean mapped;
+        private volatile long checked;
+
+        /** One reference held by the cache, plus one per response sending it. */
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private final Runnable releaser = new Runnable() {
+
+            @Override
+            public void run() {
+                release();
+            }
+        };
+
+        Entry(File file, long lastModified, long length, String contentType, ByteBuffer buffer, boolean mapped) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.headers = ("Last-Modified: " + DateUtil.parseToRFC1123(lastModified) + "\r\n"
+                    + "Cache-Control: public\r\n" + "Accept-Ranges: bytes\r\n" + "Content-Type: " + contentType + "\r\n").getBytes(Charsets.ISO_8859_1);
+            this.buffer = buffer;
+            this.content = buffer.asReadOnlyBuffer();
+            this.mapped = mapped;
+            this.checked = System.currentTimeMillis();
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * @return the "Last-Modified", "Cache-Control", "Accept-Ranges" and
+         *         "Content-Type" header lines.
+         */
+        public byte[] getHeaders() {
+            return headers;
+        }
+
+        /**
+         * @return <code>true</code> if the content is a mapped file.
+         */
+        public boolean isMapped() {
+            return mapped;
+        }
+
+        /**
+         * Send the content as the complete body of the given response. The
+         * content stays valid until the response is done with it, even if the
+         * entry is evicted meanwhile.
+         * 
+         * @return <code>false</code> if nothing was sent because the entry has
+         *         already been evicted and freed.
+         */
+        public boolean writeTo(HttpResponse response) {
+            int n;
+            do {
+                n = references.get();
+                if (n == 0) {
+                    return false;
+                }
+            } while (!references.compareAndSet(n, n + 1));
+            response.write(content.duplicate(), releaser);
+            return true;
+        }
+
+        private void release() {
+            if (references.decrementAndGet() == 0) {
+                DirectBuffers.free(buffer);
+            }
+        }
+    }
+}
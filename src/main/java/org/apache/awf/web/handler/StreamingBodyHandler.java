@@ -0,0 +1,48 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.handler;
+
+import java.nio.ByteBuffer;
+
+import org.apache.awf.web.http.HttpRequest;
+import org.apache.awf.web.http.RequestBodyStream;
+
+/**
+ * Implemented by a {@link RequestHandler} that consumes request bodies while
+ * they arrive instead of having them buffered. Such bodies are not limited by
+ * {@link org.apache.awf.web.http.HttpServerDescriptor#MAX_BODY}, and
+ * {@link HttpRequest#getBody()} returns <code>null</code> for them.
+ * <p>
+ * The verb method of the handler is invoked as usual, once the whole body has
+ * been passed to {@link #onBodyData}.
+ */
+public interface StreamingBodyHandler {
+
+    /**
+     * Receives the next part of the body of the given request, chunked
+     * transfer encoding removed.
+     * 
+     * @param request the request the body belongs to.
+     * @param data the received bytes, only valid during this call.
+     * @param stream the body stream, to pause reading until the data is
+     *            processed.
+     */
+    void onBodyData(HttpRequest request, ByteBuffer data, RequestBodyStream stream);
+}
@@ -0,0 +1,89 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.http;
+
+import java.util.ArrayDeque;
+import java.util.zip.Deflater;
+
+/**
+ * Reuses {@link Deflater}s, whose native state is expensive to allocate, and
+ * the scratch arrays they work on. Every {@link HttpProtocol} (i.e. every
+ * IOLoop) owns one pool, it is not thread safe.
+ */
+class DeflaterPool {
+
+    static final int DEFAULT_CAPACITY = 16;
+
+    private static final int SCRATCH_SIZE = 8192;
+
+    private final int capacity;
+    private final int level;
+
+    /** Deflaters producing raw deflate data (for gzip), and zlib data. */
+    private final ArrayDeque<Deflater> raw = new ArrayDeque<Deflater>();
+    private final ArrayDeque<Deflater> zlib = new ArrayDeque<Deflater>();
+
+    /** Scratch arrays for the input and output of a deflater. */
+    final byte[] input = new byte[SCRATCH_SIZE];
+    final byte[] output = new byte[SCRATCH_SIZE];
+
+    DeflaterPool() {
+        this(DEFAULT_CAPACITY, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param capacity the maximum number of idle deflaters kept of each kind.
+     * @param level the compression level of the deflaters.
+     */
+    DeflaterPool(int capacity, int level) {
+        this.capacity = capacity;
+        this.level = level;
+    }
+
+    /**
+     * @param nowrap <code>true</code> for raw deflate data, as used by gzip;
+     *            <code>false</code> for zlib data.
+     */
+    Deflater acquire(boolean nowrap) {
+        Deflater deflater = (nowrap ? raw : zlib).pollFirst();
+        return deflater != null ? deflater : new Deflater(level, nowrap);
+    }
+
+    /**
+     * Return a deflater acquired with the same nowrap, it must not be used
+     * afterwards.
+     */
+    void release(Deflater deflater, boolean nowrap) {
+        ArrayDeque<Deflater> idle = nowrap ? raw : zlib;
+        if (idle.size() < capacity) {
+            deflater.reset();
+            idle.addFirst(deflater);
+        } else {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the number of idle deflaters of the given kind.
+     */
+    int size(boolean nowrap) {
+        return (nowrap ? raw : zlib).size();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.http;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+import org.apache.awf.io.buffer.CompositeByteBuffer;
+
+import com.google.common.io.Closeables;
+
+/**
+ * Sends regions of a file, each one optionally preceded by some bytes (e.g.
+ * the part headers of a <code>multipart/byteranges</code> body), with
+ * <code>FileChannel.transferTo</code>, so the file content is never copied
+ * into user space. Attached to the <code>SelectionKey</code> while the socket
+ * does not accept all of it.
+ */
+class FileTransfer {
+
+    /** Bytes to send before the file regions, e.g. the headers. */
+    private final CompositeByteBuffer head;
+    private final FileInputStream in;
+    private final FileChannel channel;
+    private final ArrayDeque<Part> parts = new ArrayDeque<Part>(2);
+
+    private static final class Part {
+
+        final ByteBuffer prefix;
+        long position;
+        final long end;
+
+        Part(ByteBuffer prefix, long position, long end) {
+            this.prefix = prefix;
+            this.position = position;
+            this.end = end;
+        }
+    }
+
+    FileTransfer(CompositeByteBuffer head, File file) throws IOException {
+        this.head = head;
+        this.in = new FileInputStream(file);
+        this.channel = in.getChannel();
+    }
+
+    /**
+     * Queue count bytes of the file starting at position, preceded by the
+     * given bytes (if not <code>null</code>).
+     */
+    void add(ByteBuffer prefix, long position, long count) {
+        parts.addLast(new Part(prefix, position, position + count));
+    }
+
+    /**
+     * Write as much as the socket accepts.
+     * 
+     * @return the number of bytes written.
+     * @throws IOException also if the file was truncated before all of it
+     *             was sent, the transfer can not be finished then.
+     */
+    long writeTo(SocketChannel socket) throws IOException {
+        long written = 0;
+        if (head.hasRemaining()) {
+            written += head.writeTo(socket);
+            if (head.hasRemaining()) {
+                return written;
+            }
+        }
+        while (!parts.isEmpty()) {
+            Part part = parts.peekFirst();
+            if (part.prefix != null && part.prefix.hasRemaining()) {
+                written += socket.write(part.prefix);
+                if (part.prefix.hasRemaining()) {
+                    return written;
+                }
+            }
+            while (part.position < part.end) {
+                long n = channel.transferTo(part.position, part.end - part.position, socket);
+                if (n <= 0) {
+                    if (part.position >= channel.size()) {
+                        throw new EOFException("File truncated at " + channel.size() + " bytes, expected "
+                                + part.end);
+                    }
+                    return written; // socket buffer full
+                }
+                part.position += n;
+                written += n;
+            }
+            parts.pollFirst();
+        }
+        return written;
+    }
+
+    boolean isDone() {
+        return !head.hasRemaining() && parts.isEmpty();
+    }
+
+    void close() {
+        head.release();
+        Closeables.closeQuietly(in);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.http;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.apache.awf.io.IOHandler;
+import org.apache.awf.io.IOLoop;
+import org.apache.awf.io.IOLoopBalancer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@code IOHandler} of a dedicated acceptor <code>IOLoop</code>. Accepts new
+ * connections on the listening socket and hands each of them over to the
+ * {@link HttpProtocol} of the worker <code>IOLoop</code> picked by an
+ * {@link IOLoopBalancer}. The acceptor never reads from or writes to the
+ * client channels itself.
+ */
+public class HttpAcceptor implements IOHandler {
+
+    private final static Logger logger = LoggerFactory.getLogger(HttpAcceptor.class);
+
+    private final IOLoopBalancer balancer;
+    private final List<IOLoop> workers;
+    private final Map<IOLoop, HttpProtocol> protocols;
+
+    /**
+     * @param balancer picks the worker of each new connection
+     * @param protocols the <code>HttpProtocol</code> of each worker
+     *            <code>IOLoop</code>
+     */
+    public HttpAcceptor(IOLoopBalancer balancer, Map<IOLoop, HttpProtocol> protocols) {
+        if (protocols.isEmpty()) {
+            throw new IllegalArgumentException("At least one worker IOLoop is required");
+        }
+        this.balancer = balancer;
+        this.protocols = ImmutableMap.copyOf(protocols);
+        this.workers = ImmutableList.copyOf(this.protocols.keySet());
+    }
+
+    @Override
+    public void handleAccept(SelectionKey key) throws IOException {
+        ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
+        SocketChannel clientChannel;
+        // drain the accept backlog, this IOLoop does nothing else
+        while ((clientChannel = serverChannel.accept()) != null) {
+            IOLoop worker = balancer.select(workers);
+            try {
+                protocols.get(worker).handOff(clientChannel);
+            } catch (IOException e) {
+                logger.error("Could not hand off accepted connection: {}", e);
+                // not registered with any IOLoop yet
+                com.google.common.io.Closeables.closeQuietly(clientChannel);
+            }
+        }
+    }
+
+    @Override
+    public void handleConnect(SelectionKey key) throws IOException {
+        logger.error("handle connect in HttpAcceptor...");
+    }
+
+    @Override
+    public void handleRead(SelectionKey key) throws IOException {
+        logger.error("handle read in HttpAcceptor...");
+    }
+
+    @Override
+    public void handleWrite(SelectionKey key) {
+        logger.error("handle write in HttpAcceptor...");
+    }
+
+    @Override
+    public String toString() {
+        return "HttpAcceptor";
+    }
+
+}
@@ -19,6 +19,10 @@
  */
 package org.apache.awf.web.http;
 
+import java.nio.ByteBuffer;
+
+import org.apache.awf.util.ByteScanner;
+
 /**
  * Lexer class responsible for lexing an HTTP stream into tokens.
  * The tokens are composed of Method, URI, Protocol version, Header name and header value.
@@ -41,6 +45,10 @@ public class HttpBufferedLexer {
      */
     static final StopChars SP_SEPARATOR = new StopChars() {
 
+        public int indexOf(ByteBuffer buffer, int from, int to) {
+            return ByteScanner.indexOfAny(buffer, from, to, (byte) SP, (byte) CR, (byte) LF);
+        }
+
         public boolean isSeparator(int ptr) {
             return ptr == SP;
         }
@@ -56,6 +64,10 @@ public class HttpBufferedLexer {
      */
     static final StopChars CRLF_SEPARATOR = new StopChars() {
 
+        public int indexOf(ByteBuffer buffer, int from, int to) {
+            return ByteScanner.indexOfAny(buffer, from, to, (byte) CR, (byte) LF);
+        }
+
         public boolean isSeparator(int ptr) {
             return ptr == CR || ptr == LF;
         }
@@ -70,6 +82,10 @@ public class HttpBufferedLexer {
      */
     static final StopChars HEADER_NAME_SEPARATOR = new StopChars() {
 
+        public int indexOf(ByteBuffer buffer, int from, int to) {
+            return ByteScanner.indexOfAny(buffer, from, to, (byte) COLON, (byte) CR, (byte) LF);
+        }
+
         public boolean isSeparator(int ptr) {
             return ptr == COLON;
         }
@@ -106,7 +122,8 @@ public class HttpBufferedLexer {
 
         switch (context.currentType){
             case REQUEST_LINE: { // read the first token of the request line METHOD
-                if (skipWhiteSpaceAndLine(context)){
+                // a method split across buffers must not skip the separator
+                if (context.tokenLength() > 0 || skipWhiteSpaceAndLine(context)){
                     // Get method token
                     res = nextWord(context, HttpParsingContext.TokenType.REQUEST_METHOD, SP_SEPARATOR, METHOD_LENGTH);
                     
@@ -125,8 +142,12 @@ public class HttpBufferedLexer {
                 break;
             }
             case HTTP_VERSION:{ // First header line
-                context.skips = 0;
-                if (!skipEndOfLine(context)){
+                if (context.complete) {
+                    context.skips = 0;
+                }
+                if (context.tokenLength() > 0) { // header name split across buffers
+                    res = nextWord(context, HttpParsingContext.TokenType.HEADER_NAME, HEADER_NAME_SEPARATOR, HEADER_NAME_LENGTH);
+                } else if (!skipEndOfLine(context)){
                     res = nextWord(context, HttpParsingContext.TokenType.HEADER_NAME, HEADER_NAME_SEPARATOR, HEADER_NAME_LENGTH);
                 }else {
                     context.setBodyFound();
@@ -139,8 +160,12 @@ public class HttpBufferedLexer {
                break;
             }
             case HEADER_VALUE:{ // Might be a header value for multiline headers, a header name, or Body
-                context.skips = 0;
-                if (!skipEndOfLine(context)){
+                if (context.complete) {
+                    context.skips = 0;
+                }
+                if (context.tokenLength() > 0) { // header name split across buffers
+                    res = nextWord(context, HttpParsingContext.TokenType.HEADER_NAME, HEADER_NAME_SEPARATOR, HEADER_NAME_LENGTH);
+                } else if (!skipEndOfLine(context)){
                     if (context.currentPointer == SP || context.currentPointer == TAB){
                         context.deleteFirstCharFromTokenBuffer(); // Don't keep the first whitespace character
                         res = nextWord(context, HttpParsingContext.TokenType.HEADER_VALUE,CRLF_SEPARATOR, HEADER_VALUE_LENGTH);
@@ -181,24 +206,36 @@ public class HttpBufferedLexer {
 	}
 
     /**
-     *
+     * Scans the buffer for the end of the current token. The token is not
+     * copied, its bounds are recorded in the context.
      */
     public int nextWord(HttpParsingContext context, HttpParsingContext.TokenType type, StopChars stopChars, int maxLen){
-        int currentChar = 0;
-
-		while(context.hasRemaining()){
-			currentChar = context.incrementAndGetPointer();
-			if (stopChars.isForbidden(currentChar)){
-				return -1; // Bad format Request should not contain this char at this point
-			} else if (stopChars.isSeparator(currentChar)){
-                if (context.tokenGreaterThan(maxLen)){
-                    return -1; // Too long
-                }
-                context.storeCompleteToken(type);
-                return 1;
+        ByteBuffer buffer = context.buffer;
+        int start = buffer.position();
+        int limit = buffer.limit();
+
+        int pos = stopChars.indexOf(buffer, start, limit);
+        if (pos >= 0) {
+            int currentChar = buffer.get(pos);
+            context.currentPointer = currentChar;
+            buffer.position(pos + 1);
+            if (stopChars.isForbidden(currentChar)){
+                return -1; // Bad format Request should not contain this char at this point
             }
-            context.appendChar();
-		}
+            if (pos > start) {
+                context.extendToken(start, pos);
+            }
+            if (context.tokenGreaterThan(maxLen)){
+                return -1; // Too long
+            }
+            context.storeCompleteToken(type);
+            return 1;
+        }
+        if (limit > start) {
+            context.currentPointer = buffer.get(limit - 1);
+            context.extendToken(start, limit);
+            buffer.position(limit);
+        }
         // No errors but the token is not complete
         if (context.tokenGreaterThan(maxLen)){
             return -1; // Too long
@@ -235,6 +272,11 @@ public class HttpBufferedLexer {
      */
     private interface StopChars {
 
+        /**
+         * Finds the first separator or forbidden char in [from, to) of the buffer, -1 if none
+         */
+        int indexOf(ByteBuffer buffer, int from, int to);
+
         /**
          * Tells wether this char is a separator endind the current Token under parsing
          */
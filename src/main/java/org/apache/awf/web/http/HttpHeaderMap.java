@@ -0,0 +1,294 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+
+/**
+ * The headers of a request. Names are case insensitive (and stored in lower
+ * case), a header may have several values.
+ * <p>
+ * Like the static table of HPACK, well-known header names are numbered: the
+ * lexer matches them from bytes without allocating (see
+ * {@link #KNOWN_NAMES}) and their values are found through a plain array
+ * index. Other names go into a small open-addressing table. The values of a
+ * repeated header are chained, not concatenated.
+ */
+class HttpHeaderMap {
+
+    /** Well-known header names (lower case), the index is their number. */
+    static final String[] KNOWN_NAMES = { "host", "connection", "user-agent", "accept", "accept-encoding",
+            "accept-language", "accept-charset", "cookie", "referer", "content-length", "content-type",
+            "transfer-encoding", "cache-control", "pragma", "expect", "if-modified-since", "if-none-match",
+            "authorization", "origin", "upgrade", "range", "keep-alive", "x-forwarded-for", "dnt",
+            "if-match", "if-range", "if-unmodified-since", "via", "te" };
+
+    /** {@link #KNOWN_NAMES} pre-encoded. */
+    static final byte[][] KNOWN_NAME_BYTES = new byte[KNOWN_NAMES.length][];
+
+    /** The hashes of {@link #KNOWN_NAMES}. */
+    private static final int[] KNOWN_HASHES = new int[KNOWN_NAMES.length];
+
+    /** Open-addressing table of the known names: index + 1, or 0 if empty. */
+    private static final int[] KNOWN_SLOTS = new int[64];
+
+    static {
+        for (int i = 0; i < KNOWN_NAMES.length; i++) {
+            KNOWN_NAME_BYTES[i] = KNOWN_NAMES[i].getBytes(Charsets.ISO_8859_1);
+            KNOWN_HASHES[i] = hash(KNOWN_NAMES[i]);
+            int slot = KNOWN_HASHES[i] & (KNOWN_SLOTS.length - 1);
+            while (KNOWN_SLOTS[slot] != 0) {
+                slot = (slot + 1) & (KNOWN_SLOTS.length - 1);
+            }
+            KNOWN_SLOTS[slot] = i + 1;
+        }
+    }
+
+    /*
+     * Every value is an entry, in the order the headers were added. Entries of
+     * the same name are chained through next (-1 ends a chain).
+     */
+    private String[] names = new String[8];
+    private String[] values = new String[8];
+    private int[] next = new int[8];
+    private int size = 0;
+
+    /** First entry of every known name, -1 if the header is absent. */
+    private final int[] known = new int[KNOWN_NAMES.length];
+
+    /** Open-addressing table of the other names: first entry + 1, or 0 if empty. */
+    private int[] slots = new int[16];
+    private int unknownNames = 0;
+
+    private Map<String, String> view;
+
+    HttpHeaderMap() {
+        Arrays.fill(known, -1);
+    }
+
+    /**
+     * Adds a value to the given header.
+     * 
+     * @param name the header name, in lower case
+     */
+    void add(String name, String value) {
+        int knownIndex = knownIndex(name);
+        if (knownIndex >= 0) {
+            add(knownIndex, value);
+            return;
+        }
+        int entry = newEntry(name, value);
+        int first = firstEntry(name);
+        if (first >= 0) {
+            chain(first, entry);
+            return;
+        }
+        if ((unknownNames + 1) * 2 > slots.length) {
+            rehash();
+        }
+        slots[freeSlot(slots, name)] = entry + 1;
+        unknownNames++;
+    }
+
+    /**
+     * Adds a value to the well-known header of the given number.
+     * 
+     * @param knownIndex the index of the name in {@link #KNOWN_NAMES}
+     */
+    void add(int knownIndex, String value) {
+        int entry = newEntry(KNOWN_NAMES[knownIndex], value);
+        if (known[knownIndex] >= 0) {
+            chain(known[knownIndex], entry);
+        } else {
+            known[knownIndex] = entry;
+        }
+    }
+
+    private void chain(int first, int entry) {
+        while (next[first] >= 0) {
+            first = next[first];
+        }
+        next[first] = entry;
+    }
+
+    /**
+     * @return the value of the given header (case insensitive), the values of
+     *         a repeated header separated by ';', or null if it is absent.
+     */
+    String get(String name) {
+        int entry = firstEntry(name);
+        if (entry < 0) {
+            return null;
+        }
+        if (next[entry] < 0) {
+            return values[entry];
+        }
+        StringBuilder joined = new StringBuilder(values[entry]);
+        for (entry = next[entry]; entry >= 0; entry = next[entry]) {
+            joined.append(';').append(values[entry]);
+        }
+        return joined.toString();
+    }
+
+    /**
+     * @return all the values of the given header (case insensitive) in the
+     *         order they were received, empty if it is absent.
+     */
+    List<String> getAll(String name) {
+        int entry = firstEntry(name);
+        if (entry < 0) {
+            return Collections.emptyList();
+        }
+        List<String> all = new ArrayList<String>(2);
+        for (; entry >= 0; entry = next[entry]) {
+            all.add(values[entry]);
+        }
+        return all;
+    }
+
+    boolean contains(String name) {
+        return firstEntry(name) >= 0;
+    }
+
+    /**
+     * @return a read-only map of the headers, as returned by {@link #get}.
+     */
+    Map<String, String> asMap() {
+        if (view == null) {
+            Map<String, String> map = new LinkedHashMap<String, String>();
+            for (int i = 0; i < size; i++) {
+                if (!map.containsKey(names[i])) {
+                    map.put(names[i], get(names[i]));
+                }
+            }
+            view = Collections.unmodifiableMap(map);
+        }
+        return view;
+    }
+
+    private int newEntry(String name, String value) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            next = Arrays.copyOf(next, size * 2);
+        }
+        names[size] = name;
+        values[size] = value;
+        next[size] = -1;
+        view = null;
+        return size++;
+    }
+
+    private int firstEntry(String name) {
+        int knownIndex = knownIndex(name);
+        if (knownIndex >= 0) {
+            return known[knownIndex];
+        }
+        for (int slot = hash(name) & (slots.length - 1); slots[slot] != 0; slot = (slot + 1) & (slots.length - 1)) {
+            int entry = slots[slot] - 1;
+            if (names[entry].equalsIgnoreCase(name)) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of the given (case insensitive) name, -1 if it is
+     *         not a known one.
+     */
+    static int knownIndex(String name) {
+        for (int slot = hash(name) & (KNOWN_SLOTS.length - 1); KNOWN_SLOTS[slot] != 0; slot = (slot + 1)
+                & (KNOWN_SLOTS.length - 1)) {
+            int index = KNOWN_SLOTS[slot] - 1;
+            String known = KNOWN_NAMES[index];
+            if (known == name || known.equalsIgnoreCase(name)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Looks a name up from its bytes, without materializing it. The candidate
+     * returned must still be compared with the bytes (see
+     * {@link #KNOWN_NAME_BYTES}).
+     * 
+     * @param hash the name hashed with {@link #hash(int, int)}, starting from 0
+     * @param length the length of the name
+     * @return the number of the known name with the given hash and length,
+     *         -1 if there is none.
+     */
+    static int knownIndex(int hash, int length) {
+        hash ^= hash >>> 16;
+        for (int slot = hash & (KNOWN_SLOTS.length - 1); KNOWN_SLOTS[slot] != 0; slot = (slot + 1)
+                & (KNOWN_SLOTS.length - 1)) {
+            int index = KNOWN_SLOTS[slot] - 1;
+            if (KNOWN_HASHES[index] == hash && KNOWN_NAME_BYTES[index].length == length) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private int freeSlot(int[] table, String name) {
+        int slot = hash(name) & (table.length - 1);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & (table.length - 1);
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        for (int entry : old) {
+            if (entry != 0) {
+                slots[freeSlot(slots, names[entry - 1])] = entry;
+            }
+        }
+    }
+
+    /**
+     * Case insensitive (ASCII) hash, the name is not lower-cased.
+     */
+    private static int hash(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            h = hash(h, name.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Adds the next character of a name to its case insensitive hash.
+     */
+    static int hash(int h, int c) {
+        return 31 * h + (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.http;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+
+import org.apache.awf.web.http.protocol.HttpStatus;
+
+/**
+ * Serializes the status line and headers of a response straight into bytes.
+ * Status lines, common header names and constant headers are pre-encoded (the
+ * "Date" header line comes from {@link org.apache.awf.util.HttpDateClock}),
+ * and the scratch buffer is reused from one response to the next, so typical
+ * responses are serialized without allocating.
+ * <p>
+ * Every {@link HttpProtocol} (i.e. every IOLoop) owns one writer, it is not
+ * thread safe. The serialized block is only valid until the next
+ * {@link #reset(HttpStatus)}.
+ */
+public class HttpHeaderWriter {
+
+    static final byte[] SERVER = bytes("Server: Apache AWF/0.4.0-SNAPSHOT\r\n");
+    static final byte[] CONNECTION_KEEP_ALIVE = bytes("Connection: Keep-Alive\r\n");
+    static final byte[] CONNECTION_CLOSE = bytes("Connection: Close\r\n");
+    static final byte[] CONTENT_LENGTH = bytes("Content-Length: ");
+    static final byte[] SET_COOKIE = bytes("Set-Cookie: ");
+    static final byte[] COLON = bytes(": ");
+    static final byte[] CRLF = bytes("\r\n");
+
+    private static final int INITIAL_CAPACITY = 512;
+
+    private ByteBuffer scratch = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    /**
+     * Starts a new header block with the given status line.
+     */
+    public HttpHeaderWriter reset(HttpStatus status) {
+        scratch.clear();
+        return put(status.lineBytes());
+    }
+
+    /**
+     * Appends a pre-encoded header line (including name and CRLF).
+     */
+    public HttpHeaderWriter line(byte[] line) {
+        return put(line);
+    }
+
+    /**
+     * Appends a header with a pre-encoded name (including ": ").
+     */
+    public HttpHeaderWriter header(byte[] name, String value) {
+        put(name);
+        putString(value);
+        return put(CRLF);
+    }
+
+    /**
+     * Appends a header with a pre-encoded name (including ": ") and a
+     * non-negative numeric value.
+     */
+    public HttpHeaderWriter header(byte[] name, long value) {
+        put(name);
+        putDecimal(value);
+        return put(CRLF);
+    }
+
+    /**
+     * Appends a header.
+     */
+    public HttpHeaderWriter header(String name, String value) {
+        putString(name);
+        put(COLON);
+        putString(value);
+        return put(CRLF);
+    }
+
+    /**
+     * Appends all the given headers.
+     */
+    public HttpHeaderWriter headers(Map<String, String> headers) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            header(header.getKey(), header.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * Terminates the header block (empty line).
+     */
+    public HttpHeaderWriter end() {
+        return put(CRLF);
+    }
+
+    /**
+     * @return a view of the header block written since the last reset. Only
+     *         valid until the next reset.
+     */
+    public ByteBuffer buffer() {
+        ByteBuffer view = scratch.duplicate();
+        view.flip();
+        return view;
+    }
+
+    private HttpHeaderWriter put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        scratch.put(bytes);
+        return this;
+    }
+
+    /**
+     * ASCII is written byte by byte, anything else is UTF-8 encoded.
+     */
+    private void putString(String value) {
+        int length = value.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                scratch.position(scratch.position() - i);
+                put(value.getBytes(Charsets.UTF_8));
+                return;
+            }
+            scratch.put((byte) c);
+        }
+    }
+
+    private void putDecimal(long value) {
+        ensureCapacity(20);
+        int start = scratch.position();
+        do {
+            scratch.put((byte) ('0' + (value % 10)));
+            value /= 10;
+        } while (value > 0);
+        // digits were written least significant first
+        for (int i = start, j = scratch.position() - 1; i < j; i++, j--) {
+            byte b = scratch.get(i);
+            scratch.put(i, scratch.get(j));
+            scratch.put(j, b);
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (scratch.remaining() < size) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + size));
+            scratch.flip();
+            bigger.put(scratch);
+            scratch = bigger;
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(Charsets.ISO_8859_1);
+    }
+
+}
@@ -21,9 +21,18 @@ package org.apache.awf.web.http;
 
 import java.nio.ByteBuffer;
 
+import com.google.common.base.Charsets;
+
+import org.apache.awf.web.http.protocol.HttpVerb;
+
 /**
  * Context object holding data of the currently or last parser execution.
  * Used to maintain buffer position, last Token,
+ * <p>
+ * The current token is not copied while lexing, it is recorded as a slice
+ * (start and end offset) of the buffer under parsing and only materialized
+ * when asked for. The bytes of a token that is not complete at the end of a
+ * buffer are carried over, since the buffer is reused once parsed.
  */
 public class HttpParsingContext {
 
@@ -41,6 +50,17 @@ public class HttpParsingContext {
         CHUNK;
 
     }
+
+    /** Pre-encoded names of all the verbs, same order as HttpVerb.values(). */
+    private static final HttpVerb[] VERBS = HttpVerb.values();
+    private static final byte[][] VERB_NAMES = new byte[VERBS.length][];
+
+    static {
+        for (int i = 0; i < VERBS.length; i++) {
+            VERB_NAMES[i] = VERBS[i].name().getBytes(Charsets.ISO_8859_1);
+        }
+    }
+
     boolean chunked;
 
     ByteBuffer buffer;
@@ -49,7 +69,13 @@ public class HttpParsingContext {
 
     int skips = 0;
 
-    StringBuilder tokenValue = new StringBuilder(255);
+    /** Slice of the buffer holding the (rest of the) current token, -1 if none. */
+    int tokenStart = -1;
+    int tokenEnd = -1;
+
+    /** Bytes of the current token carried over from previous buffers. */
+    private byte[] carry = new byte[0];
+    private int carryLength = 0;
 
     boolean complete = false;
 
@@ -57,6 +83,9 @@ public class HttpParsingContext {
 
     String lastHeaderName = null;
 
+    /** Number of the last header name (see {@link HttpHeaderMap#KNOWN_NAMES}), -1 if not a known one. */
+    int lastHeaderIndex = -1;
+
     int chunkSize = 0;
 
     int incrementAndGetPointer(){
@@ -65,10 +94,17 @@ public class HttpParsingContext {
     }
 
     public boolean tokenGreaterThan(int maxLen) {
-        return tokenValue.length() > maxLen;
+        return tokenLength() > maxLen;
+    }
+
+    int tokenLength() {
+        return carryLength + (tokenStart < 0 ? 0 : tokenEnd - tokenStart);
     }
 
     void setBuffer(ByteBuffer buffer){
+        if (!complete) {
+            carryOver();
+        }
         this.buffer = buffer;
     }
 
@@ -78,7 +114,7 @@ public class HttpParsingContext {
 
     void setBodyFound(){
         currentType = TokenType.BODY;
-        tokenValue.delete(0, Integer.MAX_VALUE);
+        resetToken();
     }
 
     public boolean isbodyFound() {
@@ -87,17 +123,40 @@ public class HttpParsingContext {
 
     void clearTokenBuffer(){
         if (complete){ // Free buffer when last was complete
-            tokenValue.delete(0, Integer.MAX_VALUE);
+            resetToken();
         }
     }
 
+    private void resetToken() {
+        tokenStart = tokenEnd = -1;
+        carryLength = 0;
+    }
 
     void deleteFirstCharFromTokenBuffer(){
-        tokenValue.deleteCharAt(0);
+        if (carryLength > 0) {
+            System.arraycopy(carry, 1, carry, 0, --carryLength);
+        } else if (tokenStart >= 0 && tokenStart < tokenEnd) {
+            tokenStart++;
+        }
     }
 
+    /**
+     * Adds the last read char (just before the buffer position) to the token.
+     */
     void appendChar(){
-        tokenValue.append((char)currentPointer);
+        extendToken(buffer.position() - 1, buffer.position());
+    }
+
+    /**
+     * Extends the token slice with the bytes from start to end (exclusive) of
+     * the buffer. The token is contiguous in the buffer, so only the first
+     * call for a buffer sets the start of the slice.
+     */
+    void extendToken(int start, int end) {
+        if (tokenStart < 0) {
+            tokenStart = start;
+        }
+        tokenEnd = end;
     }
 
     /**
@@ -117,15 +176,156 @@ public class HttpParsingContext {
         complete = _complete;
     }
 
+    /**
+     * Moves the slice of an incomplete token out of the buffer before it is
+     * replaced, the buffer is reused for the next read.
+     */
+    private void carryOver() {
+        if (tokenStart < 0) {
+            return;
+        }
+        int length = tokenEnd - tokenStart;
+        if (carryLength + length > carry.length) {
+            byte[] bigger = new byte[Math.max(carry.length * 2, carryLength + length)];
+            System.arraycopy(carry, 0, bigger, 0, carryLength);
+            carry = bigger;
+        }
+        copySlice(tokenStart, carry, carryLength, length);
+        carryLength += length;
+        tokenStart = tokenEnd = -1;
+    }
+
+    private void copySlice(int start, byte[] dst, int offset, int length) {
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + start, dst, offset, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                dst[offset + i] = buffer.get(start + i);
+            }
+        }
+    }
+
+    /**
+     * @return the byte at the given index of the token.
+     */
+    private int tokenByteAt(int i) {
+        return i < carryLength ? carry[i] : buffer.get(tokenStart + i - carryLength);
+    }
+
     String getTokenValue(){
-        return tokenValue.toString();
+        return tokenString(0, tokenLength());
     }
 
+    /**
+     * @return the token value without leading and trailing whitespace.
+     */
+    String getTrimmedTokenValue() {
+        int start = 0;
+        int end = tokenLength();
+        while (start < end && isWhiteSpace(tokenByteAt(start))) {
+            start++;
+        }
+        while (end > start && isWhiteSpace(tokenByteAt(end - 1))) {
+            end--;
+        }
+        return tokenString(start, end - start);
+    }
+
+    private static boolean isWhiteSpace(int b) {
+        return b == HttpBufferedLexer.SP || b == HttpBufferedLexer.TAB;
+    }
+
+    /**
+     * Materializes length bytes of the token starting at from.
+     */
+    private String tokenString(int from, int length) {
+        if (length == 0) {
+            return "";
+        }
+        if (carryLength == 0 && buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + tokenStart + from, length, Charsets.ISO_8859_1);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) tokenByteAt(from + i);
+        }
+        return new String(bytes, Charsets.ISO_8859_1);
+    }
+
+    /**
+     * Matches the token against the names of the HTTP verbs.
+     * 
+     * @throws IllegalArgumentException if the token is not a verb
+     */
+    HttpVerb getTokenVerb() {
+        for (int i = 0; i < VERB_NAMES.length; i++) {
+            if (tokenEquals(0, tokenLength(), VERB_NAMES[i], false)) {
+                return VERBS[i];
+            }
+        }
+        return HttpVerb.valueOf(getTokenValue());
+    }
+
+    private boolean tokenEquals(int from, int length, byte[] name, boolean ignoreCase) {
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            int b = tokenByteAt(from + i);
+            if (ignoreCase && b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (b != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores the token, in lower case, as the name of the header being
+     * parsed, without leading and trailing whitespace. Well-known names (see
+     * {@link HttpHeaderMap#KNOWN_NAMES}) are looked up by the hash of the
+     * bytes and not materialized, the constant is used instead.
+     */
     public void persistHeaderName() {
-        lastHeaderName = tokenValue.toString();
+        int start = 0;
+        int end = tokenLength();
+        while (start < end && isWhiteSpace(tokenByteAt(start))) {
+            start++;
+        }
+        while (end > start && isWhiteSpace(tokenByteAt(end - 1))) {
+            end--;
+        }
+        int length = end - start;
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = HttpHeaderMap.hash(hash, tokenByteAt(i) & 0xFF);
+        }
+        int index = HttpHeaderMap.knownIndex(hash, length);
+        if (index >= 0 && tokenEquals(start, length, HttpHeaderMap.KNOWN_NAME_BYTES[index], true)) {
+            lastHeaderIndex = index;
+            lastHeaderName = HttpHeaderMap.KNOWN_NAMES[index];
+        } else {
+            lastHeaderIndex = -1;
+            lastHeaderName = lowerCaseTokenValue(start, length);
+        }
     }
 
     public String getLastHeaderName() {
         return lastHeaderName;
     }
+
+    int getLastHeaderIndex() {
+        return lastHeaderIndex;
+    }
+
+    private String lowerCaseTokenValue(int from, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int b = tokenByteAt(from + i);
+            bytes[i] = (byte) (b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b);
+        }
+        return new String(bytes, Charsets.ISO_8859_1);
+    }
 }
@@ -19,11 +19,9 @@
  */
 package org.apache.awf.web.http;
 
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
-import java.nio.channels.FileChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
@@ -32,13 +30,20 @@ import java.util.Map;
 
 import com.google.common.collect.Maps;
 
+import org.apache.awf.configuration.Configuration;
 import org.apache.awf.io.IOHandler;
 import org.apache.awf.io.IOLoop;
-import org.apache.awf.io.buffer.DynamicByteBuffer;
+import org.apache.awf.io.buffer.CompositeByteBuffer;
 import org.apache.awf.io.timeout.Timeout;
 import org.apache.awf.util.Closeables;
+import org.apache.awf.util.HttpUtil;
 import org.apache.awf.web.Application;
+import org.apache.awf.web.AsyncCallback;
+import org.apache.awf.web.handler.HttpContinueRequestHandler;
+import org.apache.awf.web.handler.RequestEntityTooLargeRequestHandler;
 import org.apache.awf.web.handler.RequestHandler;
+import org.apache.awf.web.handler.RequestHandlerFactory;
+import org.apache.awf.web.handler.StreamingBodyHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,9 +59,34 @@ public class HttpProtocol implements IOHandler {
 
     private final HttpRequestParser parser;
 
+    /** Serializes the response headers of all the connections of this loop. */
+    private final HttpHeaderWriter headerWriter = new HttpHeaderWriter();
+
+    /** Deflaters compressing the responses of all the connections of this loop. */
+    private final DeflaterPool deflaters = new DeflaterPool();
+
     // a queue of half-baked (pending/unfinished) HTTP post request
     private final Map<SelectableChannel, HttpRequestImpl> partials = Maps.newHashMap();
 
+    /**
+     * Bytes of pipelined requests received while the response to an earlier
+     * request on the same channel was not finished. Requests are dispatched
+     * one at a time, so responses are written in request order.
+     */
+    private final Map<SelectableChannel, ByteBuffer> pipelined = Maps.newHashMap();
+
+    /**
+     * Channels with a dispatched request whose response is not finished,
+     * mapped to whether that request allows to keep the connection alive.
+     */
+    private final Map<SelectableChannel, Boolean> responding = Maps.newHashMap();
+
+    /** The channel whose requests are being dispatched right now, if any. */
+    private SelectableChannel dispatching;
+
+    /** The key of the channel whose data is being parsed right now, if any. */
+    private SelectionKey parsing;
+
     public HttpProtocol(Application app) {
         this(IOLoop.INSTANCE, app);
     }
@@ -64,7 +94,12 @@ public class HttpProtocol implements IOHandler {
     public HttpProtocol(IOLoop ioLoop, Application app) {
         this.ioLoop = ioLoop;
         application = app;
-        parser = new HttpRequestParser();
+        parser = new HttpRequestParser(new HttpRequestParser.HeadersListener() {
+            @Override
+            public void headersParsed(HttpRequestImpl request) {
+                route(request);
+            }
+        });
     }
 
     @Override
@@ -75,10 +110,24 @@ public class HttpProtocol implements IOHandler {
             // could be null in a multithreaded environment because another
             // ioloop was "faster" to accept()
             clientChannel.configureBlocking(false);
-            ioLoop.addHandler(clientChannel, this, SelectionKey.OP_READ, ByteBuffer.allocate(READ_BUFFER_SIZE));
+            ioLoop.connectionAssigned();
+            // no buffer is attached, one is borrowed from the IOLoop's pool on every read
+            ioLoop.addHandler(clientChannel, this, SelectionKey.OP_READ, null);
         }
     }
 
+    /**
+     * Hands a client channel accepted by another thread (see
+     * {@link HttpAcceptor}) over to the <code>IOLoop</code> of this protocol.
+     * Unlike {@link #handleAccept} this method may be invoked from any thread.
+     */
+    public void handOff(SocketChannel clientChannel) throws IOException {
+        clientChannel.configureBlocking(false);
+        // counted right away, so that the balancer sees a burst of connections
+        ioLoop.connectionAssigned();
+        ioLoop.queueHandler(clientChannel, this, SelectionKey.OP_READ, null);
+    }
+
     @Override
     public void handleConnect(SelectionKey key) throws IOException {
         logger.error("handle connect in HttpProcotol...");
@@ -88,28 +137,167 @@ public class HttpProtocol implements IOHandler {
     public void handleRead(SelectionKey key) throws IOException {
         logger.debug("handle read...");
         SocketChannel clientChannel = (SocketChannel) key.channel();
-        HttpRequest request = getHttpRequest(key, clientChannel);
-
-        // Request is null when End-of-Stream have been reached
-        // No need to do more things right now
-        if(request != null){        	
-        	logger.debug("received request: \n"+request.toString()); 
-            if (request.isKeepAlive()) {
-                ioLoop.addKeepAliveTimeout(clientChannel, Timeout.newKeepAliveTimeout(ioLoop, clientChannel,
-                        KEEP_ALIVE_TIMEOUT));
+        // borrowed for this read only, the parser copies everything it needs
+        // to keep (e.g. unfinished requests) out of the buffer
+        ByteBuffer buffer = ioLoop.getBufferPool().acquire(READ_BUFFER_SIZE);
+        try {
+            if (read(clientChannel, buffer)) {
+                HttpRequestImpl partial = partials.get(clientChannel);
+                if (responding.containsKey(clientChannel) || (partial != null && partial.isBodyBlocked())) {
+                    // pipelined behind a response that is not finished yet,
+                    // or selected before the body stream was paused
+                    stash(clientChannel, buffer, false);
+                } else {
+                    handleRequests(key, clientChannel, buffer, false);
+                }
             }
+        } finally {
+            ioLoop.getBufferPool().release(buffer);
+        }
+    }
 
-            HttpResponse response = new HttpResponseImpl(this, key, request.isKeepAlive());
-            response.setCreateETag(application.getConfiguration().shouldCreateETags());
+    /**
+     * Dispatches the requests contained in the given buffer one after the
+     * other, parsing the buffer in place. Dispatching stops as soon as a
+     * response is not finished synchronously, the rest of the buffer is kept
+     * until it is.
+     * 
+     * @param kept whether the buffer was kept for this channel before, and can
+     *            be kept again without a copy
+     */
+    private void handleRequests(SelectionKey key, SocketChannel clientChannel, ByteBuffer buffer, boolean kept) {
+        SelectableChannel outer = dispatching;
+        dispatching = clientChannel;
+        try {
+            while (true) {
+                HttpRequestImpl request = getHttpRequest(key, clientChannel, buffer);
+
+                // Request is null when more data is needed, or when the body
+                // stream is paused (then the rest of the buffer is kept)
+                if (request == null) {
+                    stash(clientChannel, buffer, kept);
+                    return;
+                }
+                if (request.isFinished()) {
+                    responding.put(clientChannel, request.isKeepAlive());
+                }
+                dispatch(key, clientChannel, request);
+
+                if (!key.isValid() || request == MalFormedHttpRequest.instance) {
+                    return;
+                }
+                if (responding.containsKey(clientChannel)) {
+                    stash(clientChannel, buffer, kept);
+                    return;
+                }
+                if (!buffer.hasRemaining()) {
+                    return;
+                }
+            }
+        } finally {
+            dispatching = outer;
+        }
+    }
+
+    private void dispatch(SelectionKey key, SocketChannel clientChannel, HttpRequestImpl request) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("received request: \n" + request.toString());
+        }
+        if (request.isKeepAlive() && !ioLoop.touchKeepAliveTimeout(clientChannel)) {
+            ioLoop.addKeepAliveTimeout(clientChannel, newKeepAliveTimeout(key));
+        }
 
-            RequestHandler rh = application.getHandler(request);
-            HttpRequestDispatcher.dispatch(rh, request, response);
-            
-            // Only close if not async. In that case its up to RH to close it
-            if (!rh.isMethodAsynchronous(request.getMethod()) ) {
-                response.finish();
+        HttpResponseImpl response = new HttpResponseImpl(this, key, request.isKeepAlive());
+        Configuration configuration = application.getConfiguration();
+        response.setCreateETag(configuration.shouldCreateETags());
+        if (configuration.isCompressResponses()) {
+            String coding = negotiateCompression(request);
+            if (coding != null) {
+                response.setCompression(coding, configuration.getCompressionThreshold());
             }
         }
+
+        RequestHandler rh = request.getRoutedHandler();
+        if (request.isBodyTooLarge()) {
+            RequestHandlerFactory.release(rh);
+            rh = RequestEntityTooLargeRequestHandler.getInstance();
+        } else if (rh == null) {
+            rh = application.getHandler(request);
+        } else if (request.expectContinue()) {
+            rh = HttpContinueRequestHandler.getInstance();
+        }
+        response.releaseOnFinish(rh);
+        HttpRequestDispatcher.dispatch(rh, request, response);
+
+        // Only close if not async. In that case its up to RH to close it
+        if (!rh.isMethodAsynchronous(request.getMethod()) ) {
+            response.finish();
+        }
+    }
+
+    /**
+     * Chooses the handler of a request whose headers are parsed, before its
+     * body is received, so that a {@link StreamingBodyHandler} gets the body
+     * while it arrives.
+     */
+    private void route(HttpRequestImpl request) {
+        setConnectionInfo(request, (SocketChannel) parsing.channel());
+        RequestHandler rh = application.route(request);
+        request.setRoutedHandler(rh);
+        if (rh instanceof StreamingBodyHandler) {
+            request.streamBodyTo((StreamingBodyHandler) rh, new RequestBodyStream(this, parsing));
+        }
+    }
+
+    /**
+     * Stops reading from the channel of the given key, see
+     * {@link RequestBodyStream#pause()}.
+     */
+    void pauseReading(SelectionKey key) {
+        if (key.isValid()) {
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Resumes reading from the channel of the given key, starting with the
+     * bytes kept while it was paused, see {@link RequestBodyStream#resume()}.
+     */
+    void resumeReading(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        SelectableChannel channel = key.channel();
+        // the parser checks the stream itself if it is running right now
+        ByteBuffer next = channel == dispatching ? null : pipelined.remove(channel);
+        if (next != null) {
+            handleRequests(key, (SocketChannel) channel, next, true);
+        }
+    }
+
+    /**
+     * Keeps the remaining bytes of the given buffer for the given channel,
+     * after the bytes kept for it so far. The buffer itself is kept if it is
+     * not borrowed from the pool and nothing is kept yet, otherwise the bytes
+     * are copied.
+     */
+    private void stash(SelectableChannel channel, ByteBuffer buffer, boolean kept) {
+        if (!buffer.hasRemaining()) {
+            return;
+        }
+        ByteBuffer stashed = pipelined.get(channel);
+        if (stashed == null && kept) {
+            pipelined.put(channel, buffer);
+            return;
+        }
+        ByteBuffer copy = ByteBuffer.allocate((stashed == null ? 0 : stashed.remaining()) + buffer.remaining());
+        if (stashed != null) {
+            copy.put(stashed);
+        }
+        copy.put(buffer);
+        copy.flip();
+        pipelined.put(channel, copy);
     }
 
     @Override
@@ -117,160 +305,230 @@ public class HttpProtocol implements IOHandler {
         logger.debug("handle write...");
         SocketChannel channel = (SocketChannel) key.channel();
 
-        if (key.attachment() instanceof FileInputStream) {
-            writeMappedByteBuffer(key, channel);
-        } else if (key.attachment() instanceof DynamicByteBuffer) {
-            writeDynamicByteBuffer(key, channel);
-        }
-        if (ioLoop.hasKeepAliveTimeout(channel)) {
-            prolongKeepAliveTimeout(channel);
+        if (key.attachment() instanceof FileTransfer) {
+            transferFile(key, channel);
+        } else if (key.attachment() instanceof CompositeByteBuffer) {
+            writeCompositeByteBuffer(key, channel);
         }
-
+        prolongKeepAliveTimeout(channel);
     }
 
-    private void writeMappedByteBuffer(SelectionKey key, SocketChannel channel) {
-        FileInputStream fileInputStream = (FileInputStream) key.attachment();
-
+    private void transferFile(SelectionKey key, SocketChannel channel) {
+        FileTransfer transfer = (FileTransfer) key.attachment();
         try {
-            long bytesWritten = 0;
-            FileChannel fileChannel = fileInputStream.getChannel();
-            long sizeNeeded = fileChannel.size();
-            bytesWritten = fileChannel.position();
-            bytesWritten += fileChannel.transferTo(bytesWritten, sizeNeeded - bytesWritten, channel);
-
-            if (bytesWritten < sizeNeeded){
-                // Set channel Position to write rest of data from good starting offset
-                fileChannel.position(bytesWritten);
-            }else{
-                // Only close channel when file is totally transferred to SocketChannel
-                com.google.common.io.Closeables.closeQuietly(fileInputStream);
-                closeOrRegisterForRead(key);
-            }
+            transfer.writeTo(channel);
         } catch (IOException e) {
             logger.error("Failed to send data to client: {}", e.getMessage());
-            com.google.common.io.Closeables.closeQuietly(fileInputStream);
-            Closeables.closeQuietly(channel);
+            closeQuietly(key);
+            return;
+        }
+        if (transfer.isDone()) {
+            // Only close the file when it is totally transferred to the SocketChannel
+            closeOrRegisterForRead(key);
         }
     }
 
-    private void writeDynamicByteBuffer(SelectionKey key, SocketChannel channel) {
-        DynamicByteBuffer dbb = (DynamicByteBuffer) key.attachment();
+    private void writeCompositeByteBuffer(SelectionKey key, SocketChannel channel) {
+        CompositeByteBuffer toSend = (CompositeByteBuffer) key.attachment();
         logger.debug("pending data about to be written");
-        ByteBuffer toSend = dbb.getByteBuffer();
-        toSend.flip(); // prepare for write
         long bytesWritten = 0;
         try {
-            bytesWritten = channel.write(toSend);
+            bytesWritten = toSend.writeTo(channel);
         } catch (IOException e) {
             logger.error("Failed to send data to client: {}", e.getMessage());
-            Closeables.closeQuietly(channel);
+            closeQuietly(key);
+            return;
         }
         logger.debug("sent {} bytes to wire", bytesWritten);
         if (!toSend.hasRemaining()) {
             logger.debug("sent all data in toSend buffer");
             closeOrRegisterForRead(key); // should probably only be done if the
             // HttpResponse is finished
-        } else {
-            toSend.compact(); // make room for more data be "read" in
         }
     }
 
     public void closeOrRegisterForRead(SelectionKey key) {
-        if (key.isValid() && ioLoop.hasKeepAliveTimeout(key.channel())) {
+        SelectableChannel channel = key.channel();
+        // e.g. "Connection: close" on a connection that was kept alive so far
+        boolean closeRequested = Boolean.FALSE.equals(responding.remove(channel));
+        if (key.isValid() && !closeRequested && ioLoop.hasKeepAliveTimeout(channel)) {
             try {
-                key.channel().register(key.selector(), SelectionKey.OP_READ, reuseAttachment(key));
-                prolongKeepAliveTimeout(key.channel());
+                releaseAttachment(key);
+                channel.register(key.selector(), SelectionKey.OP_READ, null);
+                prolongKeepAliveTimeout(channel);
                 logger.debug("keep-alive connection. registrating for read.");
             } catch (ClosedChannelException e) {
                 logger.debug("ClosedChannelException while registrating key for read: {}", e.getMessage());
-                Closeables.closeQuietly(ioLoop, key.channel());
+                closeQuietly(channel);
+                return;
+            }
+            // continue with the pipelined requests, unless they are already
+            // being dispatched further up the stack
+            ByteBuffer next = channel == dispatching ? null : pipelined.remove(channel);
+            if (next != null) {
+                handleRequests(key, (SocketChannel) channel, next, true);
             }
         } else {
             // http request should be finished and no 'keep-alive' => close
             // connection
             logger.debug("Closing finished (non keep-alive) http connection");
-            Closeables.closeQuietly(ioLoop, key.channel());
+            closeQuietly(channel);
         }
     }
 
+    /**
+     * Closes the channel of the given key, after releasing what is attached
+     * to it, and forgets everything kept for the channel.
+     */
+    void closeQuietly(SelectionKey key) {
+        releaseAttachment(key);
+        closeQuietly(key.channel());
+    }
+
+    private void closeQuietly(SelectableChannel channel) {
+        pipelined.remove(channel);
+        partials.remove(channel);
+        responding.remove(channel);
+        if (channel.isOpen()) {
+            ioLoop.connectionClosed();
+        }
+        Closeables.closeQuietly(ioLoop, channel);
+    }
+
+    /**
+     * @return whether anything is kept for the given channel, i.e. a partial
+     *         request, pipelined bytes or an unfinished response.
+     */
+    boolean isTracking(SelectableChannel channel) {
+        return partials.containsKey(channel) || pipelined.containsKey(channel) || responding.containsKey(channel);
+    }
+
+    /**
+     * Closes the channel of the given key when it has been idle for
+     * {@link HttpServerDescriptor#KEEP_ALIVE_TIMEOUT} ms, or its response has
+     * not been finished by then.
+     */
+    private Timeout newKeepAliveTimeout(final SelectionKey key) {
+        return new Timeout(System.currentTimeMillis() + KEEP_ALIVE_TIMEOUT, new AsyncCallback() {
+            @Override
+            public void onCallback() {
+                closeQuietly(key);
+            }
+        });
+    }
+
+    /**
+     * Records activity on the given (keep-alive) channel. No new
+     * {@code Timeout} is created, the keep-alive deadline is prolonged lazily by
+     * the {@code TimeoutManager} when it is reached.
+     */
     public void prolongKeepAliveTimeout(SelectableChannel channel) {
-        ioLoop.addKeepAliveTimeout(channel, Timeout.newKeepAliveTimeout(ioLoop, channel, KEEP_ALIVE_TIMEOUT));
+        ioLoop.touchKeepAliveTimeout(channel);
     }
 
     public IOLoop getIOLoop() {
         return ioLoop;
     }
 
+    public HttpHeaderWriter getHeaderWriter() {
+        return headerWriter;
+    }
+
+    DeflaterPool getDeflaterPool() {
+        return deflaters;
+    }
+
     /**
-     * Clears the buffer (prepares for reuse) attached to the given
-     * SelectionKey.
-     * 
-     * @return A cleared (position=0, limit=capacity) ByteBuffer which is ready
-     *         for new reads
+     * @return the content coding to compress the response to the given
+     *         request with, or <code>null</code>. Compressed bodies are sent
+     *         chunked, so HTTP/1.0 requests are never compressed.
      */
-    private ByteBuffer reuseAttachment(SelectionKey key) {
-        Object o = key.attachment();
-        ByteBuffer attachment = null;
-        if (o instanceof FileInputStream) {
-            com.google.common.io.Closeables.closeQuietly(((FileInputStream)o));
-            attachment = ByteBuffer.allocate(READ_BUFFER_SIZE);
-        } else if (o instanceof DynamicByteBuffer) {
-            attachment = ((DynamicByteBuffer) o).getByteBuffer();
-        } else {
-            attachment = (ByteBuffer) o;
+    private static String negotiateCompression(HttpRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null || !"HTTP/1.1".equals(request.getVersion())) {
+            return null;
+        } else if (HttpUtil.acceptsEncoding(acceptEncoding, "gzip")) {
+            return "gzip";
+        } else if (HttpUtil.acceptsEncoding(acceptEncoding, "deflate")) {
+            return "deflate";
         }
+        return null;
+    }
 
-        if (attachment.capacity() < READ_BUFFER_SIZE) {
-            attachment = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    /**
+     * Releases the (write) attachment of the given SelectionKey before the
+     * channel goes back to reading. Idle keep-alive connections hold no buffer.
+     */
+    private void releaseAttachment(SelectionKey key) {
+        Object o = key.attachment();
+        if (o instanceof FileTransfer) {
+            ((FileTransfer) o).close();
+        } else if (o instanceof CompositeByteBuffer) {
+            ((CompositeByteBuffer) o).release();
         }
-        attachment.clear(); // prepare for reuse
-        return attachment;
     }
 
-    private HttpRequest getHttpRequest(SelectionKey key, SocketChannel clientChannel) {
-        ByteBuffer buffer = (ByteBuffer) key.attachment();
+    /**
+     * Reads from the given channel into the buffer.
+     * 
+     * @return false if nothing was read because the channel is closed
+     */
+    private boolean read(SocketChannel clientChannel, ByteBuffer buffer) {
         int bytesRead = -1;
         try {
             bytesRead = clientChannel.read(buffer);
         } catch (IOException e) {
             logger.warn("Could not read buffer: {}", e.getMessage());
-            Closeables.closeQuietly(ioLoop, clientChannel);
+            closeQuietly(clientChannel);
         }
         buffer.flip();
 
         if (bytesRead < 0){
             // Client closed the socket on his side
-            Closeables.closeQuietly(ioLoop, clientChannel);
-            return null;
+            closeQuietly(clientChannel);
+            return false;
         }
-
-        return doGetHttpRequest(key, clientChannel, buffer);
+        return true;
     }
 
-    private HttpRequest doGetHttpRequest(SelectionKey key, SocketChannel clientChannel, ByteBuffer buffer) {
+    /**
+     * Parses the next request of the given buffer. When the request is
+     * finished the buffer is left positioned at the first byte after it.
+     * 
+     * @return the request, or null if more data is needed
+     */
+    private HttpRequestImpl getHttpRequest(SelectionKey key, SocketChannel clientChannel, ByteBuffer buffer) {
         // do we have any unfinished http post requests for this channel?
         HttpRequestImpl request = null;
-        if (partials.containsKey(clientChannel)) {
-            request = parser.parseRequestBuffer(buffer, partials.get(clientChannel));
-            if (request.isFinished()) {
-                // received the entire payload/body
-                partials.remove(clientChannel);
-            }
-        } else {
-            request = parser.parseRequestBuffer(buffer);
-            if (!request.isFinished()) {
-                partials.put(key.channel(), request);
+        SelectionKey outer = parsing;
+        parsing = key;
+        try {
+            if (partials.containsKey(clientChannel)) {
+                request = parser.parseRequestBuffer(buffer, partials.get(clientChannel));
+                if (request.isFinished()) {
+                    // received the entire payload/body
+                    partials.remove(clientChannel);
+                }
+            } else {
+                request = parser.parseRequestBuffer(buffer);
+                if (!request.isFinished()) {
+                    partials.put(key.channel(), request);
+                }
             }
+        } finally {
+            parsing = outer;
         }
 
+        setConnectionInfo(request, clientChannel);
+        
+        return (request.isFinished() || request.expectContinue() ? request : null);
+    }
 
-        // set extra request info
+    private void setConnectionInfo(HttpRequestImpl request, SocketChannel clientChannel) {
         request.setRemoteHost(clientChannel.socket().getInetAddress());
         request.setRemotePort(clientChannel.socket().getPort());
         request.setServerHost(clientChannel.socket().getLocalAddress());
         request.setServerPort(clientChannel.socket().getLocalPort());
-        
-        return (request.isFinished() || request.expectContinue() ? request : null);
     }
 
     @Override
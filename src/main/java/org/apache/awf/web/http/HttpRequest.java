@@ -21,6 +21,7 @@ package org.apache.awf.web.http;
 
 import java.net.InetAddress;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.awf.web.http.protocol.HttpVerb;
@@ -83,6 +84,16 @@ public interface HttpRequest {
      */
     public String getHeader(String name);
 
+    /**
+     * Get all the values of a given HTTP header, in the order they were
+     * received.
+     * 
+     * @see HttpRequest#getHeader(String)
+     * @param name the name of the requested header
+     * @return the values, empty if the header is not found.
+     */
+    public List<String> getHeaderValues(String name);
+
     /**
      * The method (POST,GET ..) used for this request.
      * 
@@ -119,6 +130,13 @@ public interface HttpRequest {
      */
     public Collection<String> getParameterValues(String name);
 
+    /**
+     * Returns the value of a named dynamic segment of the route that matched
+     * this request, e.g. "42" for "/persons/42" routed by
+     * "/persons/{id:int}", or null if the route has no such segment.
+     */
+    public String getPathParameter(String name);
+
     /**
      * The body of this request
      * 
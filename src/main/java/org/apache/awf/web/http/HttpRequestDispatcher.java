@@ -33,33 +33,63 @@ public class HttpRequestDispatcher {
 
     private static final Logger logger = LoggerFactory.getLogger(HttpRequestDispatcher.class);
 
+    /**
+     * Invokes the <code>RequestHandler</code> method of a verb.
+     */
+    private abstract static class Invoker {
+        abstract void invoke(RequestHandler rh, HttpRequest request, HttpResponse response);
+    }
+
+    /**
+     * Invokers indexed by <code>HttpVerb.ordinal()</code>, <code>null</code>
+     * for the verbs without a <code>RequestHandler</code> method.
+     */
+    private static final Invoker[] invokers = new Invoker[HttpVerb.values().length];
+
+    static {
+        invokers[HttpVerb.GET.ordinal()] = new Invoker() {
+            @Override
+            void invoke(RequestHandler rh, HttpRequest request, HttpResponse response) {
+                rh.get(request, response);
+            }
+        };
+        invokers[HttpVerb.POST.ordinal()] = new Invoker() {
+            @Override
+            void invoke(RequestHandler rh, HttpRequest request, HttpResponse response) {
+                rh.post(request, response);
+            }
+        };
+        invokers[HttpVerb.HEAD.ordinal()] = new Invoker() {
+            @Override
+            void invoke(RequestHandler rh, HttpRequest request, HttpResponse response) {
+                rh.head(request, response);
+            }
+        };
+        invokers[HttpVerb.PUT.ordinal()] = new Invoker() {
+            @Override
+            void invoke(RequestHandler rh, HttpRequest request, HttpResponse response) {
+                rh.put(request, response);
+            }
+        };
+        invokers[HttpVerb.DELETE.ordinal()] = new Invoker() {
+            @Override
+            void invoke(RequestHandler rh, HttpRequest request, HttpResponse response) {
+                rh.delete(request, response);
+            }
+        };
+    }
+
     public static void dispatch(RequestHandler rh, HttpRequest request, HttpResponse response) {
         if (rh != null) {
             HttpVerb method = request.getMethod();
+            Invoker invoker = invokers[method.ordinal()];
+            if (invoker == null) {
+                logger.warn("Unimplemented Http metod received: {}", method);
+                // TODO send "not supported page (501) back to client"
+                return;
+            }
             try {
-                switch (method) {
-                case GET:
-                    rh.get(request, response);
-                    break;
-                case POST:
-                    rh.post(request, response);
-                    break;
-                case HEAD:
-                    rh.head(request, response);
-                    break;
-                case PUT:
-                    rh.put(request, response);
-                    break;
-                case DELETE:
-                    rh.delete(request, response);
-                    break;
-                case OPTIONS: // Fall through
-                case TRACE:
-                case CONNECT:
-                default:
-                    logger.warn("Unimplemented Http metod received: {}", method);
-                    // TODO send "not supported page (501) back to client"
-                }
+                invoker.invoke(rh, request, response);
             } catch (HttpException he) {
                 response.setStatus(he.getStatus());
                 response.write(he.getMessage());
@@ -19,19 +19,20 @@
  */
 package org.apache.awf.web.http;
 
-import java.io.UnsupportedEncodingException;
 import java.net.InetAddress;
-import java.net.URLDecoder;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 import com.google.common.base.Charsets;
-import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Maps;
 import org.apache.awf.io.buffer.DynamicByteBuffer;
+import org.apache.awf.web.handler.RequestHandler;
+import org.apache.awf.web.handler.StreamingBodyHandler;
 import org.apache.awf.web.http.protocol.HttpVerb;
 
 /**
@@ -40,11 +41,14 @@ import org.apache.awf.web.http.protocol.HttpVerb;
 public class HttpRequestImpl implements HttpRequest {
 
     private  String requestLine;
+    private  String uri;
     private  HttpVerb method;
     private  String requestedPath; // correct name?
     private  String version;
-    private Map<String, String> headers;
+    private final HttpHeaderMap headers = new HttpHeaderMap();
+    /** Parsed from the query string on first access. */
     private ImmutableMultimap<String, String> parameters;
+    private String queryString = "";
     private String body;
     private boolean keepAlive;
     private InetAddress remoteHost;
@@ -52,26 +56,60 @@ public class HttpRequestImpl implements HttpRequest {
     private int remotePort;
     private int serverPort;
     private Map<String, String> cookies = null;
+    private String[] pathParameterNames;
+    private int[] pathParameterBounds;
     private final HttpParsingContext context = new HttpParsingContext();
-    private int contentLength = -1;
+    private long contentLength = -1;
     private int chunkedSize = 0;
     private DynamicByteBuffer bodyBuffer;
+    /** Number of body bytes received so far, buffered or streamed. */
+    private long bodyReceived;
+    private boolean bodyTooLarge;
+    /** Handler chosen once the headers were parsed, if it happened then. */
+    private RequestHandler routedHandler;
+    /** Receives the body instead of the body buffer, if not null. */
+    private StreamingBodyHandler bodyHandler;
+    private RequestBodyStream bodyStream;
 
 
-    /** Regex to parse HttpRequest Request Line */
+    /**
+     * Regex to parse HttpRequest Request Line
+     * 
+     * @deprecated no longer used, the request line is parsed by {@link HttpRequestParser}.
+     */
+    @Deprecated
     public static final Pattern REQUEST_LINE_PATTERN = Pattern.compile(" ");
-    /** Regex to parse out QueryString from HttpRequest */
+    /**
+     * Regex to parse out QueryString from HttpRequest
+     * 
+     * @deprecated no longer used, the query string is split without regex.
+     */
+    @Deprecated
     public static final Pattern QUERY_STRING_PATTERN = Pattern.compile("\\?");
-    /** Regex to parse out parameters from query string */
+    /**
+     * Regex to parse out parameters from query string
+     * 
+     * @deprecated no longer used, the query string is split without regex.
+     */
+    @Deprecated
     public static final Pattern PARAM_STRING_PATTERN = Pattern.compile("\\&|;");
-    /** Regex to parse out key/value pairs */
+    /**
+     * Regex to parse out key/value pairs
+     * 
+     * @deprecated no longer used, parameters and cookies are split without regex.
+     */
+    @Deprecated
     public static final Pattern KEY_VALUE_PATTERN = Pattern.compile("=");
-    /** Regex to split cookie header following RFC6265 Section 5.4 */
+    /**
+     * Regex to split cookie header following RFC6265 Section 5.4
+     * 
+     * @deprecated no longer used, the cookie header is split without regex.
+     */
+    @Deprecated
     public static final Pattern COOKIE_SEPARATOR_PATTERN = Pattern.compile(";");
 
 
     public HttpRequestImpl(){
-        headers = Maps.newHashMap();
     }
 
     /**
@@ -87,14 +125,19 @@ public class HttpRequestImpl implements HttpRequest {
         String[] pathFrags = QUERY_STRING_PATTERN.split(elements[1]);
         requestedPath = pathFrags[0];
         version = elements[2];
-        this.headers = headers;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            this.headers.add(header.getKey().toLowerCase(), header.getValue());
+        }
         body = null;
         initKeepAlive();
-        parameters = parseParameters((pathFrags.length>1 ? pathFrags[1]: ""));
+        queryString = pathFrags.length > 1 ? pathFrags[1] : "";
     }
 
     @Override
     public String getRequestLine() {
+        if (requestLine == null && method != null) {
+            requestLine = method.toString() + " " + uri + " " + version;
+        }
         return requestLine;
     }
 
@@ -110,12 +153,17 @@ public class HttpRequestImpl implements HttpRequest {
 
     @Override
     public Map<String, String> getHeaders() {
-        return Collections.unmodifiableMap(headers);
+        return headers.asMap();
     }
 
     @Override
     public String getHeader(String name) {
-        return headers.get(name.toLowerCase());
+        return headers.get(name);
+    }
+
+    @Override
+    public List<String> getHeaderValues(String name) {
+        return headers.getAll(name);
     }
 
     @Override
@@ -135,20 +183,20 @@ public class HttpRequestImpl implements HttpRequest {
      */
     @Override
     public String getParameter(String name) {
-        Collection<String> values = parameters.get(name);
+        Collection<String> values = parameters().get(name);
         return values.isEmpty() ? null : values.iterator().next();
     }
 
     @Override
     public Map<String, Collection<String>> getParameters() {
-        return parameters.asMap();
+        return parameters().asMap();
     }
 
     @Override
     public String getBody() {
 
         if(bodyBuffer != null){
-            return new String (bodyBuffer.array(), 0, bodyBuffer.position(), Charsets.ISO_8859_1);
+            return new String (bodyBuffer.toByteArray(), Charsets.ISO_8859_1);
         }else {
             return body;
         }
@@ -228,7 +276,31 @@ public class HttpRequestImpl implements HttpRequest {
      */
     @Override
     public Collection<String> getParameterValues(String name) {
-        return parameters.get(name);
+        return parameters().get(name);
+    }
+
+    @Override
+    public String getPathParameter(String name) {
+        if (pathParameterNames != null) {
+            for (int i = 0; i < pathParameterNames.length; i++) {
+                if (name.equals(pathParameterNames[i])) {
+                    return getRequestedPath().substring(pathParameterBounds[2 * i], pathParameterBounds[2 * i + 1]);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Bind the dynamic segments of the matched route to this request.
+     * 
+     * @param names the segment names, as given by the route
+     * @param bounds start and end offsets of each segment in the requested
+     *            path
+     */
+    public void setPathParameters(String[] names, int[] bounds) {
+        pathParameterNames = names;
+        pathParameterBounds = bounds;
     }
 
     @Override
@@ -247,14 +319,14 @@ public class HttpRequestImpl implements HttpRequest {
         result += "PATH: " + requestedPath + "\n";
 
         result += "--- HEADER --- \n";
-        for (String key : headers.keySet()) {
+        for (String key : headers.asMap().keySet()) {
             String value = headers.get(key);
             result += key + ":" + value + "\n";
         }
 
         result += "--- PARAMETERS --- \n";
-        for (String key : parameters.keySet()) {
-            Collection<String> values = parameters.get(key);
+        for (String key : parameters().keySet()) {
+            Collection<String> values = parameters().get(key);
             for (String value : values) {
                 result += key + ":" + value + "\n";
             }
@@ -267,39 +339,105 @@ public class HttpRequestImpl implements HttpRequest {
         return result;
     }
 
-    private ImmutableMultimap<String, String> parseParameters(String params) {
+    private ImmutableMultimap<String, String> parameters() {
+        if (parameters == null) {
+            parameters = parseParameters(queryString);
+        }
+        return parameters;
+    }
+
+    /**
+     * Parses the parameters of the given query string in a single pass. Pairs
+     * are separated by '&amp;' or ';', the values are URL decoded (UTF-8) and
+     * parameters without a value are ignored.
+     */
+    static ImmutableMultimap<String, String> parseParameters(String params) {
         ImmutableMultimap.Builder<String, String> builder = ImmutableMultimap.builder();
 
-            String[] paramArray = PARAM_STRING_PATTERN.split(params);
-            for (String keyValue : paramArray) {
-                String[] keyValueArray = KEY_VALUE_PATTERN.split(keyValue);
-                // We need to check if the parameter has a value associated with
-                // it.
-                if (keyValueArray.length > 1) {
-                	String value = keyValueArray[1];
-                	try {
-                		value = URLDecoder.decode(value, "UTF-8");
-                	} catch (UnsupportedEncodingException e) {
-                		// Should not happen
-                	}
-                	builder.put(keyValueArray[0], value);
+        int length = params.length();
+        for (int start = 0, end; start < length; start = end + 1) {
+            int separator = -1;
+            for (end = start; end < length; end++) {
+                char c = params.charAt(end);
+                if (c == '&' || c == ';') {
+                    break;
+                } else if (c == '=' && separator < 0) {
+                    separator = end;
                 }
             }
-
+            // We need to check if the parameter has a value associated with
+            // it.
+            if (separator >= 0 && separator + 1 < end) {
+                builder.put(params.substring(start, separator), urlDecode(params, separator + 1, end));
+            }
+        }
         return builder.build();
     }
 
     /**
-     * Parse the cookie's http header (RFC6265 Section 5.4)
+     * URL decodes [from, to) of the given String: '+' is a space and runs of
+     * %XX escapes are UTF-8 decoded. Unlike {@link java.net.URLDecoder} a
+     * malformed escape is kept as is.
+     */
+    static String urlDecode(String s, int from, int to) {
+        int i = from;
+        while (i < to && s.charAt(i) != '%' && s.charAt(i) != '+') {
+            i++;
+        }
+        if (i == to) {
+            return s.substring(from, to);
+        }
+
+        StringBuilder decoded = new StringBuilder(to - from).append(s, from, i);
+        byte[] bytes = null;
+        while (i < to) {
+            char c = s.charAt(i);
+            if (c == '+') {
+                decoded.append(' ');
+                i++;
+            } else if (c == '%') {
+                if (bytes == null) {
+                    bytes = new byte[(to - i) / 3];
+                }
+                int n = 0;
+                while (i + 2 < to && s.charAt(i) == '%' && Character.digit(s.charAt(i + 1), 16) >= 0
+                        && Character.digit(s.charAt(i + 2), 16) >= 0) {
+                    bytes[n++] = (byte) (Character.digit(s.charAt(i + 1), 16) << 4 | Character.digit(s.charAt(i + 2), 16));
+                    i += 3;
+                }
+                if (n == 0) {
+                    decoded.append(c);
+                    i++;
+                } else {
+                    decoded.append(new String(bytes, 0, n, Charsets.UTF_8));
+                }
+            } else {
+                decoded.append(c);
+                i++;
+            }
+        }
+        return decoded.toString();
+    }
+
+    /**
+     * Parse the cookie's http header (RFC6265 Section 5.4) in a single pass,
+     * every Cookie header may hold several cookies separated by ';'.
      */
     private void parseCookies() {
-        String cookiesHeader = Strings.nullToEmpty(getHeader("Cookie")).trim();
         cookies = Maps.newHashMap();
-        if (!cookiesHeader.equals("")) {
-            String[] cookiesStrings = COOKIE_SEPARATOR_PATTERN.split(cookiesHeader);
-            for (String cookieString : cookiesStrings) {
-                String[] cookie = KEY_VALUE_PATTERN.split(cookieString, 2);
-                cookies.put(cookie[0].trim(), cookie[1].trim());
+        for (String header : headers.getAll("cookie")) {
+            int length = header.length();
+            for (int start = 0, end; start < length; start = end + 1) {
+                end = header.indexOf(';', start);
+                if (end < 0) {
+                    end = length;
+                }
+                int separator = header.indexOf('=', start);
+                if (separator >= 0 && separator < end) {
+                    cookies.put(header.substring(start, separator).trim(), header.substring(separator + 1, end).trim());
+                } else if (header.substring(start, end).trim().length() > 0) {
+                    cookies.put(header.substring(start, end).trim(), "");
+                }
             }
         }
     }
@@ -307,7 +445,7 @@ public class HttpRequestImpl implements HttpRequest {
     protected void initKeepAlive() {
         keepAlive = true;
         String connection = getHeader("Connection");
-        if ("close".equalsIgnoreCase(connection) || requestLine.contains("1.0")) {
+        if ("close".equalsIgnoreCase(connection) || (version != null && version.contains("1.0"))) {
             keepAlive = false;
         }
     }
@@ -322,48 +460,61 @@ public class HttpRequestImpl implements HttpRequest {
     }
 
     /**
-     * Sets the requestedPath and parse parameters using the received complete URI
+     * Sets the requestedPath and the query string using the received complete
+     * URI. The parameters are only parsed when they are asked for.
      * @param uri
      */
     protected void setURI(String uri) {
-        String[] pathFrags = QUERY_STRING_PATTERN.split(uri);
-        requestedPath = pathFrags[0];
-        parameters = parseParameters((pathFrags.length > 1 ? pathFrags[1] : ""));
-
-        requestLine = method.toString() + " "+ uri;
-
+        this.uri = uri;
+        int query = uri.indexOf('?');
+        if (query < 0) {
+            requestedPath = uri;
+        } else {
+            int next = uri.indexOf('?', query + 1);
+            requestedPath = uri.substring(0, query);
+            queryString = uri.substring(query + 1, next < 0 ? uri.length() : next);
+        }
     }
 
     protected void setVersion(String version) {
         this.version = version;
-        requestLine += " " + version;
     }
 
     /**
      * Append the given value to the specified header.
      * If the header does not exist it will be added to the header map.
+     * Repeated header-names like Cookies keep all their values.
+     * 
+     * @param name the header name, in lower case
+     * @param value the header value, without leading and trailing whitespace
      */
     protected void pushToHeaders(String name, String value) {
-        if (name != null){
-			name = name.toLowerCase();
-			// Handle repeated header-name like Cookies
-			if (headers.containsKey(name)){
-				value = new StringBuilder(headers.get(name)).append(';').append(value.trim()).toString();
-			}
-			headers.put(name, value.trim());
-		}
+        pushToHeaders(-1, name, value);
+    }
+
+    /**
+     * Like {@link #pushToHeaders(String, String)}, for a name already looked
+     * up by the parser.
+     * 
+     * @param knownIndex the number of the name (see
+     *            {@link HttpHeaderMap#KNOWN_NAMES}), -1 if not a known one
+     */
+    protected void pushToHeaders(int knownIndex, String name, String value) {
+        if (knownIndex >= 0) {
+            headers.add(knownIndex, value);
+        } else if (name != null) {
+            headers.add(name, value);
+        }
     }
 
     /**
      * compute contentLength with header content-length when needed.
-     * Please notice that it will also allocate the body buffer to the appropriate size.
      * @return actual content length or 0 if not specified
      */
-    public int getContentLength(){
+    public long getContentLength(){
         if (contentLength < 0 ){
-            if (headers.containsKey("content-length")){
-                contentLength = Integer.parseInt(headers.get("content-length"));
-                bodyBuffer = DynamicByteBuffer.allocate(contentLength);
+            if (headers.contains("content-length")){
+                contentLength = Long.parseLong(headers.get("content-length"));
             }else {
                 contentLength = 0;
             }
@@ -388,19 +539,98 @@ public class HttpRequestImpl implements HttpRequest {
         chunkedSize += size;
     }
 
-    protected void buildChunkedBody(){
-        bodyBuffer = DynamicByteBuffer.allocate(HttpServerDescriptor.READ_BUFFER_SIZE);
-    }
-
+    /**
+     * The buffer the body is accumulated in, allocated on first use. Its size
+     * never exceeds {@link HttpServerDescriptor#MAX_BODY}.
+     */
     protected DynamicByteBuffer getBodyBuffer(){
+        if (bodyBuffer == null) {
+            int capacity = getContentLength() > 0 ? (int) Math.min(contentLength, HttpServerDescriptor.MAX_BODY)
+                    : HttpServerDescriptor.READ_BUFFER_SIZE;
+            bodyBuffer = DynamicByteBuffer.allocate(capacity);
+        }
         return bodyBuffer;
     }
 
+    boolean hasBody() {
+        return getContentLength() > 0 || isChunked();
+    }
+
+    /**
+     * Consume the given number of body bytes from the buffer. They are passed
+     * to the {@link StreamingBodyHandler} of this request if there is one, and
+     * appended to the body buffer otherwise.
+     */
+    void pushBody(ByteBuffer buffer, int size) {
+        if (bodyHandler != null) {
+            ByteBuffer data = buffer.duplicate();
+            data.limit(buffer.position() + size);
+            buffer.position(buffer.position() + size);
+            bodyReceived += size;
+            bodyStream.received(size);
+            bodyHandler.onBodyData(this, data, bodyStream);
+        } else if (bodyReceived + size > HttpServerDescriptor.MAX_BODY) {
+            rejectBody();
+        } else {
+            getBodyBuffer().put(buffer, size);
+            bodyReceived += size;
+        }
+    }
+
+    long getBodyReceived() {
+        return bodyReceived;
+    }
+
+    /**
+     * Pass the body to the given handler while it arrives instead of
+     * buffering it.
+     */
+    void streamBodyTo(StreamingBodyHandler handler, RequestBodyStream stream) {
+        bodyHandler = handler;
+        bodyStream = stream;
+    }
+
+    boolean isBodyStreamed() {
+        return bodyHandler != null;
+    }
+
+    /**
+     * Whether no more body bytes must be consumed for now, because the
+     * streamed body is paused or the body was rejected.
+     */
+    boolean isBodyBlocked() {
+        return bodyTooLarge || (bodyStream != null && bodyStream.isPaused());
+    }
+
+    /**
+     * Give up on the body, which is too large to be buffered. The request is
+     * then finished, and the connection closed after the response.
+     */
+    void rejectBody() {
+        bodyTooLarge = true;
+        keepAlive = false;
+    }
+
+    boolean isBodyTooLarge() {
+        return bodyTooLarge;
+    }
+
+    void setRoutedHandler(RequestHandler handler) {
+        routedHandler = handler;
+    }
+
+    RequestHandler getRoutedHandler() {
+        return routedHandler;
+    }
+
     protected boolean isFinished(){
+        if (bodyTooLarge) {
+            return true;
+        }
         boolean res = context.isbodyFound();
         if (res ){
             if (contentLength > 0){
-                res = contentLength <= bodyBuffer.position();
+                res = contentLength <= bodyReceived;
             }else if (isChunked()){
                 res = context.chunked;
             }
@@ -410,7 +640,7 @@ public class HttpRequestImpl implements HttpRequest {
     }
     
     public boolean expectContinue() {    	
-    	return (bodyBuffer == null || bodyBuffer.position() == 0) && headers.containsKey("expect");
+    	return bodyReceived == 0 && (bodyBuffer == null || bodyBuffer.position() == 0) && headers.contains("expect");
     }
 
 }
@@ -21,8 +21,6 @@ package org.apache.awf.web.http;
 
 import java.nio.ByteBuffer;
 
-import org.apache.awf.io.buffer.DynamicByteBuffer;
-import org.apache.awf.web.http.protocol.HttpVerb;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,10 +35,25 @@ public class HttpRequestParser {
 	
 	private static final Logger LOG = LoggerFactory.getLogger(HttpRequestParser.class);
 
+    /**
+     * Notified once the headers of a request with a body are parsed, before
+     * any of the body is consumed.
+     */
+    interface HeadersListener {
+        void headersParsed(HttpRequestImpl request);
+    }
+
     private final HttpBufferedLexer lexer;
 
+    private final HeadersListener listener;
+
     public HttpRequestParser(){
+        this(null);
+    }
+
+    HttpRequestParser(HeadersListener listener){
         lexer = new HttpBufferedLexer();
+        this.listener = listener;
     }
 
 
@@ -56,7 +69,8 @@ public class HttpRequestParser {
      * @param buffer    ByteBuffer containing data to parse
      * @param result    null if it's a new request or the incomplete request
      * @return          new HttpRequestImpl if result is null representing a complete or incomplete request
-     *                  on error, it will return a MalformedHttpRequest.
+     *                  on error, it will return a MalformedHttpRequest. When the request is complete
+     *                  the buffer is positioned at the first byte following it.
      */
 	public HttpRequestImpl parseRequestBuffer(ByteBuffer buffer,HttpRequestImpl result){
 
@@ -74,15 +88,15 @@ public class HttpRequestParser {
         }
          // Copy body data to the request bodyBuffer
         if (context.isbodyFound() && result.getContentLength() > 0){
-            pushRemainingToBody(context.buffer, result.getBodyBuffer(), result.getContentLength());
+            pushRemainingToBody(context.buffer, result);
             status = 0;
         }
 
         // while no errors and buffer not finished
-        while ((status = lexer.nextToken(context)) > 0){
+        while (status > 0 && (status = lexer.nextToken(context)) > 0){
            switch (context.currentType){
                case REQUEST_METHOD: {
-                   result.setMethod(HttpVerb.valueOf(context.getTokenValue()));break;
+                   result.setMethod(context.getTokenVerb());break;
                }
                case REQUEST_URI:{
                    result.setURI(context.getTokenValue());
@@ -95,18 +109,27 @@ public class HttpRequestParser {
                    context.persistHeaderName();break;
                }
                case HEADER_VALUE:{
-                   result.pushToHeaders(context.getLastHeaderName(), context.getTokenValue());break;
+                   result.pushToHeaders(context.getLastHeaderIndex(), context.getLastHeaderName(), context.getTrimmedTokenValue());break;
                }
                case BODY:{
                    result.initKeepAlive();
+                   if (!context.chunked && result.hasBody()){
+                       if (listener != null){
+                           listener.headersParsed(result);
+                       }
+                       if (!result.isBodyStreamed() && result.getContentLength() > HttpServerDescriptor.MAX_BODY){
+                           result.rejectBody();
+                       }
+                   }
                    // Copy body data to the request bodyBuffer
-                   if (result.getContentLength() > 0){
-                      pushRemainingToBody(context.buffer, result.getBodyBuffer(), result.getContentLength());
+                   if (result.isBodyTooLarge()){
+                       status = 0;
+                   }else if (result.getContentLength() > 0){
+                      pushRemainingToBody(context.buffer, result);
                       status = 0;
                    }else if (result.isChunked() && !context.chunked){
                        context.chunked =true;
                        context.currentType = HttpParsingContext.TokenType.CHUNK_OCTET;
-                       result.buildChunkedBody();
                    }else { // BODY Found on chunked encoding so request done
                        status = 0;
                    }
@@ -142,41 +165,38 @@ public class HttpRequestParser {
             result = MalFormedHttpRequest.instance;
         }
 
-        // release the context buffer
+        // release the context buffer, the bytes after a finished request are
+        // left in the buffer (e.g. pipelined requests)
         context.setBuffer(null);
-        buffer.clear();
         return result;
 	}
 
     private int pushChunkToBody(ByteBuffer buffer, HttpRequestImpl result, HttpParsingContext context) {
         int size = (buffer.remaining() > context.chunkSize ? context.chunkSize : buffer.remaining());
-        result.getBodyBuffer().put(buffer.array(), buffer.position(), size);
+        result.pushBody(buffer, size);
+        if (result.isBodyTooLarge()){
+            return 0;
+        }
         context.chunkSize =  context.chunkSize - size;
 
-        buffer.position(buffer.position()+size);
-        // Chunk not complete we need more data
-        if (context.chunkSize > 0){
+        // Chunk not complete we need more data, or the body is paused
+        if (context.chunkSize > 0 || result.isBodyBlocked()){
             return 0;
         }
         return 1;
     }
 
     /**
-     * Fill's the body buffer with the data retrieved from the given buffer starting
-     * at buffer position and copying given size byte.<br/>
-     * This will ensure that body buffer does not contain more than size byte.
+     * Pushes the body data of the given buffer, starting at buffer position,
+     * to the request.<br/>
+     * This will ensure that no more than content length bytes are pushed.
      */
-	private void pushRemainingToBody(ByteBuffer buffer, DynamicByteBuffer body, int size){
-		// If buffer is empty or there is no clength then skip this
-		if (size == 0 || !buffer.hasRemaining()){
+	private void pushRemainingToBody(ByteBuffer buffer, HttpRequestImpl result){
+		long size = Math.min(buffer.remaining(), result.getContentLength() - result.getBodyReceived());
+		// If buffer is empty or the body is complete then skip this
+		if (size <= 0){
 			return;
 		}
-
-		if (body.position() + buffer.remaining() > size){
-			body.put(buffer.array(),  buffer.position(), size - body.position());
-		}
-		else {
-			body.put(buffer.array(),  buffer.position(), buffer.remaining());
-		}
+		result.pushBody(buffer, (int) size);
 	}
 }
\ No newline at end of file
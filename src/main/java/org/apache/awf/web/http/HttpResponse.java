@@ -20,6 +20,7 @@
 package org.apache.awf.web.http;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 
 import org.apache.awf.web.http.protocol.HttpStatus;
 
@@ -165,9 +166,53 @@ public interface HttpResponse {
 
     /**
      * Experimental support.
+     * 
+     * @throws IllegalStateException if the body is being compressed.
      */
     long write(File file);
 
+    /**
+     * Like {@link #write(File)}, sends count bytes of the given file starting
+     * at offset (e.g. the range of a "206 Partial Content" response).
+     * 
+     * @throws IllegalStateException if the body is being compressed.
+     */
+    long write(File file, long offset, long count);
+
+    /**
+     * Sends the given ranges of the file as a <code>multipart/byteranges</code>
+     * body, each part with the given "Content-Type" and its "Content-Range".
+     * Sets the "Content-Type" and "Content-Length" headers of the response.
+     * 
+     * @param ranges the first and last byte positions (inclusive) of each
+     *            range, in pairs.
+     * @throws IllegalStateException if the body is being compressed.
+     */
+    long writeRanges(File file, long[] ranges, String contentType);
+
+    /**
+     * Like {@link #write(File)}, sends the remaining bytes of the given buffer
+     * as the rest of the body: the headers are flushed right away, with the
+     * length of the body as "Content-Length". The buffer is not copied, and
+     * must not be modified until the response is finished. If the body is
+     * compressed, the buffer is compressed right away instead.
+     */
+    long write(ByteBuffer content);
+
+    /**
+     * Like {@link #write(ByteBuffer)}, and runs the given callback once the
+     * buffer has been sent, or discarded because the connection was closed.
+     * Until then the buffer must stay valid, e.g. a shared mapped file must
+     * not be unmapped.
+     */
+    long write(ByteBuffer content, Runnable onRelease);
+
+    /**
+     * Set header lines encoded in advance, each one "Name: value\r\n", sent
+     * in addition to the headers set by {@link #setHeader(String, String)}.
+     */
+    void setEncodedHeaders(byte[] lines);
+
     /**
      * Explicit flush.
      * 
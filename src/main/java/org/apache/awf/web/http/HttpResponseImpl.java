@@ -20,56 +20,75 @@
 package org.apache.awf.web.http;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedChannelException;
-import java.nio.channels.FileChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import com.google.common.base.CharMatcher;
 import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
 
-import org.apache.awf.io.buffer.DynamicByteBuffer;
-import org.apache.awf.util.Closeables;
+import org.apache.awf.io.buffer.CompositeByteBuffer;
 import org.apache.awf.util.CookieUtil;
 import org.apache.awf.util.DateUtil;
+import org.apache.awf.util.HttpDateClock;
 import org.apache.awf.util.HttpUtil;
+import org.apache.awf.web.handler.RequestHandler;
+import org.apache.awf.web.handler.RequestHandlerFactory;
 import org.apache.awf.web.http.protocol.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import static org.apache.awf.web.http.HttpServerDescriptor.WRITE_BUFFER_SIZE;
 
 public class HttpResponseImpl implements HttpResponse {
 
     private final static Logger logger = LoggerFactory.getLogger(HttpResponseImpl.class);
 
+    /** Source of the boundaries of multipart/byteranges bodies. */
+    private static final Random BOUNDARIES = new Random();
+
     private final HttpProtocol protocol;
     private final SelectionKey key;
 
     private HttpStatus status = HttpStatus.SUCCESS_OK;
 
+    private final boolean keepAlive;
+    /** Headers set by the application, the default ones are pre-encoded. */
     private final Map<String, String> headers = new HashMap<String, String>();
+    private byte[] encodedHeaders;
+    private long contentLength = -1;
     private final Map<String, String> cookies = Maps.newHashMap();
     private boolean headersCreated = false;
-    private DynamicByteBuffer responseData = DynamicByteBuffer.allocate(WRITE_BUFFER_SIZE);
+    /**
+     * The body, segments borrowed from the IOLoop's direct buffer pool. Once
+     * the headers are created they are kept in a separate segment in front of
+     * it, so that both are sent with one gathering write.
+     */
+    private final CompositeByteBuffer responseData;
 
     private boolean createETag;
 
+    /** The handler serving this response, released once it is finished. */
+    private RequestHandler handler;
+
+    /** Content coding negotiated for the body, or <code>null</code>. */
+    private String compression;
+    private int compressionThreshold;
+    /** Compresses the body written once the headers announce the coding. */
+    private ResponseCompressor compressor;
+
     public HttpResponseImpl(HttpProtocol protocol, SelectionKey key, boolean keepAlive) {
         this.protocol = protocol;
         this.key = key;
-        headers.put("Server", "Apache AWF/0.4.0-SNAPSHOT");
-        headers.put("Date", DateUtil.getCurrentAsString());
-        headers.put("Connection", keepAlive ? "Keep-Alive" : "Close");
+        responseData = new CompositeByteBuffer(protocol.getIOLoop().getDirectBufferPool());
+        this.keepAlive = keepAlive;
     }
 
     @Override
@@ -85,9 +104,17 @@ public class HttpResponseImpl implements HttpResponse {
 
     @Override
     public void setHeader(String header, String value) {
+        if ("Content-Length".equals(header)) {
+            contentLength = -1;
+        }
         headers.put(header, value);
     }
 
+    @Override
+    public void setEncodedHeaders(byte[] lines) {
+        encodedHeaders = lines;
+    }
+
     @Override
     public void setCookie(String name, String value) {
         setCookie(name, value, -1, null, null, false, false);
@@ -167,32 +194,78 @@ public class HttpResponseImpl implements HttpResponse {
 
     @Override
     public HttpResponse write(byte[] data) {
-        responseData.put(data);
+        if (compressor != null) {
+            compressor.write(ByteBuffer.wrap(data), responseData);
+        } else {
+            responseData.put(data);
+        }
         return this;
     }
 
+    /**
+     * Compress the body with the given content coding ("gzip" or "deflate")
+     * if, when the headers are sent, at least threshold bytes of it have been
+     * written and the handler has set neither a length nor an encoding.
+     */
+    void setCompression(String coding, int threshold) {
+        compression = coding;
+        compressionThreshold = threshold;
+    }
+
+    private boolean shouldCompress() {
+        return shouldCompress(0);
+    }
+
+    /**
+     * @param pending the number of body bytes about to be written in addition
+     *            to the ones already written.
+     */
+    private boolean shouldCompress(long pending) {
+        return compression != null && compressor == null && contentLength < 0 && responseData.hasRemaining()
+                && responseData.size() + pending >= compressionThreshold && !headers.containsKey("Content-Length")
+                && !headers.containsKey("Content-Encoding") && !headers.containsKey("Transfer-Encoding");
+    }
+
+    /**
+     * Compresses the body written so far, and the rest of it as it is written,
+     * into chunks.
+     */
+    private void startCompression() {
+        compressor = new ResponseCompressor(protocol.getDeflaterPool(), compression);
+        CompositeByteBuffer compressed = new CompositeByteBuffer(protocol.getIOLoop().getDirectBufferPool());
+        for (ByteBuffer data : responseData.getByteBuffers()) {
+            compressor.write(data, compressed);
+        }
+        responseData.release();
+        responseData.append(compressed);
+
+        headers.put("Content-Encoding", compression);
+        headers.put("Transfer-Encoding", "chunked");
+        String vary = headers.get("Vary");
+        headers.put("Vary", vary == null ? "Accept-Encoding" : vary + ", Accept-Encoding");
+    }
+
     @Override
     public long flush() {
         if (!headersCreated) {
-            String initial = createInitalLineAndHeaders();
-            responseData.prepend(initial);
+            if (shouldCompress()) {
+                startCompression();
+            }
+            responseData.prependCopyOf(createInitalLineAndHeaders());
             headersCreated = true;
         }
 
         SocketChannel channel = (SocketChannel) key.channel();
-        responseData.flip(); // prepare for write
+        long bytesFlushed = 0;
         try {
-            channel.write(responseData.getByteBuffer());
+            // headers and body in one gathering write, no copy of the body
+            bytesFlushed = responseData.writeTo(channel);
         } catch (IOException e) {
             logger.error("ClosedChannelException during channel.write(): {}", e.getMessage());
-            Closeables.closeQuietly(protocol.getIOLoop(), key.channel());
-        }
-        long bytesFlushed = responseData.position();
-        if (protocol.getIOLoop().hasKeepAliveTimeout(channel)) {
-            protocol.prolongKeepAliveTimeout(channel);
+            protocol.closeQuietly(key);
         }
+        protocol.prolongKeepAliveTimeout(channel);
         if (responseData.hasRemaining()) {
-            responseData.compact(); // make room for more data be "read" in
             try {
                 key.channel().register(key.selector(), SelectionKey.OP_WRITE); // TODO
                 // RS
@@ -201,77 +274,128 @@ public class HttpResponseImpl implements HttpResponse {
                 // IOLoop.updateHandler
             } catch (ClosedChannelException e) {
                 logger.error("ClosedChannelException during flush(): {}", e.getMessage());
-                Closeables.closeQuietly(protocol.getIOLoop(), key.channel());
+                protocol.closeQuietly(key);
             }
             key.attach(responseData);
-        } else {
-            responseData.clear();
         }
         return bytesFlushed;
     }
 
+    /**
+     * Release the given handler, e.g. back to its pool, when this response is
+     * finished.
+     */
+    void releaseOnFinish(RequestHandler handler) {
+        this.handler = handler;
+    }
+
     @Override
     public long finish() {
+        if (handler != null) {
+            RequestHandlerFactory.release(handler);
+            handler = null;
+        }
         long bytesWritten = 0;
         SocketChannel clientChannel = (SocketChannel) key.channel();
-        ByteBuffer buffer = null;
-
-        if (key.attachment() instanceof MappedByteBuffer) {
-            MappedByteBuffer mbb = (MappedByteBuffer) key.attachment();
-            if (mbb.hasRemaining() && clientChannel.isOpen()) {
-                try {
-                    bytesWritten = clientChannel.write(mbb);
-                } catch (IOException e) {
-                    logger.warn("Could not write to channel: ", e.getMessage());
-                    Closeables.closeQuietly(key.channel());
-                }
-            }
-            buffer = mbb;
+        boolean pending = false;
+
+        if (key.attachment() instanceof FileTransfer) {
+            // the rest of a file is being sent, after the pending data
+            pending = !((FileTransfer) key.attachment()).isDone();
         } else {
             if (clientChannel.isOpen()) {
                 if (!headersCreated) {
-                    setEtagAndContentLength();
+                    if (shouldCompress()) {
+                        startCompression();
+                    } else {
+                        setEtagAndContentLength();
+                    }
+                }
+                if (compressor != null) {
+                    compressor.finish(responseData);
+                    compressor = null;
                 }
                 bytesWritten = flush();
+            } else if (compressor != null) {
+                compressor.release();
+                compressor = null;
             }
             // close (or register for read) if
-            // (a) DBB is attached but all data is sent to wire (hasRemaining ==
-            // false)
-            // (b) no DBB is attached (never had to register for write)
-            if (key.attachment() instanceof DynamicByteBuffer) {
-                buffer = ((DynamicByteBuffer) key.attachment()).getByteBuffer();
+            // (a) the response data is attached but all data is sent to wire
+            // (hasRemaining == false)
+            // (b) nothing is attached (never had to register for write)
+            if (key.attachment() instanceof CompositeByteBuffer) {
+                pending = ((CompositeByteBuffer) key.attachment()).hasRemaining();
             }
         }
         // Do Not Close the socket if there is more data to send or this is a CONTINUE
-        if ((buffer != null && buffer.hasRemaining()) || HttpStatus.SUCCESS_CONTINUE.equals(status)) {
+        if (pending || HttpStatus.SUCCESS_CONTINUE.equals(status)) {
             return bytesWritten;
         }
         protocol.closeOrRegisterForRead(key);
+        responseData.release();
         return bytesWritten;
     }
 
     private void setEtagAndContentLength() {
 
-        if (createETag && responseData.position() > 0) {
-            setHeader("Etag", HttpUtil.getEtag(responseData.array()));
+        if (createETag && responseData.hasRemaining()) {
+            setHeader("Etag", HttpUtil.getEtag(responseData.getByteBuffers()));
         }
-        setHeader("Content-Length", String.valueOf(responseData.position()));
+        setContentLength(responseData.size());
+    }
+
+    private void setContentLength(long length) {
+        headers.remove("Content-Length");
+        contentLength = length;
     }
 
-    private String createInitalLineAndHeaders() {
-        StringBuilder sb = new StringBuilder(status.line());
-        for (Map.Entry<String, String> header : headers.entrySet()) {
-            sb.append(header.getKey());
-            sb.append(": ");
-            sb.append(header.getValue());
-            sb.append("\r\n");
+    /**
+     * Sets the length of the body to what has been written so far plus the
+     * given length, unless the headers have already been sent.
+     */
+    private void setRemainingContentLength(long length) {
+        if (!headersCreated) {
+            setContentLength(responseData.size() + length);
         }
-        for (String cookie : cookies.values()) {
-            sb.append("Set-Cookie: " + cookie + "\r\n");
+    }
+
+    /**
+     * Files are sent as they are, they can not be part of a compressed body.
+     */
+    private void checkNotCompressed() {
+        if (compressor != null) {
+            throw new IllegalStateException("A file can not be sent in a compressed response");
         }
+    }
 
-        sb.append("\r\n");
-        return sb.toString();
+    /**
+     * Serializes the status line and headers with the loop's
+     * {@link HttpHeaderWriter}. The returned buffer is only valid until the
+     * next response of this loop is serialized.
+     */
+    private ByteBuffer createInitalLineAndHeaders() {
+        HttpHeaderWriter writer = protocol.getHeaderWriter().reset(status);
+        if (!headers.containsKey("Server")) {
+            writer.line(HttpHeaderWriter.SERVER);
+        }
+        if (!headers.containsKey("Date")) {
+            writer.line(HttpDateClock.currentHeaderLine());
+        }
+        if (!headers.containsKey("Connection")) {
+            writer.line(keepAlive ? HttpHeaderWriter.CONNECTION_KEEP_ALIVE : HttpHeaderWriter.CONNECTION_CLOSE);
+        }
+        if (contentLength >= 0) {
+            writer.header(HttpHeaderWriter.CONTENT_LENGTH, contentLength);
+        }
+        writer.headers(headers);
+        if (encodedHeaders != null) {
+            writer.line(encodedHeaders);
+        }
+        for (String cookie : cookies.values()) {
+            writer.header(HttpHeaderWriter.SET_COOKIE, cookie);
+        }
+        return writer.end().buffer();
     }
 
     /**
@@ -279,36 +403,124 @@ public class HttpResponseImpl implements HttpResponse {
      */
     @Override
     public long write(File file) {
+        return write(file, 0, file.length());
+    }
+
+    @Override
+    public long write(File file, long offset, long count) {
         // setHeader("Etag", HttpUtil.getEtag(file));
-        setHeader("Content-Length", String.valueOf(file.length()));
-        long bytesWritten = 0;
-        flush(); // write initial line + headers
+        checkNotCompressed();
+        setRemainingContentLength(count);
+        FileTransfer transfer = open(file);
+        if (transfer == null) {
+            return 0;
+        }
+        transfer.add(null, offset, count);
+        return send(transfer, file);
+    }
 
-        FileInputStream in = null;
-        try {
-            in = new FileInputStream(file);
-            FileChannel fileChannel = in.getChannel();
-            long sizeNeeded = fileChannel.size();
-            bytesWritten = fileChannel.transferTo(0, sizeNeeded, ((SocketChannel) key.channel()));
-
-            if (bytesWritten < sizeNeeded) {
-                // Set channel Position to write rest of data from good starting
-                // offset
-                fileChannel.position(bytesWritten);
-                key.attach(in);
-            } else {
-                // Only close channel when file is totally transferred to
-                // SocketChannel
-                com.google.common.io.Closeables.closeQuietly(in);
-            }
+    @Override
+    public long writeRanges(File file, long[] ranges, String contentType) {
+        checkNotCompressed();
+        String boundary = Long.toHexString(BOUNDARIES.nextLong());
+        long length = file.length();
+        ByteBuffer[] prefixes = new ByteBuffer[ranges.length / 2];
+        long total = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            prefixes[i / 2] = ByteBuffer.wrap(("\r\n--" + boundary + "\r\nContent-Type: " + contentType
+                    + "\r\nContent-Range: bytes " + ranges[i] + "-" + ranges[i + 1] + "/" + length + "\r\n\r\n")
+                    .getBytes(Charsets.ISO_8859_1));
+            total += prefixes[i / 2].remaining() + ranges[i + 1] - ranges[i] + 1;
+        }
+        ByteBuffer end = ByteBuffer.wrap(("\r\n--" + boundary + "--\r\n").getBytes(Charsets.ISO_8859_1));
+        total += end.remaining();
+
+        setHeader("Content-Type", "multipart/byteranges; boundary=" + boundary);
+        setRemainingContentLength(total);
+        FileTransfer transfer = open(file);
+        if (transfer == null) {
+            return 0;
+        }
+        for (int i = 0; i < ranges.length; i += 2) {
+            transfer.add(prefixes[i / 2], ranges[i], ranges[i + 1] - ranges[i] + 1);
+        }
+        transfer.add(end, 0, 0);
+        return send(transfer, file);
+    }
 
+    /**
+     * Opens a transfer of the given file, to be sent after the headers (and
+     * anything written so far).
+     */
+    private FileTransfer open(File file) {
+        FileTransfer transfer;
+        try {
+            transfer = new FileTransfer(responseData, file);
         } catch (IOException e) {
             logger.error("Error writing (static file {}) to response: {}", file.getAbsolutePath(), e.getMessage());
-
-            // If an exception occurs here we should ensure that file is closed
-            com.google.common.io.Closeables.closeQuietly(in);
+            return null;
+        }
+        if (!headersCreated) {
+            responseData.prependCopyOf(createInitalLineAndHeaders());
+            headersCreated = true;
         }
+        return transfer;
+    }
 
+    /**
+     * Writes as much of the transfer as the socket accepts, the rest is
+     * attached and sent by {@link HttpProtocol#handleWrite(SelectionKey)}.
+     */
+    private long send(FileTransfer transfer, File file) {
+        long bytesWritten = 0;
+        try {
+            bytesWritten = transfer.writeTo((SocketChannel) key.channel());
+        } catch (IOException e) {
+            logger.error("Error writing (static file {}) to response: {}", file.getAbsolutePath(), e.getMessage());
+            transfer.close();
+            protocol.closeQuietly(key);
+            return bytesWritten;
+        }
+        protocol.prolongKeepAliveTimeout(key.channel());
+        if (transfer.isDone()) {
+            transfer.close();
+        } else {
+            try {
+                key.channel().register(key.selector(), SelectionKey.OP_WRITE);
+            } catch (ClosedChannelException e) {
+                logger.error("ClosedChannelException during write(): {}", e.getMessage());
+                transfer.close();
+                protocol.closeQuietly(key);
+                return bytesWritten;
+            }
+            key.attach(transfer);
+        }
         return bytesWritten;
     }
+
+    @Override
+    public long write(ByteBuffer content) {
+        return write(content, null);
+    }
+
+    @Override
+    public long write(ByteBuffer content, Runnable onRelease) {
+        if (!headersCreated) {
+            if (shouldCompress(content.remaining())) {
+                startCompression();
+            } else {
+                setRemainingContentLength(content.remaining());
+            }
+        }
+        if (compressor != null) {
+            // the deflater is done with the buffer once written
+            compressor.write(content, responseData);
+            if (onRelease != null) {
+                onRelease.run();
+            }
+        } else {
+            responseData.append(content, onRelease);
+        }
+        return flush();
+    }
 }
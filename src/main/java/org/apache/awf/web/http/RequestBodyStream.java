@@ -0,0 +1,78 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.http;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * The body of a request passed to a
+ * {@link org.apache.awf.web.handler.StreamingBodyHandler}. Reading from the
+ * connection can be paused, e.g. while the received data is written
+ * somewhere slower, so that at most one read buffer is held per connection.
+ */
+public class RequestBodyStream {
+
+    private final HttpProtocol protocol;
+    private final SelectionKey key;
+    private boolean paused;
+    private long received;
+
+    RequestBodyStream(HttpProtocol protocol, SelectionKey key) {
+        this.protocol = protocol;
+        this.key = key;
+    }
+
+    /**
+     * Stop passing data and reading from the connection until
+     * {@link #resume()} is invoked.
+     */
+    public void pause() {
+        if (!paused) {
+            paused = true;
+            protocol.pauseReading(key);
+        }
+    }
+
+    /**
+     * Continue passing data, starting with the data received before the pause.
+     * Must be invoked from the thread of the <code>IOLoop</code>.
+     */
+    public void resume() {
+        if (paused) {
+            paused = false;
+            protocol.resumeReading(key);
+        }
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return the number of body bytes passed so far.
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    void received(int bytes) {
+        received += bytes;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.http;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.awf.io.buffer.CompositeByteBuffer;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Compresses a response body on the fly, with the "gzip" or "deflate" content
+ * coding, into chunks of the chunked transfer coding. The deflater is
+ * borrowed from the IOLoop's {@link DeflaterPool} and returned once the body
+ * is finished (or the compressor is released).
+ */
+class ResponseCompressor {
+
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(Charsets.ISO_8859_1);
+
+    private final DeflaterPool pool;
+    private final boolean gzip;
+    private Deflater deflater;
+    /** Checksum of the uncompressed data (gzip only), or null. */
+    private final CRC32 crc;
+    private boolean started;
+
+    /**
+     * @param coding "gzip" or "deflate".
+     */
+    ResponseCompressor(DeflaterPool pool, String coding) {
+        this.pool = pool;
+        this.gzip = "gzip".equals(coding);
+        this.deflater = pool.acquire(gzip);
+        this.crc = gzip ? new CRC32() : null;
+    }
+
+    /**
+     * Compress the remaining bytes of the given data (advancing its position),
+     * appending the compressed chunks produced so far to out. The deflater may
+     * hold back some output until more data is written or the body is
+     * finished.
+     */
+    void write(ByteBuffer data, CompositeByteBuffer out) {
+        start(out);
+        while (data.hasRemaining()) {
+            byte[] input;
+            int offset;
+            int length;
+            if (data.hasArray()) {
+                input = data.array();
+                offset = data.arrayOffset() + data.position();
+                length = data.remaining();
+            } else {
+                input = pool.input;
+                offset = 0;
+                length = Math.min(data.remaining(), input.length);
+                data.duplicate().get(input, 0, length);
+            }
+            data.position(data.position() + length);
+            if (crc != null) {
+                crc.update(input, offset, length);
+            }
+            deflater.setInput(input, offset, length);
+            while (!deflater.needsInput()) {
+                deflate(out);
+            }
+        }
+    }
+
+    /**
+     * Compress the rest of the body and append the last chunk to out. The
+     * deflater is returned to the pool.
+     */
+    void finish(CompositeByteBuffer out) {
+        start(out);
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate(out);
+        }
+        if (crc != null) {
+            byte[] trailer = pool.output;
+            putIntLE(trailer, 0, (int) crc.getValue());
+            putIntLE(trailer, 4, (int) deflater.getBytesRead());
+            chunk(trailer, 8, out);
+        }
+        out.put(LAST_CHUNK);
+        release();
+    }
+
+    /**
+     * Return the deflater to the pool, e.g. if the response is abandoned.
+     */
+    void release() {
+        if (deflater != null) {
+            pool.release(deflater, gzip);
+            deflater = null;
+        }
+    }
+
+    private void start(CompositeByteBuffer out) {
+        if (!started) {
+            started = true;
+            if (gzip) {
+                chunk(GZIP_HEADER, GZIP_HEADER.length, out);
+            }
+        }
+    }
+
+    private void deflate(CompositeByteBuffer out) {
+        int n = deflater.deflate(pool.output);
+        if (n > 0) {
+            chunk(pool.output, n, out);
+        }
+    }
+
+    private static void chunk(byte[] data, int length, CompositeByteBuffer out) {
+        out.put(Integer.toHexString(length).getBytes(Charsets.ISO_8859_1));
+        out.put(CRLF);
+        out.put(data, 0, length);
+        out.put(CRLF);
+    }
+
+    private static void putIntLE(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -199,7 +199,7 @@ public class AsynchronousHttpClient {
         socket = pool.getPooledSocket(host, port);
         if (socket != null) {
             if (logger.isDebugEnabled()) {
-                logger.debug("Found pooled socket for " + host + ":" + port);
+                logger.debug("Found pooled socket for {}:{}", host, port);
             }
             startTimeout();
             onConnect();
@@ -207,7 +207,7 @@ public class AsynchronousHttpClient {
         }
 
         if (logger.isDebugEnabled()) {
-            logger.debug("Creating new socket for " + host + ":" + port);
+            logger.debug("Creating new socket for {}:{}", host, port);
         }
         try {
             socket = new AsynchronousSocket(SocketChannel.open());
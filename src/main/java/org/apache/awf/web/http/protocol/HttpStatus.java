@@ -19,6 +19,8 @@
  */
 package org.apache.awf.web.http.protocol;
 
+import com.google.common.base.Charsets;
+
 /**
  * An <code>Enumeration</code> of all known HTTP status codes.
  */
@@ -188,6 +190,9 @@ public enum HttpStatus {
      */
     private String line;
 
+    /** The status line including the trailing CRLF, pre-encoded. */
+    private final byte[] lineBytes;
+
     /**
      * Create an instance of this type.
      * 
@@ -196,7 +201,8 @@ public enum HttpStatus {
      */
     private HttpStatus(int code, String phrase) {
         this.code = code;
-        line = phrase;
+        line = phrase + "\r\n";
+        lineBytes = line.getBytes(Charsets.ISO_8859_1);
     }
 
     /**
@@ -214,6 +220,17 @@ public enum HttpStatus {
      * @return the status line.
      */
     public String line() {
-        return line + "\r\n";
+        return line;
+    }
+
+    /**
+     * Retrieve the status line (including the trailing CRLF) for this
+     * instance as bytes. The returned array is shared and must not be
+     * modified.
+     * 
+     * @return the encoded status line.
+     */
+    public byte[] lineBytes() {
+        return lineBytes;
     }
 }
@@ -22,9 +22,13 @@ package org.apache.awf.configuration;
 import static org.apache.awf.configuration.Configuration.DEFAULT_STATIC_DIRECTORY;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.apache.awf.configuration.Configuration;
+import org.apache.awf.io.IOLoopBalancer;
+import org.apache.awf.io.IOLoopBalancers;
 import org.junit.Test;
 
 /**
@@ -71,4 +75,38 @@ public class ConfigurationTest {
         configuration.setCreateETags(true);
         assertTrue(configuration.shouldCreateETags());
     }
+
+    @Test
+    public void testIsReusePort() {
+
+        Configuration configuration = new Configuration();
+
+        assertFalse(configuration.isReusePort());
+
+        configuration.setReusePort(true);
+        assertTrue(configuration.isReusePort());
+    }
+
+    @Test
+    public void testIsHashedWheelTimeouts() {
+
+        Configuration configuration = new Configuration();
+
+        assertFalse(configuration.isHashedWheelTimeouts());
+
+        configuration.setHashedWheelTimeouts(true);
+        assertTrue(configuration.isHashedWheelTimeouts());
+    }
+
+    @Test
+    public void testGetAcceptorBalancer() {
+
+        Configuration configuration = new Configuration();
+
+        assertNull(configuration.getAcceptorBalancer());
+
+        IOLoopBalancer balancer = IOLoopBalancers.roundRobin();
+        configuration.setAcceptorBalancer(balancer);
+        assertSame(balancer, configuration.getAcceptorBalancer());
+    }
 }
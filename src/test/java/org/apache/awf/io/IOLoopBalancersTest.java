@@ -0,0 +1,83 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Test cases for {@link IOLoopBalancers}.
+ */
+public class IOLoopBalancersTest {
+
+    private static List<IOLoop> loops(int... loads) {
+        List<IOLoop> loops = Lists.newArrayList();
+        for (int load : loads) {
+            IOLoop loop = Mockito.mock(IOLoop.class);
+            Mockito.when(loop.getNumberOfConnections()).thenReturn(load);
+            loops.add(loop);
+        }
+        return loops;
+    }
+
+    @Test
+    public void roundRobin() {
+        List<IOLoop> loops = loops(0, 0, 0);
+        IOLoopBalancer balancer = IOLoopBalancers.roundRobin();
+        for (int i = 0; i < 7; i++) {
+            assertSame(loops.get(i % 3), balancer.select(loops));
+        }
+    }
+
+    @Test
+    public void leastConnections() {
+        List<IOLoop> loops = loops(4, 2, 7, 2);
+        IOLoopBalancer balancer = IOLoopBalancers.leastConnections();
+        assertSame(loops.get(1), balancer.select(loops));
+    }
+
+    @Test
+    public void randomOfTwo() {
+        List<IOLoop> loops = loops(9, 0, 5);
+        IOLoopBalancer balancer = IOLoopBalancers.randomOfTwo();
+        Map<IOLoop, Integer> selected = Maps.newHashMap();
+        for (int i = 0; i < 300; i++) {
+            IOLoop loop = balancer.select(loops);
+            Integer count = selected.get(loop);
+            selected.put(loop, count == null ? 1 : count + 1);
+        }
+        // the most loaded IOLoop always loses against the other candidate
+        assertEquals(null, selected.get(loops.get(0)));
+        assertEquals(2, selected.size());
+
+        List<IOLoop> single = loops(3);
+        assertSame(single.get(0), balancer.select(single));
+    }
+
+}
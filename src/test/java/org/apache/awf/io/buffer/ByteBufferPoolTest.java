@@ -0,0 +1,92 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.io.buffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ByteBufferPoolTest {
+
+	private final ByteBufferPool pool = new ByteBufferPool(1024, 8192, 2);
+
+	@Test
+	public void sizeClasses() {
+		assertEquals(1024, pool.acquire(1).capacity());
+		assertEquals(1024, pool.acquire(1024).capacity());
+		assertEquals(2048, pool.acquire(1025).capacity());
+		assertEquals(8192, pool.acquire(5000).capacity());
+		// larger than the largest size class
+		assertEquals(10000, pool.acquire(10000).capacity());
+	}
+
+	@Test
+	public void reuse() {
+		ByteBuffer buffer = pool.acquire(1000);
+		buffer.put((byte) 1);
+		pool.release(buffer);
+		assertEquals(1, pool.getNumberOfPooledBuffers());
+
+		ByteBuffer reused = pool.acquire(512);
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+		assertEquals(reused.capacity(), reused.limit());
+		assertEquals(0, pool.getNumberOfPooledBuffers());
+
+		// other size class
+		pool.release(reused);
+		assertNotSame(buffer, pool.acquire(2048));
+	}
+
+	@Test
+	public void releaseLimits() {
+		for (int i = 0; i < 3; i++) {
+			pool.release(ByteBuffer.allocate(1024));
+		}
+		assertEquals(2, pool.getNumberOfPooledBuffers());
+
+		pool.release(ByteBuffer.allocate(1000)); // not a size class
+		pool.release(ByteBuffer.allocate(16384)); // too large
+		pool.release(ByteBuffer.allocateDirect(4096));
+		pool.release(null);
+		assertEquals(2, pool.getNumberOfPooledBuffers());
+	}
+
+	@Test
+	public void directPool() {
+		ByteBufferPool direct = new ByteBufferPool(1024, 8192, 2, true);
+		ByteBuffer buffer = direct.acquire(100);
+		assertEquals(true, buffer.isDirect());
+		direct.release(ByteBuffer.allocate(1024)); // heap buffers are not pooled
+		direct.release(buffer);
+		assertEquals(1, direct.getNumberOfPooledBuffers());
+		assertSame(buffer, direct.acquire(1024));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void sizeClassesMustBePowersOfTwo() {
+		new ByteBufferPool(1000, 8192, 2);
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.io.buffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+
+import org.junit.Test;
+
+public class CompositeByteBufferTest {
+
+	private final ByteBufferPool pool = new ByteBufferPool(8, 64, 16);
+	private final CompositeByteBuffer cbb = new CompositeByteBuffer(pool, 8);
+
+	@Test
+	public void appendSpansSegments() {
+		cbb.put("0123456789".getBytes());
+		cbb.put(ByteBuffer.wrap("ABCDEFGHIJ".getBytes()));
+		assertEquals(20, cbb.size());
+		assertEquals(3, cbb.getByteBuffers().length);
+		assertArrayEquals("0123456789ABCDEFGHIJ".getBytes(), cbb.toByteArray());
+	}
+
+	@Test
+	public void prependInsertsSegment() {
+		cbb.put("body".getBytes());
+		cbb.prepend(ByteBuffer.wrap("head|".getBytes()));
+		assertEquals(9, cbb.size());
+		assertArrayEquals("head|body".getBytes(), cbb.toByteArray());
+	}
+
+	@Test
+	public void appendAddsSegmentAtTheEnd() {
+		cbb.put("head|".getBytes());
+		ByteBuffer body = ByteBuffer.wrap("body".getBytes()).asReadOnlyBuffer();
+		cbb.append(body);
+		assertEquals(9, cbb.size());
+		assertEquals(2, cbb.getByteBuffers().length);
+		assertArrayEquals("head|body".getBytes(), cbb.toByteArray());
+	}
+
+	@Test
+	public void appendMovesSegments() {
+		CompositeByteBuffer other = new CompositeByteBuffer(pool, 8);
+		cbb.put("head|".getBytes());
+		other.put("0123456789".getBytes());
+		cbb.append(other);
+		assertEquals(15, cbb.size());
+		assertFalse(other.hasRemaining());
+		assertEquals(0, other.getByteBuffers().length);
+		assertArrayEquals("head|0123456789".getBytes(), cbb.toByteArray());
+	}
+
+	@Test
+	public void appendedBufferIsReleasedOnce() throws IOException {
+		final int[] released = new int[1];
+		Runnable onRelease = new Runnable() {
+
+			@Override
+			public void run() {
+				released[0]++;
+			}
+		};
+		Pipe pipe = Pipe.open();
+		try {
+			cbb.append(ByteBuffer.wrap("body".getBytes()), onRelease);
+			assertEquals(0, released[0]);
+			cbb.writeTo(pipe.sink());
+			assertEquals(1, released[0]);
+
+			cbb.append(ByteBuffer.wrap("body".getBytes()), onRelease);
+			cbb.release();
+			cbb.release();
+			assertEquals(2, released[0]);
+		} finally {
+			pipe.sink().close();
+			pipe.source().close();
+		}
+	}
+
+	@Test
+	public void writeToReleasesWrittenSegments() throws IOException {
+		Pipe pipe = Pipe.open();
+		try {
+			cbb.prepend(ByteBuffer.wrap("head|".getBytes()));
+			cbb.put("0123456789ABCDEF".getBytes());
+			assertEquals(21, cbb.writeTo(pipe.sink()));
+			assertFalse(cbb.hasRemaining());
+			// both (full) pooled segments are back in the pool
+			assertEquals(2, pool.getNumberOfPooledBuffers());
+
+			ByteBuffer received = ByteBuffer.allocate(32);
+			pipe.source().read(received);
+			received.flip();
+			byte[] bytes = new byte[received.remaining()];
+			received.get(bytes);
+			assertArrayEquals("head|0123456789ABCDEF".getBytes(), bytes);
+
+			// appending after a write starts a new segment
+			cbb.put("x".getBytes());
+			assertTrue(cbb.hasRemaining());
+			assertArrayEquals("x".getBytes(), cbb.toByteArray());
+		} finally {
+			pipe.sink().close();
+			pipe.source().close();
+		}
+	}
+
+	@Test
+	public void release() {
+		cbb.put("0123456789".getBytes());
+		cbb.release();
+		assertEquals(0, cbb.size());
+		assertEquals(2, pool.getNumberOfPooledBuffers());
+	}
+
+}
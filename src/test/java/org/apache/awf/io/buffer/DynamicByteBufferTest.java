@@ -19,8 +19,11 @@
  */
 package org.apache.awf.io.buffer;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.nio.ByteBuffer;
+
 import org.apache.awf.io.buffer.DynamicByteBuffer;
 import org.junit.Before;
 import org.junit.Test;
@@ -99,5 +102,15 @@ public class DynamicByteBufferTest {
 		dbb.put("0123456789".getBytes());
 		assertInternalState(25, 17, 25, 25);
 	}
-	
+
+	@Test
+	public void testPutCount() {
+		ByteBuffer src = ByteBuffer.wrap("0123456789".getBytes());
+		src.position(2);
+		dbb.put(src, 3);
+		assertEquals(5, src.position());
+		assertEquals(10, src.limit());
+		assertArrayEquals("234".getBytes(), dbb.toByteArray());
+	}
+
 }
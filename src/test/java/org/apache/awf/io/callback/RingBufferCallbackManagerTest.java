@@ -0,0 +1,152 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.io.callback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.Selector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.awf.web.AsyncCallback;
+import org.junit.Test;
+
+public class RingBufferCallbackManagerTest {
+
+	@Test
+	public void callbacksAddedDuringExecutionAreDeferred() {
+		final RingBufferCallbackManager cm = new RingBufferCallbackManager(null);
+		final AtomicInteger executed = new AtomicInteger();
+		final AsyncCallback cb1 = new AsyncCallback() {
+			@Override public void onCallback() { executed.incrementAndGet(); }
+		};
+		cm.addCallback(cb1);
+		cm.addCallback(new AsyncCallback() {
+			@Override public void onCallback() {
+				executed.incrementAndGet();
+				cm.addCallback(cb1);
+			}
+		});
+		assertEquals(2, cm.getNumberOfCallbacks());
+
+		assertTrue(cm.execute());
+		assertEquals(2, executed.get());
+		assertEquals(1, cm.getNumberOfCallbacks());
+
+		assertFalse(cm.execute());
+		assertEquals(3, executed.get());
+		assertEquals(0, cm.getNumberOfCallbacks());
+	}
+
+	@Test
+	public void batchSizeAndOverflow() {
+		final RingBufferCallbackManager cm = new RingBufferCallbackManager(null, 4, 2);
+		final StringBuilder order = new StringBuilder();
+		for (int i = 0; i < 6; i++) {
+			final int n = i;
+			cm.addCallback(new AsyncCallback() {
+				@Override public void onCallback() { order.append(n); }
+			});
+		}
+		assertEquals(6, cm.getNumberOfCallbacks());
+
+		assertTrue(cm.execute());
+		assertEquals("01", order.toString());
+		assertTrue(cm.execute());
+		assertEquals("0123", order.toString());
+		assertFalse(cm.execute());	// ring drained, then the overflow
+		assertEquals("012345", order.toString());
+	}
+
+	@Test
+	public void callbacksDoNotOvertakeTheOverflow() {
+		final RingBufferCallbackManager cm = new RingBufferCallbackManager(null, 2, 1);
+		final StringBuilder order = new StringBuilder();
+		for (int i = 0; i < 5; i++) {
+			final int n = i;
+			cm.addCallback(new AsyncCallback() {
+				@Override public void onCallback() { order.append(n); }
+			});
+			if (i == 2) {
+				// frees a ring slot while "2" waits in the overflow queue
+				cm.execute();
+			}
+		}
+		while (cm.execute()) {
+		}
+		assertEquals("01234", order.toString());
+	}
+
+	@Test
+	public void firstCallbackWakesUpSelector() throws IOException, InterruptedException {
+		final Selector selector = Selector.open();
+		final RingBufferCallbackManager cm = new RingBufferCallbackManager(selector);
+		final CountDownLatch selected = new CountDownLatch(1);
+		Thread ioLoop = new Thread(new Runnable() {
+			@Override public void run() {
+				try {
+					selector.select(10 * 1000);
+				} catch (IOException e) { /* fails the test through the latch */ }
+				cm.execute();
+				selected.countDown();
+			}
+		});
+		ioLoop.start();
+		Thread.sleep(100);
+
+		cm.addCallback(AsyncCallback.nopCb);
+		assertTrue(selected.await(1, TimeUnit.SECONDS));
+		assertEquals(0, cm.getNumberOfCallbacks());
+		selector.close();
+	}
+
+	@Test
+	public void concurrencyTest() throws InterruptedException {
+		final RingBufferCallbackManager cm = new RingBufferCallbackManager(null, 64, 16);
+		final int nThreads = 8;
+		final int n = 20 * 1000;
+		final AtomicInteger executed = new AtomicInteger();
+		final AsyncCallback cb = new AsyncCallback() {
+			@Override public void onCallback() { executed.incrementAndGet(); }
+		};
+		final CountDownLatch added = new CountDownLatch(nThreads);
+		for (int i = 0; i < nThreads; i++) {
+			new Thread(new Runnable() {
+				@Override public void run() {
+					for (int j = 0; j < n; j++) {
+						cm.addCallback(cb);
+					}
+					added.countDown();
+				}
+			}).start();
+		}
+		long deadline = System.currentTimeMillis() + 10 * 1000;
+		while ((added.getCount() > 0 || cm.execute()) && System.currentTimeMillis() < deadline) {
+			cm.execute();
+		}
+		assertEquals(nThreads * n, executed.get());
+		assertEquals(0, cm.getNumberOfCallbacks());
+	}
+
+}
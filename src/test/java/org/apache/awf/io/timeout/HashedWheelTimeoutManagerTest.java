@@ -0,0 +1,222 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.io.timeout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectableChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.awf.web.AsyncCallback;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashedWheelTimeoutManagerTest {
+
+	private final HashedWheelTimeoutManager tm = new HashedWheelTimeoutManager(10, 8);
+
+	private Pipe pipe;
+
+	@Before
+	public void setUp() throws IOException {
+		pipe = Pipe.open();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		pipe.sink().close();
+		pipe.source().close();
+	}
+
+	@Test
+	public void timeoutManagerTest() throws InterruptedException {
+		final long now = System.currentTimeMillis();
+
+		addNopTimeout(now);
+		addNopTimeout(now);
+		addNopTimeout(now + 1);
+		addNopTimeout(now + 2);
+		addNopTimeout(now + 1000);	// more than one revolution away
+		addNopTimeout(now + 1200);
+
+		addNopKeepAliveTimeout(pipe.sink(), now);
+		addNopKeepAliveTimeout(pipe.source(), now + 1);
+
+		assertEquals(8, tm.getNumberOfTimeouts());
+		assertEquals(2, tm.getNumberOfKeepAliveTimeouts());
+
+		Thread.sleep(200);
+		long ms = tm.execute();
+		assertEquals(2, tm.getNumberOfTimeouts());
+		assertEquals(0, tm.getNumberOfKeepAliveTimeouts());
+		assertTrue(ms > 0 && ms != Long.MAX_VALUE);
+
+		Thread.sleep(1200);
+		assertEquals(Long.MAX_VALUE, tm.execute());
+		assertEquals(0, tm.getNumberOfTimeouts());
+	}
+
+	@Test
+	public void rescheduleKeepAliveTimeout() throws InterruptedException {
+		final AtomicInteger triggered = new AtomicInteger();
+		AsyncCallback cb = new AsyncCallback() { @Override public void onCallback() { triggered.incrementAndGet(); } };
+		final long now = System.currentTimeMillis();
+
+		tm.addKeepAliveTimeout(pipe.sink(), new Timeout(now + 20, cb));
+		tm.addKeepAliveTimeout(pipe.sink(), new Timeout(now + 300, cb));
+		assertEquals(1, tm.getNumberOfTimeouts());
+		assertEquals(1, tm.getNumberOfKeepAliveTimeouts());
+
+		Thread.sleep(100);
+		tm.execute();
+		assertEquals(0, triggered.get());
+		assertTrue(tm.hasKeepAliveTimeout(pipe.sink()));
+
+		Thread.sleep(300);
+		tm.execute();
+		assertEquals(1, triggered.get());
+		assertFalse(tm.hasKeepAliveTimeout(pipe.sink()));
+	}
+
+	@Test
+	public void touchedKeepAliveTimeoutIsProlonged() throws InterruptedException {
+		final AtomicInteger triggered = new AtomicInteger();
+		tm.addKeepAliveTimeout(pipe.sink(), new Timeout(System.currentTimeMillis() + 200, new AsyncCallback() {
+			@Override public void onCallback() { triggered.incrementAndGet(); }
+		}));
+		assertFalse(tm.touchKeepAliveTimeout(pipe.source()));
+
+		Thread.sleep(100);
+		assertTrue(tm.touchKeepAliveTimeout(pipe.sink()));
+		Thread.sleep(150);	// past the original deadline, but not past last activity + 200
+		tm.execute();
+		assertEquals(0, triggered.get());
+		assertTrue(tm.hasKeepAliveTimeout(pipe.sink()));
+
+		Thread.sleep(200);
+		tm.execute();
+		assertEquals(1, triggered.get());
+		assertFalse(tm.hasKeepAliveTimeout(pipe.sink()));
+	}
+
+	@Test
+	public void throwingCallbackDoesNotDropTheOthers() throws InterruptedException {
+		final AtomicInteger triggered = new AtomicInteger();
+		AsyncCallback cb = new AsyncCallback() { @Override public void onCallback() { triggered.incrementAndGet(); } };
+		final long now = System.currentTimeMillis();
+
+		tm.addTimeout(new Timeout(now, cb));
+		tm.addTimeout(new Timeout(now, new AsyncCallback() {
+			@Override public void onCallback() { throw new IllegalStateException("broken callback"); }
+		}));
+		tm.addKeepAliveTimeout(pipe.sink(), new Timeout(now, cb));
+		tm.addTimeout(new Timeout(now, cb));
+
+		Thread.sleep(20);
+		tm.execute();
+		assertEquals(3, triggered.get());
+		assertEquals(0, tm.getNumberOfTimeouts());
+		assertEquals(0, tm.getNumberOfKeepAliveTimeouts());
+	}
+
+	@Test
+	public void cancelKeepAliveTimeout() throws InterruptedException {
+		final AtomicInteger triggered = new AtomicInteger();
+		tm.addKeepAliveTimeout(pipe.sink(), new Timeout(System.currentTimeMillis() + 10, new AsyncCallback() {
+			@Override public void onCallback() { triggered.incrementAndGet(); }
+		}));
+		tm.cancelKeepAliveTimeout(pipe.sink());
+		assertEquals(0, tm.getNumberOfTimeouts());
+
+		Thread.sleep(50);
+		assertEquals(Long.MAX_VALUE, tm.execute());
+		assertEquals(0, triggered.get());
+	}
+
+	@Test
+	public void addTimeoutDuringTimeoutExecution() throws InterruptedException {
+		final long now = System.currentTimeMillis();
+		addRecursiveTimeout(now);
+		addRecursiveTimeout(now + 10);
+
+		Thread.sleep(50);
+		long ms = tm.execute();
+		assertTrue(ms != Long.MAX_VALUE);
+		// the timeouts added by the callbacks are not executed during the same invocation
+		assertEquals(2, tm.getNumberOfTimeouts());
+
+		Thread.sleep(50);
+		tm.execute();
+		assertEquals(0, tm.getNumberOfTimeouts());
+	}
+
+	@Test
+	public void testAddTimeoutsThatHasTheSameDeadline() throws InterruptedException {
+		final int N = 1000;
+		final AtomicInteger triggered = new AtomicInteger();
+		final long now = System.currentTimeMillis();
+		for (int i = 0; i < N; i++) {
+			tm.addTimeout(new Timeout(now + 10, new AsyncCallback() {
+				@Override public void onCallback() { triggered.incrementAndGet(); }
+			}));
+		}
+		assertEquals(N, tm.getNumberOfTimeouts());
+
+		Thread.sleep(100);
+		tm.execute();
+		assertEquals(0, tm.getNumberOfTimeouts());
+		assertEquals(N, triggered.get());
+	}
+
+	@Test
+	public void nextDeadlineSkipsLaterRevolutions() {
+		final long now = System.currentTimeMillis();
+		assertEquals(Long.MAX_VALUE, tm.execute());
+
+		// one revolution is 80 ms, the timeout is due several revolutions later
+		addNopTimeout(now + 500);
+		long next = tm.execute();
+		assertTrue("next deadline " + next, next > 400 && next <= 500);
+
+		addNopTimeout(now + 35);
+		next = tm.execute();
+		assertTrue("next deadline " + next, next > 0 && next <= 35);
+	}
+
+	private void addNopTimeout(long timeout) {
+		tm.addTimeout(new Timeout(timeout, AsyncCallback.nopCb));
+	}
+
+	private void addNopKeepAliveTimeout(SelectableChannel channel, long timeout) {
+		tm.addKeepAliveTimeout(channel, new Timeout(timeout, AsyncCallback.nopCb));
+	}
+
+	private void addRecursiveTimeout(long timeout) {
+		tm.addTimeout(new Timeout(timeout, new AsyncCallback() {
+			@Override public void onCallback() { addNopTimeout(System.currentTimeMillis()); }
+		}));
+	}
+
+}
@@ -20,6 +20,7 @@
 package org.apache.awf.io.timeout;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
@@ -29,6 +30,7 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.spi.SelectorProvider;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.awf.io.timeout.JMXDebuggableTimeoutManager;
 import org.apache.awf.io.timeout.Timeout;
@@ -88,6 +90,28 @@ public class JMXDebuggableTimeoutManagerTest {
 		}));
 	}
 	
+	@Test
+	public void touchedKeepAliveTimeoutIsProlonged() throws InterruptedException {
+		final AtomicInteger triggered = new AtomicInteger();
+		MockChannel channel = new MockChannel();
+		tm.addKeepAliveTimeout(channel, new Timeout(System.currentTimeMillis() + 200, new AsyncCallback() {
+			@Override public void onCallback() { triggered.incrementAndGet(); }
+		}));
+		assertFalse(tm.touchKeepAliveTimeout(new MockChannel()));
+
+		Thread.sleep(100);
+		assertTrue(tm.touchKeepAliveTimeout(channel));
+		Thread.sleep(150);	// past the original deadline, but not past last activity + 200
+		tm.execute();
+		assertEquals(0, triggered.get());
+		assertTrue(tm.hasKeepAliveTimeout(channel));
+
+		Thread.sleep(200);
+		tm.execute();
+		assertEquals(1, triggered.get());
+		assertFalse(tm.hasKeepAliveTimeout(channel));
+	}
+
 	@Test
 	public void addTimeoutDuringTimeoutExecution() throws InterruptedException {
 		final long now = System.currentTimeMillis();
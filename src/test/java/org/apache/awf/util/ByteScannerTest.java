@@ -0,0 +1,80 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link ByteScanner}.
+ */
+public class ByteScannerTest {
+
+    private static ByteBuffer wrap(String s) {
+        return ByteBuffer.wrap(s.getBytes());
+    }
+
+    @Test
+    public void testIndexOfEveryPosition() {
+        String text = "abcdefghijklmnopqrstuvwxyz0123456789";
+        for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+            ByteBuffer heap = wrap(text).order(order);
+            ByteBuffer direct = ByteBuffer.allocateDirect(text.length()).order(order);
+            direct.put(text.getBytes()).flip();
+            for (int i = 0; i < text.length(); i++) {
+                byte b = (byte) text.charAt(i);
+                assertEquals(i, ByteScanner.indexOf(heap, 0, text.length(), b));
+                assertEquals(i, ByteScanner.indexOf(direct, 0, text.length(), b));
+                assertEquals(i < 3 ? -1 : i, ByteScanner.indexOf(heap, 3, text.length(), b));
+                assertEquals(i >= 20 ? -1 : i, ByteScanner.indexOf(heap, 0, 20, b));
+            }
+        }
+    }
+
+    @Test
+    public void testIndexOfAny() {
+        ByteBuffer buffer = wrap("Content-Length: 42\r\nHost: localhost\r\n");
+        int to = buffer.limit();
+        assertEquals(14, ByteScanner.indexOfAny(buffer, 0, to, (byte) ':', (byte) '\r', (byte) '\n'));
+        assertEquals(18, ByteScanner.indexOfAny(buffer, 15, to, (byte) '\r', (byte) '\n'));
+        assertEquals(-1, ByteScanner.indexOfAny(buffer, 0, to, (byte) 'x', (byte) 'y', (byte) 'z'));
+        // high bytes must not match their 7 bit counterparts
+        assertEquals(-1, ByteScanner.indexOf(buffer, 0, to, (byte) ('\r' | 0x80)));
+        ByteBuffer high = ByteBuffer.wrap(new byte[] { 1, 1, 1, 1, 1, 1, 1, 1, (byte) 0xFF, 0x7F, 0 });
+        assertEquals(8, ByteScanner.indexOf(high, 0, high.limit(), (byte) 0xFF));
+        assertEquals(9, ByteScanner.indexOf(high, 0, high.limit(), (byte) 0x7F));
+        assertEquals(10, ByteScanner.indexOf(high, 0, high.limit(), (byte) 0));
+    }
+
+    @Test
+    public void testIndexOfPattern() {
+        ByteBuffer buffer = wrap("GET / HTTP/1.1\r\nHost: x\r\n\r\nbody\r\n\r\n");
+        byte[] crlfcrlf = "\r\n\r\n".getBytes();
+        assertEquals(23, ByteScanner.indexOf(buffer, 0, buffer.limit(), crlfcrlf));
+        assertEquals(31, ByteScanner.indexOf(buffer, 24, buffer.limit(), crlfcrlf));
+        assertEquals(-1, ByteScanner.indexOf(buffer, 0, 26, crlfcrlf));
+        assertEquals(-1, ByteScanner.indexOf(buffer, 0, buffer.limit(), new byte[0]));
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Charsets;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link HttpDateClock}.
+ */
+public class HttpDateClockTest {
+
+    @Test
+    public void testHeaderLine() {
+        String line = new String(HttpDateClock.currentHeaderLine(), Charsets.ISO_8859_1);
+        assertTrue(line.startsWith("Date: "));
+        assertTrue(line.endsWith(" GMT\r\n"));
+    }
+
+    @Test
+    public void testCurrentSecondRoundTrip() {
+        String now = HttpDateClock.currentAsString();
+        long millis = DateUtil.parseToMilliseconds(now);
+        assertEquals(now, DateUtil.parseToRFC1123(millis));
+        assertEquals(now, DateUtil.parseToRFC1123(millis + 999));
+    }
+
+    @Test
+    public void testOtherSecondIsNotCached() {
+        assertNull(HttpDateClock.asStringIfCurrent(1266689558000L));
+        assertEquals(-1, HttpDateClock.parseIfCurrent("Sat, 20 Feb 2010 18:12:38 GMT"));
+    }
+
+}
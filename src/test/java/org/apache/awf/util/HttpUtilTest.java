@@ -0,0 +1,81 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HttpUtilTest {
+
+    @Test
+    public void parseSingleByteRanges() {
+        assertArrayEquals(new long[] { 0, 499 }, HttpUtil.parseByteRanges("bytes=0-499", 10000));
+        assertArrayEquals(new long[] { 9500, 9999 }, HttpUtil.parseByteRanges("bytes=9500-", 10000));
+        assertArrayEquals(new long[] { 9500, 9999 }, HttpUtil.parseByteRanges("bytes=-500", 10000));
+        assertArrayEquals(new long[] { 0, 99 }, HttpUtil.parseByteRanges("bytes=-500", 100));
+        assertArrayEquals(new long[] { 50, 99 }, HttpUtil.parseByteRanges("bytes=50-500", 100));
+    }
+
+    @Test
+    public void parseMultipleByteRanges() {
+        assertArrayEquals(new long[] { 0, 0, 9999, 9999 }, HttpUtil.parseByteRanges("bytes=0-0, -1", 10000));
+        // unsatisfiable ranges are dropped
+        assertArrayEquals(new long[] { 0, 9 }, HttpUtil.parseByteRanges("bytes=0-9,200-300", 100));
+    }
+
+    @Test
+    public void parseUnsatisfiableByteRanges() {
+        assertArrayEquals(new long[0], HttpUtil.parseByteRanges("bytes=100-", 100));
+        assertArrayEquals(new long[0], HttpUtil.parseByteRanges("bytes=-0", 100));
+        assertArrayEquals(new long[0], HttpUtil.parseByteRanges("bytes=0-", 0));
+    }
+
+    @Test
+    public void parseMalformedByteRanges() {
+        assertNull(HttpUtil.parseByteRanges("items=0-9", 100));
+        assertNull(HttpUtil.parseByteRanges("bytes=", 100));
+        assertNull(HttpUtil.parseByteRanges("bytes=9-0", 100));
+        assertNull(HttpUtil.parseByteRanges("bytes=a-9", 100));
+        assertNull(HttpUtil.parseByteRanges("bytes=0-9,,20-29", 100));
+        assertNull(HttpUtil.parseByteRanges("bytes=--5", 100));
+        StringBuilder tooMany = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= HttpUtil.MAX_BYTE_RANGES; i++) {
+            tooMany.append(',').append(i).append('-').append(i);
+        }
+        assertNull(HttpUtil.parseByteRanges(tooMany.toString(), 100));
+    }
+
+    @Test
+    public void acceptsEncoding() {
+        assertTrue(HttpUtil.acceptsEncoding("gzip, deflate, br", "br"));
+        assertTrue(HttpUtil.acceptsEncoding("GZIP", "gzip"));
+        assertTrue(HttpUtil.acceptsEncoding("deflate;q=0.5, gzip;q=0.8", "gzip"));
+        assertTrue(HttpUtil.acceptsEncoding("*", "br"));
+        assertFalse(HttpUtil.acceptsEncoding("gzip, deflate", "br"));
+        assertFalse(HttpUtil.acceptsEncoding("gzip;q=0", "gzip"));
+        assertFalse(HttpUtil.acceptsEncoding("gzip;q=0.000, *", "gzip"));
+        assertFalse(HttpUtil.acceptsEncoding("*;q=0, identity", "gzip"));
+        assertFalse(HttpUtil.acceptsEncoding("", "gzip"));
+    }
+}
@@ -22,15 +22,23 @@ package org.apache.awf.web;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.PatternSyntaxException;
 
+import org.apache.awf.annotation.Authenticated;
+import org.apache.awf.annotation.Lifecycle;
 import org.apache.awf.web.Application;
 import org.apache.awf.web.handler.BadRequestRequestHandler;
+import org.apache.awf.web.handler.ForbiddenRequestHandler;
 import org.apache.awf.web.handler.NotFoundRequestHandler;
 import org.apache.awf.web.handler.RequestHandler;
+import org.apache.awf.web.handler.StaticContentHandler;
 import org.apache.awf.web.http.HttpRequest;
 import org.apache.awf.web.http.HttpRequestImpl;
 import org.apache.awf.web.http.HttpResponse;
@@ -135,6 +143,87 @@ public class ApplicationTest {
 
     }
 
+    @Test
+    public void pathParametersTest() {
+        Map<String, RequestHandler> handlers = new HashMap<String, RequestHandler>();
+        final RequestHandler handler = new RequestHandler() {
+            @Override
+            public void get(HttpRequest request, HttpResponse response) {
+            }
+        };
+        handlers.put("GET /persons/{id:int}/pets/{name}", handler);
+        Application app = new Application(handlers);
+
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("host", "localhost");
+        HttpRequest request = new HttpRequestImpl("GET /persons/1911/pets/rex HTTP/1.1", headers);
+        assertEquals(handler.getClass(), app.getHandler(request).getClass());
+        assertEquals("1911", request.getPathParameter("id"));
+        assertEquals("rex", request.getPathParameter("name"));
+        assertNull(request.getPathParameter("missing"));
+
+        // the captures of the next lookup do not overwrite those of a request
+        HttpRequest next = new HttpRequestImpl("GET /persons/7/pets/felix HTTP/1.1", headers);
+        app.getHandler(next);
+        assertEquals("7", next.getPathParameter("id"));
+        assertEquals("felix", next.getPathParameter("name"));
+        assertEquals("1911", request.getPathParameter("id"));
+        assertEquals("rex", request.getPathParameter("name"));
+
+        request = new HttpRequestImpl("POST /persons/1911/pets/rex HTTP/1.1", headers);
+        assertEquals(NotFoundRequestHandler.getInstance(), app.getHandler(request));
+    }
+
+    @Test
+    public void staticContentHandlerTest() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("host", "localhost");
+        HttpRequest request = new HttpRequestImpl("GET /static/app.js HTTP/1.1", headers);
+
+        Application app = new Application(new HashMap<String, RequestHandler>());
+        app.setStaticContentDir("static");
+        assertSame(StaticContentHandler.getInstance(), app.getHandler(request));
+
+        // configured per application, e.g. with a cache or precompressed files
+        StaticContentHandler handler = new StaticContentHandler(null, true);
+        app.setStaticContentHandler(handler);
+        assertSame(handler, app.getHandler(request));
+    }
+
+    @Lifecycle(value = Lifecycle.Scope.POOLED, poolSize = 1)
+    public static class PooledAuthenticatedHandler extends RequestHandler {
+
+        static final List<RequestHandler> asked = new ArrayList<RequestHandler>();
+
+        @Override
+        @Authenticated
+        public void get(HttpRequest request, HttpResponse response) {
+        }
+
+        @Override
+        public String getCurrentUser(HttpRequest request) {
+            asked.add(this);
+            return null;
+        }
+    }
+
+    @Test
+    public void forbiddenHandlerIsReleased() {
+        Map<String, RequestHandler> handlers = new HashMap<String, RequestHandler>();
+        handlers.put("/secret", new PooledAuthenticatedHandler());
+        Application app = new Application(handlers);
+
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("host", "localhost");
+        for (int i = 0; i < 2; i++) {
+            HttpRequest request = new HttpRequestImpl("GET /secret HTTP/1.1", headers);
+            assertEquals(ForbiddenRequestHandler.getInstance(), app.getHandler(request));
+        }
+        // the pooled instance went back to the pool and served the second request too
+        assertEquals(2, PooledAuthenticatedHandler.asked.size());
+        assertSame(PooledAuthenticatedHandler.asked.get(0), PooledAuthenticatedHandler.asked.get(1));
+    }
+
     @Test(expected = PatternSyntaxException.class)
     public void malFormedRegularExpressionTest() {
         Map<String, RequestHandler> handlers = new HashMap<String, RequestHandler>();
@@ -19,11 +19,27 @@
  */
 package org.apache.awf.web;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.util.List;
+import java.util.Set;
+
 import org.apache.awf.configuration.Configuration;
 import org.apache.awf.io.IOLoop;
+import org.apache.awf.io.IOLoopBalancers;
+import org.apache.awf.web.handler.RequestHandler;
+import org.apache.awf.web.http.HttpRequest;
+import org.apache.awf.web.http.HttpResponse;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
 
 /**
  * Test cases for {@link HttpServer}.
@@ -72,6 +88,112 @@ public class HttpServerTest {
 
 
 
+    @Test
+    public void multiThreadServerWithReusePort() throws IOException {
+        int port = 8182;
+        HttpServer server = new HttpServer(new Configuration().setReusePort(true));
+        server.bind(port);
+        server.start(3);
+
+        Set<ServerSocketChannel> channels = Sets.newHashSet();
+        for (IOLoop loop : server.getIoLoops()) {
+            Assert.assertTrue(loop.isRunning());
+            channels.add(server.getServerChannel(loop));
+        }
+        // one listening socket per IOLoop where SO_REUSEPORT is supported, one shared socket otherwise
+        Assert.assertTrue(channels.size() == 3 || channels.size() == 1);
+
+        for (int i = 0; i < 10; i++) {
+            Socket socket = new Socket("localhost", port);
+            Assert.assertTrue(socket.isConnected());
+            socket.close();
+        }
+
+        server.stop();
+        for (ServerSocketChannel channel : channels) {
+            Assert.assertFalse(channel.isOpen());
+        }
+    }
+
+    @Test
+    public void multiThreadServerWithAcceptor() throws Exception {
+        int port = 8183;
+        HttpServer server = new HttpServer(new Configuration().setAcceptorBalancer(IOLoopBalancers.roundRobin()));
+        server.bind(port);
+        server.start(3);
+
+        // 3 workers + the acceptor
+        Assert.assertEquals(4, server.getIoLoops().size());
+        IOLoop acceptor = server.getIoLoops().get(3);
+        for (IOLoop loop : server.getIoLoops()) {
+            Assert.assertTrue(loop.isRunning());
+            Assert.assertEquals(loop == acceptor, server.getServerChannel(loop) != null);
+        }
+
+        List<Socket> sockets = Lists.newArrayList();
+        for (int i = 0; i < 6; i++) {
+            sockets.add(new Socket("localhost", port));
+        }
+        Thread.sleep(200);
+        // the acceptor only holds the listening socket, the connections are
+        // spread round-robin over the workers
+        Assert.assertEquals(1, acceptor.getNumberOfRegisteredIOHandlers());
+        for (IOLoop loop : server.getIoLoops().subList(0, 3)) {
+            Assert.assertEquals(2, loop.getNumberOfRegisteredIOHandlers());
+            Assert.assertEquals(2, loop.getNumberOfConnections());
+        }
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        Thread.sleep(200);
+        for (IOLoop loop : server.getIoLoops()) {
+            Assert.assertEquals(0, loop.getNumberOfConnections());
+        }
+
+        server.stop();
+        for (IOLoop loop : server.getIoLoops()) {
+            Assert.assertFalse(loop.isRunning());
+        }
+        Assert.assertFalse(server.getServerChannel(acceptor).isOpen());
+    }
+
+    @Test
+    public void multiThreadServerWithHashedWheelTimeouts() throws Exception {
+        int port = 8186;
+        Configuration configuration = new Configuration().setHashedWheelTimeouts(true);
+        configuration.addHandler("/", new RequestHandler() {
+            @Override
+            public void get(HttpRequest request, HttpResponse response) {
+                response.write("ok");
+            }
+        });
+        HttpServer server = new HttpServer(configuration);
+        server.bind(port);
+        server.start(2);
+
+        // keep-alive requests schedule their timeout on the timing wheel
+        Socket socket = new Socket("localhost", port);
+        OutputStream out = socket.getOutputStream();
+        InputStream in = socket.getInputStream();
+        for (int i = 0; i < 2; i++) {
+            out.write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(Charsets.ISO_8859_1));
+            byte[] buffer = new byte[1024];
+            String response = "";
+            while (!response.endsWith("ok")) {
+                int n = in.read(buffer);
+                Assert.assertTrue(n > 0);
+                response += new String(buffer, 0, n, Charsets.ISO_8859_1);
+            }
+            Assert.assertTrue(response.startsWith("HTTP/1.1 200 OK"));
+        }
+        socket.close();
+
+        server.stop();
+        for (IOLoop loop : server.getIoLoops()) {
+            Assert.assertFalse(loop.isRunning());
+        }
+    }
+
     private HttpServer createServer() {
 
         HttpServer server = new HttpServer(new Configuration());
@@ -0,0 +1,194 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.awf.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.awf.web.handler.RequestHandler;
+import org.apache.awf.web.http.protocol.HttpVerb;
+import org.junit.Test;
+
+public class RouterTest {
+
+    private static class Handler extends RequestHandler {
+    }
+
+    private final int[] captures = new int[8];
+
+    private RequestHandler find(Router router, HttpVerb verb, String path) {
+        Router.Route route = router.find(verb, path, captures);
+        return route == null ? null : route.getHandler();
+    }
+
+    private String capture(String path, int i) {
+        return path.substring(captures[2 * i], captures[2 * i + 1]);
+    }
+
+    @Test
+    public void staticRoutesShareTheirPrefixes() {
+        Handler root = new Handler();
+        Handler persons = new Handler();
+        Handler pets = new Handler();
+        Handler petshop = new Handler();
+        Router router = new Router().add("/", root).add("/persons", persons).add("/pets", pets)
+                .add("/petshop", petshop);
+
+        assertSame(root, find(router, HttpVerb.GET, "/"));
+        assertSame(persons, find(router, HttpVerb.GET, "/persons"));
+        assertSame(pets, find(router, HttpVerb.GET, "/pets"));
+        assertSame(petshop, find(router, HttpVerb.GET, "/petshop"));
+        assertNull(find(router, HttpVerb.GET, "/pet"));
+        assertNull(find(router, HttpVerb.GET, "/petshops"));
+        assertNull(find(router, HttpVerb.GET, ""));
+    }
+
+    @Test
+    public void parametersInAnyPosition() {
+        Handler phones = new Handler();
+        Router router = new Router().add("/persons/{id:int}/phones/{kind}", phones);
+
+        String path = "/persons/1911/phones/home";
+        assertSame(phones, find(router, HttpVerb.GET, path));
+        assertEquals("1911", capture(path, 0));
+        assertEquals("home", capture(path, 1));
+        assertEquals("id", router.find(HttpVerb.GET, path, captures).getParameterNames()[0]);
+        assertEquals("kind", router.find(HttpVerb.GET, path, captures).getParameterNames()[1]);
+
+        assertNull(find(router, HttpVerb.GET, "/persons/roger/phones/home"));
+        assertNull(find(router, HttpVerb.GET, "/persons/1911/phones/"));
+        assertNull(find(router, HttpVerb.GET, "/persons/1911/phones"));
+        assertEquals(2, router.getMaxCaptures());
+    }
+
+    @Test
+    public void typedSegments() {
+        Handler byId = new Handler();
+        Handler byUuid = new Handler();
+        Handler byName = new Handler();
+        Router router = new Router().add("/items/{name}", byName).add("/items/{id:int}", byId)
+                .add("/items/{key:uuid}", byUuid);
+
+        assertSame(byId, find(router, HttpVerb.GET, "/items/42"));
+        assertSame(byUuid, find(router, HttpVerb.GET, "/items/123e4567-e89b-12d3-a456-426614174000"));
+        assertSame(byName, find(router, HttpVerb.GET, "/items/123e4567-e89b-12d3-a456-42661417400g"));
+        assertSame(byName, find(router, HttpVerb.GET, "/items/42a"));
+        assertNull(find(router, HttpVerb.GET, "/items/"));
+    }
+
+    @Test
+    public void staticSegmentsTakePrecedenceAndBacktrack() {
+        Handler phoneNumbers = new Handler();
+        Handler person = new Handler();
+        Handler friends = new Handler();
+        Router router = new Router().add("/persons/phone_numbers", phoneNumbers).add("/persons/{name}", person)
+                .add("/persons/{name}/friends", friends);
+
+        assertSame(phoneNumbers, find(router, HttpVerb.GET, "/persons/phone_numbers"));
+        assertSame(person, find(router, HttpVerb.GET, "/persons/phone"));
+        assertSame(friends, find(router, HttpVerb.GET, "/persons/phone_numbers/friends"));
+        assertEquals("phone_numbers", capture("/persons/phone_numbers/friends", 0));
+    }
+
+    @Test
+    public void legacyCapturingGroups() {
+        Handler persons = new Handler();
+        Handler pets = new Handler();
+        Router router = new Router().add("/persons/([0-9]+)", persons).add("/pets/([0-9]{0,3})", pets);
+
+        assertSame(persons, find(router, HttpVerb.GET, "/persons/1911"));
+        assertNull(find(router, HttpVerb.GET, "/persons/a123"));
+        assertNull(find(router, HttpVerb.GET, "/persons/"));
+        assertSame(pets, find(router, HttpVerb.GET, "/pets/123"));
+        assertSame(pets, find(router, HttpVerb.GET, "/pets/"));
+        assertNull(find(router, HttpVerb.GET, "/pets/1234"));
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void malformedRegularExpression() {
+        new Router().add("/persons/{id:[[0-9]{0,3}}", new Handler());
+    }
+
+    @Test
+    public void wildcards() {
+        Handler files = new Handler();
+        Handler readme = new Handler();
+        Router router = new Router().add("/files/*path", files).add("/files/README", readme);
+
+        assertSame(readme, find(router, HttpVerb.GET, "/files/README"));
+        assertSame(files, find(router, HttpVerb.GET, "/files/a/b/c.txt"));
+        assertEquals("a/b/c.txt", capture("/files/a/b/c.txt", 0));
+        assertSame(files, find(router, HttpVerb.GET, "/files/"));
+        assertNull(find(router, HttpVerb.GET, "/files"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wildcardMustBeLast() {
+        new Router().add("/files/*/meta", new Handler());
+    }
+
+    @Test
+    public void perVerbRoutes() {
+        Handler get = new Handler();
+        Handler post = new Handler();
+        Handler any = new Handler();
+        Router router = new Router().add("GET /persons/{id}", get).add(HttpVerb.POST, "/persons/{id}", post)
+                .add("/persons/{id}", any);
+
+        assertSame(get, find(router, HttpVerb.GET, "/persons/1"));
+        assertSame(post, find(router, HttpVerb.POST, "/persons/1"));
+        assertSame(any, find(router, HttpVerb.DELETE, "/persons/1"));
+
+        router = new Router().add("GET /persons", get);
+        assertNull(find(router, HttpVerb.POST, "/persons"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateRoute() {
+        new Router().add("GET /persons", new Handler()).add(HttpVerb.GET, "/persons", new Handler());
+    }
+
+    @Test
+    public void thousandRoutes() {
+        Router router = new Router();
+        Handler[] handlers = new Handler[1000];
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = new Handler();
+            if (i % 2 == 0) {
+                router.add("/api/v" + (i % 7) + "/resource" + i + "/{id:int}/items", handlers[i]);
+            } else {
+                router.add("/api/v" + (i % 7) + "/resource" + i, handlers[i]);
+            }
+        }
+        for (int i = 0; i < handlers.length; i++) {
+            if (i % 2 == 0) {
+                String path = "/api/v" + (i % 7) + "/resource" + i + "/" + i + "/items";
+                assertSame(handlers[i], find(router, HttpVerb.GET, path));
+                assertEquals(String.valueOf(i), capture(path, 0));
+            } else {
+                assertSame(handlers[i], find(router, HttpVerb.GET, "/api/v" + (i % 7) + "/resource" + i));
+            }
+        }
+        assertNull(find(router, HttpVerb.GET, "/api/v0/resource1000"));
+    }
+}
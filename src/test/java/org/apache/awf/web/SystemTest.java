@@ -20,11 +20,15 @@
 package org.apache.awf.web;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.UnresolvedAddressException;
@@ -35,7 +39,11 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 import com.ning.http.client.AsyncCompletionHandler;
 import com.ning.http.client.AsyncHttpClient;
 import com.ning.http.client.Response;
@@ -43,6 +51,8 @@ import org.apache.awf.configuration.Configuration;
 import org.apache.awf.io.IOLoop;
 import org.apache.awf.io.timeout.Timeout;
 import org.apache.awf.web.SystemTestHandlers.*;
+import org.apache.awf.web.handler.StaticFileCache;
+import org.apache.awf.web.http.HttpServerDescriptor;
 import org.apache.awf.web.http.client.AsynchronousHttpClient;
 import org.apache.awf.web.http.protocol.HttpStatus;
 import org.apache.http.Header;
@@ -73,12 +83,14 @@ import static org.apache.awf.web.SystemTestHandlers.*;
 public class SystemTest {
 
     private static final int PORT = 8081;
+    private static final int PRECOMPRESSED_PORT = 8085;
+    private static final int PRECOMPRESSED_CACHED_PORT = 8087;
 
     @BeforeClass
     public static void setup() {
 
         final Configuration configuration = new Configuration();
-        configuration.setCreateETags(true).setStaticDirectory("src/test/resources");
+        configuration.setCreateETags(true).setStaticDirectory("src/test/resources").setCompressResponses(true);
         configuration.addHandler("/", new ExampleRequestHandler());
         configuration.addHandler("/w", new WRequestHandler());
         configuration.addHandler("/ww", new WWRequestHandler());
@@ -95,10 +107,12 @@ public class SystemTest {
         configuration.addHandler("/moved_perm", new MovedPermanentlyRequestHandler());
         configuration.addHandler("/static_file_handler", new UserDefinedStaticContentHandler());
         configuration.addHandler("/450kb_body", new _450KBResponseEntityRequestHandler());
+        configuration.addHandler("/mixed_writes", new MixedWritesRequestHandler());
         configuration.addHandler("/echo", new EchoingPostBodyRequestHandler());
         configuration.addHandler("/authenticated", new AuthenticatedRequestHandler());
         configuration.addHandler("/query_params", new QueryParamsRequestHandler());
         configuration.addHandler("/chunked", new ChunkedRequestHandler());
+        configuration.addHandler("/upload", new StreamingUploadRequestHandler());
 
         /*
          * Start server instance from a new thread because the start invocation
@@ -516,7 +530,7 @@ public class SystemTest {
         assertEquals(HttpStatus.SUCCESS_OK.code(), response.getStatusLine().getStatusCode());
         assertEquals(new ProtocolVersion("HTTP", 1, 1), response.getStatusLine().getProtocolVersion());
         assertEquals("OK", response.getStatusLine().getReasonPhrase());
-        assertEquals(7, response.getAllHeaders().length);
+        assertEquals(8, response.getAllHeaders().length);
 
         String payLoad = convertStreamToString(response.getEntity().getContent()).trim();
         assertEquals("test.txt", payLoad);
@@ -533,7 +547,7 @@ public class SystemTest {
         assertEquals(HttpStatus.SUCCESS_OK.code(), response.getStatusLine().getStatusCode());
         assertEquals(new ProtocolVersion("HTTP", 1, 1), response.getStatusLine().getProtocolVersion());
         assertEquals("OK", response.getStatusLine().getReasonPhrase());
-        assertEquals(7, response.getAllHeaders().length);
+        assertEquals(8, response.getAllHeaders().length);
         assertEquals("90048", response.getFirstHeader("Content-Length").getValue());
         
         // TODO: Correct this type!
@@ -552,11 +566,153 @@ public class SystemTest {
         assertEquals(HttpStatus.SUCCESS_OK.code(), response.getStatusLine().getStatusCode());
         assertEquals(new ProtocolVersion("HTTP", 1, 1), response.getStatusLine().getProtocolVersion());
         assertEquals("OK", response.getStatusLine().getReasonPhrase());
-        assertEquals(7, response.getAllHeaders().length);
+        assertEquals(8, response.getAllHeaders().length);
         assertEquals("image/jpeg", response.getFirstHeader("Content-Type").getValue());
         assertNotNull(response.getFirstHeader("Last-Modified"));
-        // TODO RS 101026 Verify that the actual body/entity is 2145094 bytes
-        // big (when we have support for "large" file)
+        assertEquals(2145066, EntityUtils.toByteArray(response.getEntity()).length);
+    }
+
+    @Test
+    public void staticFileRangeRequestTest() throws ClientProtocolException, IOException {
+
+        DefaultHttpClient httpclient = new DefaultHttpClient();
+        HttpGet httpget = new HttpGet("http://localhost:" + PORT + "/src/test/resources/test.txt");
+        httpget.setHeader("Range", "bytes=0-3");
+        HttpResponse response = httpclient.execute(httpget);
+
+        assertEquals(HttpStatus.SUCCESS_PARTIAL_CONTENT.code(), response.getStatusLine().getStatusCode());
+        assertEquals("bytes", response.getFirstHeader("Accept-Ranges").getValue());
+        assertEquals("bytes 0-3/8", response.getFirstHeader("Content-Range").getValue());
+        assertEquals("4", response.getFirstHeader("Content-Length").getValue());
+        assertEquals("test", EntityUtils.toString(response.getEntity()));
+    }
+
+    @Test
+    public void staticFileMultipleRangesRequestTest() throws ClientProtocolException, IOException {
+
+        DefaultHttpClient httpclient = new DefaultHttpClient();
+        HttpGet httpget = new HttpGet("http://localhost:" + PORT + "/src/test/resources/test.txt");
+        httpget.setHeader("Range", "bytes=0-3,-3");
+        HttpResponse response = httpclient.execute(httpget);
+
+        assertEquals(HttpStatus.SUCCESS_PARTIAL_CONTENT.code(), response.getStatusLine().getStatusCode());
+        String contentType = response.getFirstHeader("Content-Type").getValue();
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+        String boundary = contentType.substring(contentType.indexOf('=') + 1);
+        String body = EntityUtils.toString(response.getEntity());
+        assertEquals(response.getFirstHeader("Content-Length").getValue(), String.valueOf(body.length()));
+        assertEquals("\r\n--" + boundary + "\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Range: bytes 0-3/8\r\n\r\ntest"
+                + "\r\n--" + boundary + "\r\nContent-Type: text/plain; charset=utf-8\r\nContent-Range: bytes 5-7/8\r\n\r\ntxt"
+                + "\r\n--" + boundary + "--\r\n", body);
+    }
+
+    @Test
+    public void staticFileUnsatisfiableRangeRequestTest() throws ClientProtocolException, IOException {
+
+        DefaultHttpClient httpclient = new DefaultHttpClient();
+        HttpGet httpget = new HttpGet("http://localhost:" + PORT + "/src/test/resources/test.txt");
+        httpget.setHeader("Range", "bytes=8-");
+        HttpResponse response = httpclient.execute(httpget);
+
+        assertEquals(HttpStatus.CLIENT_ERROR_REQUESTED_RANGE_NOT_SATISFIABLE.code(), response.getStatusLine()
+                .getStatusCode());
+        assertEquals("bytes */8", response.getFirstHeader("Content-Range").getValue());
+    }
+
+    @Test
+    public void staticFileIfRangeRequestTest() throws ClientProtocolException, IOException {
+
+        DefaultHttpClient httpclient = new DefaultHttpClient();
+        HttpGet httpget = new HttpGet("http://localhost:" + PORT + "/src/test/resources/test.txt");
+        httpget.setHeader("Range", "bytes=0-3");
+        httpget.setHeader("If-Range", "Sat, 01 Jan 2000 00:00:00 GMT");
+        HttpResponse response = httpclient.execute(httpget);
+
+        // changed since, the complete file is sent
+        assertEquals(HttpStatus.SUCCESS_OK.code(), response.getStatusLine().getStatusCode());
+        assertEquals("test.txt", EntityUtils.toString(response.getEntity()));
+        String lastModified = response.getFirstHeader("Last-Modified").getValue();
+
+        httpget.setHeader("If-Range", lastModified);
+        response = httpclient.execute(httpget);
+        assertEquals(HttpStatus.SUCCESS_PARTIAL_CONTENT.code(), response.getStatusLine().getStatusCode());
+        assertEquals("test", EntityUtils.toString(response.getEntity()));
+    }
+
+    @Test
+    public void precompressedStaticFileRequestTest() throws Exception {
+        precompressedStaticFileRequest(new Configuration(), PRECOMPRESSED_PORT);
+    }
+
+    @Test
+    public void precompressedCachedStaticFileRequestTest() throws Exception {
+        precompressedStaticFileRequest(new Configuration().setStaticCacheSize(1024 * 1024), PRECOMPRESSED_CACHED_PORT);
+    }
+
+    private void precompressedStaticFileRequest(Configuration configuration, int port) throws Exception {
+
+        File file = new File("src/test/resources/precompressed.txt");
+        File gzip = new File("src/test/resources/precompressed.txt.gz");
+        File brotli = new File("src/test/resources/precompressed.txt.br");
+        // a server of its own, the other static files are sent without "Vary"
+        HttpServer server = new HttpServer(configuration.setStaticDirectory("src/test/resources")
+                .setStaticPrecompressed(true));
+        server.bind(port);
+        server.start(1);
+        try {
+            Files.write("plain", file, Charsets.UTF_8);
+            Files.write("gzipped", gzip, Charsets.UTF_8);
+            Files.write("brotli", brotli, Charsets.UTF_8);
+            file.setLastModified(1000000000000L);
+            gzip.setLastModified(1000000000000L);
+            brotli.setLastModified(1000000000000L);
+
+            DefaultHttpClient httpclient = new DefaultHttpClient();
+            HttpGet httpget = new HttpGet("http://localhost:" + port + "/src/test/resources/precompressed.txt");
+            httpget.setHeader("Accept-Encoding", "gzip, br");
+            HttpResponse response = httpclient.execute(httpget);
+            assertEquals(HttpStatus.SUCCESS_OK.code(), response.getStatusLine().getStatusCode());
+            assertEquals("br", response.getFirstHeader("Content-Encoding").getValue());
+            assertEquals("Accept-Encoding", response.getFirstHeader("Vary").getValue());
+            assertEquals("text/plain; charset=utf-8", response.getFirstHeader("Content-Type").getValue());
+            assertEquals("brotli", EntityUtils.toString(response.getEntity()));
+
+            httpget.setHeader("Accept-Encoding", "gzip, br;q=0");
+            response = httpclient.execute(httpget);
+            assertEquals("gzip", response.getFirstHeader("Content-Encoding").getValue());
+            assertEquals("gzipped", EntityUtils.toString(response.getEntity()));
+
+            // stale sidecars are ignored, once the sidecars are checked again
+            gzip.setLastModified(999999999000L);
+            Thread.sleep(StaticFileCache.DEFAULT_REVALIDATE_INTERVAL);
+            response = httpclient.execute(httpget);
+            assertNull(response.getFirstHeader("Content-Encoding"));
+            assertEquals("Accept-Encoding", response.getFirstHeader("Vary").getValue());
+            assertEquals("plain", EntityUtils.toString(response.getEntity()));
+
+            httpget.removeHeaders("Accept-Encoding");
+            response = httpclient.execute(httpget);
+            assertNull(response.getFirstHeader("Content-Encoding"));
+            assertEquals("plain", EntityUtils.toString(response.getEntity()));
+        } finally {
+            server.stop();
+            file.delete();
+            gzip.delete();
+            brotli.delete();
+        }
+    }
+
+    @Test
+    public void largeStaticFileRangeRequestTest() throws ClientProtocolException, IOException {
+
+        DefaultHttpClient httpclient = new DefaultHttpClient();
+        HttpGet httpget = new HttpGet("http://localhost:" + PORT + "/src/test/resources/f4_impact.jpg");
+        httpget.setHeader("Range", "bytes=1000000-");
+        HttpResponse response = httpclient.execute(httpget);
+
+        assertEquals(HttpStatus.SUCCESS_PARTIAL_CONTENT.code(), response.getStatusLine().getStatusCode());
+        assertEquals("bytes 1000000-2145065/2145066", response.getFirstHeader("Content-Range").getValue());
+        assertEquals(1145066, EntityUtils.toByteArray(response.getEntity()).length);
     }
 
     @Test
@@ -614,6 +770,86 @@ public class SystemTest {
         channel.close();
     }
 
+    @Test
+    public void pipelinedRequestsTest() throws IOException {
+
+        StringBuilder requests = new StringBuilder();
+        List<String> expectedBodies = new LinkedList<String>();
+        // more requests than fit into one read buffer
+        for (int i = 0; i < 30; i++) {
+            requests.append("GET /w HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            expectedBodies.add("1");
+            requests.append("POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: 5\r\n\r\nhe" + i % 10 + "lo");
+            expectedBodies.add("he" + i % 10 + "lo");
+        }
+        requests.append("GET /ww HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+        expectedBodies.add("12");
+
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(PORT));
+        try {
+            // all requests are sent at once, before any response is read
+            channel.write(ByteBuffer.wrap(requests.toString().getBytes("ISO-8859-1")));
+            channel.socket().setSoTimeout(3000);
+            String responses = convertStreamToString(channel.socket().getInputStream());
+
+            String[] parts = responses.split("HTTP/1.1 200 OK\n");
+            assertEquals(expectedBodies.size() + 1, parts.length);
+            for (int i = 0; i < expectedBodies.size(); i++) {
+                String part = parts[i + 1];
+                assertEquals(expectedBodies.get(i), part.substring(part.indexOf("\n\n") + 2).trim());
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Test
+    public void streamedRequestBodyTest() throws IOException {
+
+        int length = 3 * (int) HttpServerDescriptor.MAX_BODY;
+        byte[] body = new byte[length];
+        long sum = 0;
+        for (int i = 0; i < length; i++) {
+            body[i] = (byte) (i * 31);
+            sum += body[i] & 0xff;
+        }
+        String headers = "POST /upload HTTP/1.1\r\nHost: localhost\r\nContent-Length: " + length
+                + "\r\nConnection: close\r\n\r\n";
+
+        Socket socket = new Socket("localhost", PORT);
+        try {
+            socket.setSoTimeout(10000);
+            OutputStream out = socket.getOutputStream();
+            out.write(headers.getBytes("ISO-8859-1"));
+            out.write(body);
+            out.flush();
+            String response = convertStreamToString(socket.getInputStream());
+
+            assertTrue(response, response.startsWith("HTTP/1.1 200 OK"));
+            assertEquals(length + " " + sum + " null", response.substring(response.indexOf("\n\n") + 2).trim());
+        } finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void bufferedRequestBodyTooLargeTest() throws IOException {
+
+        String request = "POST /echo HTTP/1.1\r\nHost: localhost\r\nContent-Length: "
+                + (HttpServerDescriptor.MAX_BODY + 1) + "\r\n\r\nabc";
+
+        Socket socket = new Socket("localhost", PORT);
+        try {
+            socket.setSoTimeout(3000);
+            socket.getOutputStream().write(request.getBytes("ISO-8859-1"));
+            String response = convertStreamToString(socket.getInputStream());
+
+            assertTrue(response, response.startsWith("HTTP/1.1 413 Request Entity Too Large"));
+        } finally {
+            socket.close();
+        }
+    }
+
     @Test
     public void userDefinedStaticContentHandlerTest() throws ClientProtocolException, IOException {
 
@@ -765,6 +1001,62 @@ public class SystemTest {
     // assertEquals(0, latch.getCount());
     // }
 
+    @Test
+    public void compressedResponseTest() throws ClientProtocolException, IOException {
+
+        DefaultHttpClient httpclient = new DefaultHttpClient();
+        HttpGet httpget = new HttpGet("http://localhost:" + PORT + "/450kb_body");
+        httpget.setHeader("Accept-Encoding", "gzip");
+        HttpResponse response = httpclient.execute(httpget);
+
+        assertEquals(HttpStatus.SUCCESS_OK.code(), response.getStatusLine().getStatusCode());
+        assertEquals("gzip", response.getFirstHeader("Content-Encoding").getValue());
+        assertEquals("chunked", response.getFirstHeader("Transfer-Encoding").getValue());
+        assertEquals("Accept-Encoding", response.getFirstHeader("Vary").getValue());
+        assertNull(response.getFirstHeader("Content-Length"));
+        byte[] compressed = EntityUtils.toByteArray(response.getEntity());
+        assertTrue(compressed.length < 450 * 1024 / 10);
+        String payLoad = convertStreamToString(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+        assertEquals(_450KBResponseEntityRequestHandler.entity, payLoad.trim());
+
+        httpget.setHeader("Accept-Encoding", "deflate, gzip;q=0");
+        response = httpclient.execute(httpget);
+        assertEquals("deflate", response.getFirstHeader("Content-Encoding").getValue());
+        payLoad = convertStreamToString(new InflaterInputStream(response.getEntity().getContent()));
+        assertEquals(_450KBResponseEntityRequestHandler.entity, payLoad.trim());
+
+        // small bodies are sent as they are
+        httpget = new HttpGet("http://localhost:" + PORT + "/");
+        httpget.setHeader("Accept-Encoding", "gzip");
+        response = httpclient.execute(httpget);
+        assertNull(response.getFirstHeader("Content-Encoding"));
+        assertEquals(expectedPayload, EntityUtils.toString(response.getEntity()));
+    }
+
+    @Test
+    public void compressedMixedWritesTest() throws ClientProtocolException, IOException {
+
+        DefaultHttpClient httpclient = new DefaultHttpClient();
+        HttpGet httpget = new HttpGet("http://localhost:" + PORT + "/mixed_writes?tail=1");
+        httpget.setHeader("Accept-Encoding", "gzip");
+        HttpResponse response = httpclient.execute(httpget);
+
+        assertEquals(HttpStatus.SUCCESS_OK.code(), response.getStatusLine().getStatusCode());
+        assertEquals("gzip", response.getFirstHeader("Content-Encoding").getValue());
+        assertNull(response.getFirstHeader("Content-Length"));
+        String payLoad = convertStreamToString(new GZIPInputStream(response.getEntity().getContent()));
+        assertEquals(MixedWritesRequestHandler.HEAD + MixedWritesRequestHandler.BUFFER + "tail, no file",
+                payLoad.trim());
+
+        // the length covers both writes
+        httpget = new HttpGet("http://localhost:" + PORT + "/mixed_writes");
+        response = httpclient.execute(httpget);
+        assertNull(response.getFirstHeader("Content-Encoding"));
+        assertEquals("2048", response.getFirstHeader("Content-Length").getValue());
+        assertEquals(MixedWritesRequestHandler.HEAD + MixedWritesRequestHandler.BUFFER,
+                EntityUtils.toString(response.getEntity()));
+    }
+
     @Test
     public void _450KBEntityTest() throws ClientProtocolException, IOException {
 
@@ -20,13 +20,17 @@
 package org.apache.awf.web;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 
 import org.apache.awf.annotation.Asynchronous;
 import org.apache.awf.annotation.Authenticated;
 import org.apache.awf.web.AsyncResult;
+import org.apache.awf.io.IOLoop;
 import org.apache.awf.web.handler.RequestHandler;
+import org.apache.awf.web.handler.StreamingBodyHandler;
 import org.apache.awf.web.http.HttpException;
 import org.apache.awf.web.http.HttpRequest;
+import org.apache.awf.web.http.RequestBodyStream;
 import org.apache.awf.web.http.protocol.HttpStatus;
 
 /**
@@ -185,6 +189,29 @@ public class SystemTestHandlers {
         }
     }
 
+    /**
+     * Writes a string then a buffer, and with "tail" also a string and a file
+     * afterwards, which is rejected if the body is being compressed.
+     */
+    public static class MixedWritesRequestHandler extends RequestHandler {
+        public static final String HEAD = _450KBResponseEntityRequestHandler.entity.substring(0, 1024);
+        public static final String BUFFER = HEAD.replace('a', 'b');
+
+        @Override
+        public void get(HttpRequest request, org.apache.awf.web.http.HttpResponse response) {
+            response.write(HEAD);
+            response.write(ByteBuffer.wrap(BUFFER.getBytes()));
+            if (request.getParameter("tail") != null) {
+                response.write("tail");
+                try {
+                    response.write(new File("src/test/resources/test.txt"));
+                } catch (IllegalStateException e) {
+                    response.write(", no file");
+                }
+            }
+        }
+    }
+
     public static class EchoingPostBodyRequestHandler extends RequestHandler {
         @Override
         public void post(HttpRequest request, org.apache.awf.web.http.HttpResponse response) {
@@ -192,6 +219,36 @@ public class SystemTestHandlers {
         }
     }
 
+    /**
+     * Counts the bytes of the streamed body, pausing after every part and
+     * resuming from an IOLoop callback.
+     */
+    public static class StreamingUploadRequestHandler extends RequestHandler implements StreamingBodyHandler {
+
+        private long count;
+        private long sum;
+
+        @Override
+        public void onBodyData(HttpRequest request, ByteBuffer data, final RequestBodyStream stream) {
+            count += data.remaining();
+            while (data.hasRemaining()) {
+                sum += data.get() & 0xff;
+            }
+            stream.pause();
+            IOLoop.INSTANCE.addCallback(new AsyncCallback() {
+                @Override
+                public void onCallback() {
+                    stream.resume();
+                }
+            });
+        }
+
+        @Override
+        public void post(HttpRequest request, org.apache.awf.web.http.HttpResponse response) {
+            response.write(count + " " + sum + " " + request.getBody());
+        }
+    }
+
     public static class AuthenticatedRequestHandler extends RequestHandler {
         @Override
         @Authenticated
@@ -20,8 +20,11 @@
 package org.apache.awf.web.handler;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
+import org.apache.awf.annotation.Lifecycle;
 import org.apache.awf.web.handler.RequestHandler;
 import org.apache.awf.web.handler.RequestHandlerFactory;
 import org.junit.Test;
@@ -35,6 +38,18 @@ public class RequestHandlerFactoryTest {
         // Do nothing.
     }
 
+    @Lifecycle(Lifecycle.Scope.SINGLETON)
+    private static class SingletonRequestHandler extends RequestHandler {
+    }
+
+    @Lifecycle(Lifecycle.Scope.PER_IOLOOP)
+    private static class PerLoopRequestHandler extends RequestHandler {
+    }
+
+    @Lifecycle(value = Lifecycle.Scope.POOLED, poolSize = 1)
+    private static class PooledRequestHandler extends RequestHandler {
+    }
+
     @Test
     public void testCloneHandler() {
 
@@ -50,4 +65,65 @@ public class RequestHandlerFactoryTest {
         RequestHandler created = RequestHandlerFactory.cloneHandler(null);
         assertNull(created);
     }
+
+    @Test
+    public void testCloneProvider() {
+
+        TestRequestHandler handler = new TestRequestHandler();
+        RequestHandlerFactory.Provider provider = RequestHandlerFactory.providerFor(handler);
+
+        RequestHandler first = provider.acquire();
+        assertEquals(handler.getClass(), first.getClass());
+        assertNotSame(handler, first);
+        assertNotSame(first, provider.acquire());
+    }
+
+    @Test
+    public void testSingletonProvider() {
+
+        SingletonRequestHandler handler = new SingletonRequestHandler();
+        RequestHandlerFactory.Provider provider = RequestHandlerFactory.providerFor(handler);
+
+        assertSame(handler, provider.acquire());
+        assertSame(handler, provider.acquire());
+    }
+
+    @Test
+    public void testPerIOLoopProvider() throws InterruptedException {
+
+        PerLoopRequestHandler handler = new PerLoopRequestHandler();
+        final RequestHandlerFactory.Provider provider = RequestHandlerFactory.providerFor(handler);
+
+        RequestHandler first = provider.acquire();
+        assertNotSame(handler, first);
+        assertSame(first, provider.acquire());
+
+        final RequestHandler[] other = new RequestHandler[1];
+        Thread thread = new Thread() {
+            @Override
+            public void run() {
+                other[0] = provider.acquire();
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotSame(first, other[0]);
+    }
+
+    @Test
+    public void testPooledProvider() {
+
+        PooledRequestHandler handler = new PooledRequestHandler();
+        RequestHandlerFactory.Provider provider = RequestHandlerFactory.providerFor(handler);
+
+        RequestHandler first = provider.acquire();
+        RequestHandler second = provider.acquire();
+        assertNotSame(handler, first);
+        assertNotSame(first, second);
+
+        RequestHandlerFactory.release(first);
+        RequestHandlerFactory.release(second); // pool is full, dropped
+        assertSame(first, provider.acquire());
+        assertNotSame(second, provider.acquire());
+    }
 }
@@ -60,10 +60,26 @@ public class RequestHandlerTest {
 
     }
 
+    static class RequestHandler3 extends RequestHandler1 {
+
+        @Override
+        public void get(HttpRequest request, HttpResponse response) {
+        }
+    }
+
     private class TestRequestHandler extends RequestHandler {
         // Do nothing.
     }
 
+    @Test
+    public void testAnnotationsAreResolvedPerClass() {
+
+        assertTrue(new RequestHandler1().isMethodAsynchronous(HttpVerb.GET));
+        assertFalse(new RequestHandler3().isMethodAsynchronous(HttpVerb.GET));
+        assertFalse(new RequestHandler3().isMethodAuthenticated(HttpVerb.GET));
+        assertTrue(new RequestHandler1().isMethodAuthenticated(HttpVerb.GET));
+    }
+
     @Test
     public void testAsynchronousAnnotations() {
 
@@ -0,0 +1,182 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.handler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.awf.web.http.HttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class StaticFileCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() {
+        dir = Files.createTempDir();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    private File file(String name, int length) throws IOException {
+        File file = new File(dir, name);
+        Files.write(new byte[length], file);
+        return file;
+    }
+
+    private final ArgumentCaptor<ByteBuffer> content = ArgumentCaptor.forClass(ByteBuffer.class);
+    private final ArgumentCaptor<Runnable> onRelease = ArgumentCaptor.forClass(Runnable.class);
+
+    /** Sends the entry to a mock response, returns the content written. */
+    private ByteBuffer send(StaticFileCache.Entry entry) {
+        HttpResponse response = mock(HttpResponse.class);
+        assertTrue(entry.writeTo(response));
+        verify(response).write(content.capture(), onRelease.capture());
+        return content.getValue();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void loadAndGet() throws IOException {
+        File file = new File(dir, "a.txt");
+        Files.write("hello", file, Charsets.UTF_8);
+        StaticFileCache cache = new StaticFileCache(1024, 1024);
+
+        assertNull(cache.get("/a.txt"));
+        StaticFileCache.Entry entry = cache.load("/a.txt", file, "text/plain");
+        assertSame(entry, cache.get("/a.txt"));
+        assertEquals(5, cache.size());
+        assertEquals(file.lastModified(), entry.getLastModified());
+        assertFalse(entry.isMapped());
+        // each response gets its own view
+        assertArrayEquals("hello".getBytes(), bytes(send(entry)));
+        assertArrayEquals("hello".getBytes(), bytes(send(entry)));
+        String headers = new String(entry.getHeaders(), Charsets.ISO_8859_1);
+        assertTrue(headers.contains("Content-Type: text/plain\r\n"));
+        assertTrue(headers.contains("Cache-Control: public\r\n"));
+    }
+
+    @Test
+    public void mediumSizedFilesAreMapped() throws IOException {
+        File file = new File(dir, "b.txt");
+        Files.write("0123456789", file, Charsets.UTF_8);
+        StaticFileCache cache = new StaticFileCache(1024, 5, 10, 0);
+
+        StaticFileCache.Entry entry = cache.load("/b.txt", file, "text/plain");
+        assertTrue(entry.isMapped());
+        assertEquals(10, cache.size());
+        assertArrayEquals("0123456789".getBytes(), bytes(send(entry)));
+
+        Files.write("01234567890", file, Charsets.UTF_8);
+        assertNull(cache.get("/b.txt"));
+        assertNull(cache.load("/b.txt", file, "text/plain"));
+    }
+
+    @Test
+    public void evictedEntriesAreFreedOnceSent() throws IOException {
+        StaticFileCache cache = new StaticFileCache(100, 100);
+        StaticFileCache.Entry a = cache.load("/a", file("a", 100), "text/plain");
+        ByteBuffer sent = send(a);
+
+        cache.load("/b", file("b", 100), "text/plain");
+        assertNull(cache.get("/a"));
+        // still referenced by the response
+        assertEquals(100, sent.remaining());
+        onRelease.getValue().run();
+        assertFalse(a.writeTo(mock(HttpResponse.class)));
+    }
+
+    @Test
+    public void largeFilesAreNotCached() throws IOException {
+        StaticFileCache cache = new StaticFileCache(1024, 100);
+
+        assertNull(cache.load("/large", file("large", 101), "text/plain"));
+        assertNull(cache.get("/large"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedFilesAreEvicted() throws IOException {
+        StaticFileCache cache = new StaticFileCache(300, 100);
+        cache.load("/a", file("a", 100), "text/plain");
+        cache.load("/b", file("b", 100), "text/plain");
+        cache.load("/c", file("c", 100), "text/plain");
+        assertNotNull(cache.get("/a"));
+
+        cache.load("/d", file("d", 100), "text/plain");
+        assertEquals(300, cache.size());
+        assertNull(cache.get("/b"));
+        assertNotNull(cache.get("/a"));
+        assertNotNull(cache.get("/c"));
+        assertNotNull(cache.get("/d"));
+    }
+
+    @Test
+    public void modifiedFilesAreInvalidated() throws IOException {
+        StaticFileCache cache = new StaticFileCache(1024, 1024, 0);
+        File file = file("a", 10);
+        file.setLastModified(1000000000000L);
+        cache.load("/a", file, "text/plain");
+        assertNotNull(cache.get("/a"));
+
+        file.setLastModified(1000000010000L);
+        assertNull(cache.get("/a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void deletedFilesAreInvalidated() throws IOException {
+        StaticFileCache cache = new StaticFileCache(1024, 1024, 0);
+        File file = file("a", 10);
+        cache.load("/a", file, "text/plain");
+
+        file.delete();
+        assertNull(cache.get("/a"));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test cases for {@link HttpHeaderMap}.
+ */
+public class HttpHeaderMapTest {
+
+    @Test
+    public void testKnownNames() {
+        for (int i = 0; i < HttpHeaderMap.KNOWN_NAMES.length; i++) {
+            assertEquals(i, HttpHeaderMap.knownIndex(HttpHeaderMap.KNOWN_NAMES[i]));
+            assertEquals(i, HttpHeaderMap.knownIndex(HttpHeaderMap.KNOWN_NAMES[i].toUpperCase()));
+        }
+        assertEquals(-1, HttpHeaderMap.knownIndex("x-unknown"));
+    }
+
+    @Test
+    public void testKnownNamesFromHash() {
+        for (int i = 0; i < HttpHeaderMap.KNOWN_NAMES.length; i++) {
+            String name = HttpHeaderMap.KNOWN_NAMES[i].toUpperCase();
+            int hash = 0;
+            for (int j = 0; j < name.length(); j++) {
+                hash = HttpHeaderMap.hash(hash, name.charAt(j));
+            }
+            assertEquals(i, HttpHeaderMap.knownIndex(hash, name.length()));
+        }
+        assertEquals(-1, HttpHeaderMap.knownIndex(HttpHeaderMap.hash(0, 'x'), 1));
+    }
+
+    @Test
+    public void testAddKnownIndex() {
+        HttpHeaderMap headers = new HttpHeaderMap();
+        headers.add(HttpHeaderMap.knownIndex("cookie"), "a=1");
+        headers.add("cookie", "b=2");
+
+        assertEquals(Arrays.asList("a=1", "b=2"), headers.getAll("Cookie"));
+        assertEquals("a=1;b=2", headers.asMap().get("cookie"));
+    }
+
+    @Test
+    public void testCaseInsensitiveLookup() {
+        HttpHeaderMap headers = new HttpHeaderMap();
+        headers.add("host", "localhost");
+        headers.add("x-custom", "value");
+
+        assertEquals("localhost", headers.get("Host"));
+        assertEquals("value", headers.get("X-Custom"));
+        assertTrue(headers.contains("X-CUSTOM"));
+        assertFalse(headers.contains("x-other"));
+        assertNull(headers.get("x-other"));
+        assertEquals(Collections.emptyList(), headers.getAll("x-other"));
+    }
+
+    @Test
+    public void testRepeatedHeaders() {
+        HttpHeaderMap headers = new HttpHeaderMap();
+        headers.add("cookie", "a=1");
+        headers.add("x-forwarded", "10.0.0.1");
+        headers.add("cookie", "b=2");
+        headers.add("x-forwarded", "10.0.0.2");
+        headers.add("cookie", "c=3");
+
+        assertEquals(Arrays.asList("a=1", "b=2", "c=3"), headers.getAll("Cookie"));
+        assertEquals("a=1;b=2;c=3", headers.get("cookie"));
+        assertEquals(Arrays.asList("10.0.0.1", "10.0.0.2"), headers.getAll("x-forwarded"));
+
+        Map<String, String> map = headers.asMap();
+        assertEquals(2, map.size());
+        assertEquals("10.0.0.1;10.0.0.2", map.get("x-forwarded"));
+    }
+
+    @Test
+    public void testManyUnknownNames() {
+        HttpHeaderMap headers = new HttpHeaderMap();
+        for (int i = 0; i < 100; i++) {
+            headers.add("x-header-" + i, String.valueOf(i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(String.valueOf(i), headers.get("X-Header-" + i));
+        }
+        assertEquals(100, headers.asMap().size());
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.http;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.base.Charsets;
+
+import org.apache.awf.web.http.protocol.HttpStatus;
+import org.junit.Test;
+
+/**
+ * Test cases for {@link HttpHeaderWriter}.
+ */
+public class HttpHeaderWriterTest {
+
+    private static String asString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    @Test
+    public void testHeaderBlock() {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("Content-Type", "text/plain");
+        headers.put("X-Name", "café");
+
+        HttpHeaderWriter writer = new HttpHeaderWriter();
+        writer.reset(HttpStatus.SUCCESS_OK).line(HttpHeaderWriter.CONNECTION_CLOSE)
+                .header(HttpHeaderWriter.CONTENT_LENGTH, 1024).headers(headers).end();
+
+        assertEquals("HTTP/1.1 200 OK\r\nConnection: Close\r\nContent-Length: 1024\r\n"
+                + "Content-Type: text/plain\r\nX-Name: café\r\n\r\n", asString(writer.buffer()));
+    }
+
+    @Test
+    public void testResetAndGrow() {
+        HttpHeaderWriter writer = new HttpHeaderWriter();
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            value.append('x');
+        }
+        writer.reset(HttpStatus.SUCCESS_OK).header("X-Long", value.toString()).end();
+        assertEquals(HttpStatus.SUCCESS_OK.line().length() + 12 + 1000, writer.buffer().remaining());
+
+        writer.reset(HttpStatus.CLIENT_ERROR_NOT_FOUND).header(HttpHeaderWriter.CONTENT_LENGTH, 0).end();
+        assertEquals(HttpStatus.CLIENT_ERROR_NOT_FOUND.line() + "Content-Length: 0\r\n\r\n", asString(writer.buffer()));
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+
+import org.apache.awf.configuration.Configuration;
+import org.apache.awf.io.IOLoop;
+import org.apache.awf.web.Application;
+import org.apache.awf.web.handler.RequestHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+
+/**
+ * Closing a connection must release everything {@link HttpProtocol} keeps for
+ * it, whatever the reason.
+ */
+public class HttpProtocolCloseTest {
+
+    private File file;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private SocketChannel channel;
+    private IOLoop ioLoop;
+    private HttpProtocol protocol;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("awf-transfer", ".bin");
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(32 * 1024 * 1024); // more than the socket buffers hold
+        raf.close();
+
+        server = ServerSocketChannel.open();
+        server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        client = SocketChannel.open(server.socket().getLocalSocketAddress());
+        channel = server.accept();
+        channel.configureBlocking(false);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        client.close();
+        channel.close();
+        server.close();
+        file.delete();
+    }
+
+    /**
+     * Sends a request for the file, whose response is too large to be sent at
+     * once.
+     */
+    private SelectionKey requestFile() throws Exception {
+        Map<String, RequestHandler> handlers = Maps.newHashMap();
+        handlers.put("/file", new RequestHandler() {
+            @Override
+            public void get(HttpRequest request, HttpResponse response) {
+                response.write(file);
+            }
+        });
+        Application application = new Application(handlers);
+        application.setConfiguration(new Configuration());
+        ioLoop = new IOLoop();
+        protocol = new HttpProtocol(ioLoop, application);
+        ioLoop.connectionAssigned(); // as if accepted by the protocol
+        SelectionKey key = ioLoop.addHandler(channel, protocol, SelectionKey.OP_READ, null);
+
+        client.write(ByteBuffer.wrap("GET /file HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(Charsets.ISO_8859_1)));
+        while (!protocol.isTracking(channel)) {
+            protocol.handleRead(key);
+        }
+        assertTrue(key.attachment() instanceof FileTransfer);
+        return key;
+    }
+
+    private void assertClosed() {
+        assertFalse(channel.isOpen());
+        assertFalse(protocol.isTracking(channel));
+        assertFalse(ioLoop.hasKeepAliveTimeout(channel));
+        assertEquals(0, ioLoop.getNumberOfConnections());
+    }
+
+    @Test
+    public void connectionClosedMidTransfer() throws Exception {
+        SelectionKey key = requestFile();
+
+        // reset instead of an orderly shutdown, so the next writes fail
+        client.socket().setSoLinger(true, 0);
+        client.close();
+        for (int i = 0; i < 1000 && channel.isOpen(); i++) {
+            protocol.handleWrite(key);
+            Thread.sleep(1);
+        }
+
+        assertClosed();
+    }
+
+    @Test
+    public void fileTruncatedMidTransfer() throws Exception {
+        SelectionKey key = requestFile();
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(1024);
+        raf.close();
+        // drained by the client, the socket accepts more but the file ends
+        ByteBuffer sink = ByteBuffer.allocate(64 * 1024);
+        client.configureBlocking(false);
+        for (int i = 0; i < 1000 && channel.isOpen(); i++) {
+            while (client.read(sink) > 0) {
+                sink.clear();
+            }
+            protocol.handleWrite(key);
+        }
+
+        assertClosed();
+    }
+
+}
@@ -22,10 +22,12 @@ package org.apache.awf.web.http;
 import com.google.common.collect.Maps;
 
 import org.apache.awf.io.IOLoop;
+import org.apache.awf.io.buffer.ByteBufferPool;
 import org.apache.awf.util.Closeables;
 import org.apache.awf.web.Application;
 import org.apache.awf.web.handler.RequestHandler;
 import org.apache.awf.web.http.HttpProtocol;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -56,12 +58,15 @@ public class HttpProtocolTest {
     private HttpProtocol protocol;
     private SelectionKey key;
     private SocketChannel socketChannel;
+    private ByteBufferPool bufferPool;
 
 
     @Before
     public void beforeTests(){
 
         ioLoop = Mockito.mock(IOLoop.class);
+        bufferPool = new ByteBufferPool();
+        Mockito.when(ioLoop.getBufferPool()).thenReturn(bufferPool);
         socketChannel = Mockito.mock(SocketChannel.class);
         key = new MySelectionKey(socketChannel);
         PowerMockito.mockStatic(Closeables.class);
@@ -71,15 +76,14 @@ public class HttpProtocolTest {
     @Test
     public void testHandleReadReachEOF() throws Exception {
 
-        ByteBuffer byteBuffer = ByteBuffer.allocate(10);
-        key.attach(byteBuffer);
-
         // See what happens when read returns -1
-        Mockito.when(socketChannel.read(byteBuffer)).thenReturn(-1);
+        Mockito.when(socketChannel.read(Mockito.any(ByteBuffer.class))).thenReturn(-1);
 
         protocol.handleRead(key);
 
-        Mockito.verify(socketChannel).read(byteBuffer);
+        Mockito.verify(socketChannel).read(Mockito.any(ByteBuffer.class));
+        // the read buffer went back to the pool
+        Assert.assertEquals(1, bufferPool.getNumberOfPooledBuffers());
 
         // CloseQuietly should have been called for this channel EOF
         PowerMockito.verifyStatic(Mockito.times(1));
@@ -19,8 +19,12 @@
  */
 package org.apache.awf.web.http;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 
+import org.apache.awf.web.http.protocol.HttpVerb;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -74,4 +78,30 @@ public class HttpRequestImplTest {
         request.getContentLength();
         Assert.assertTrue("Expect continue should be false when body is submitted", request.expectContinue());
     }
+
+    @Test
+    public void urlDecode() {
+        Assert.assertEquals("plain", HttpRequestImpl.urlDecode("plain", 0, 5));
+        Assert.assertEquals("a b c", HttpRequestImpl.urlDecode("a+b%20c", 0, 7));
+        Assert.assertEquals("\u00e5\u00e4\u00f6", HttpRequestImpl.urlDecode("x=%C3%A5%C3%A4%C3%B6", 2, 20));
+        // malformed escapes are kept
+        Assert.assertEquals("100%", HttpRequestImpl.urlDecode("100%", 0, 4));
+        Assert.assertEquals("%zz!", HttpRequestImpl.urlDecode("%zz%21", 0, 6));
+    }
+
+    @Test
+    public void parametersAreParsedOnFirstAccess() {
+        HttpRequestImpl request = new HttpRequestImpl();
+        request.setMethod(HttpVerb.GET);
+        request.setURI("/path?a=1&b=x+y;a=2&empty=&novalue&c=d=e");
+        request.setVersion("HTTP/1.1");
+
+        Assert.assertEquals("/path", request.getRequestedPath());
+        Assert.assertEquals("GET /path?a=1&b=x+y;a=2&empty=&novalue&c=d=e HTTP/1.1", request.getRequestLine());
+        Assert.assertEquals(Arrays.asList("1", "2"), new ArrayList<String>(request.getParameterValues("a")));
+        Assert.assertEquals("x y", request.getParameter("b"));
+        Assert.assertEquals("d=e", request.getParameter("c"));
+        Assert.assertNull(request.getParameter("empty"));
+        Assert.assertNull(request.getParameter("novalue"));
+    }
 }
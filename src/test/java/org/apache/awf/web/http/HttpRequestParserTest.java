@@ -111,6 +111,64 @@ public class HttpRequestParserTest {
     }
 
 
+    @Test
+    public void shouldTrimHeaderNames(){
+        String get = "GET /path HTTP/1.1\r\n"
+        + "Host : localhost\r\n"
+        + "X-Custom\t: some-value\r\n"
+        + "Accept-Enc";
+        HttpRequestImpl request = parser.parseRequestBuffer(ByteBuffer.wrap(get.getBytes()));
+        request = parser.parseRequestBuffer(ByteBuffer.wrap("oding  : gzip\r\n\r\n".getBytes()), request);
+
+        assertTrue(request.isFinished());
+        assertEquals("localhost", request.getHeader("Host"));
+        assertEquals("some-value", request.getHeader("X-Custom"));
+        assertEquals("gzip", request.getHeader("Accept-Encoding"));
+        assertEquals(3, request.getHeaders().size());
+    }
+
+    @Test
+    public void shouldRejectBodyLargerThanMaxBody(){
+        String post = "POST /upload HTTP/1.1\r\n"
+        + "Host: localhost\r\n"
+        + "Content-Length: " + (HttpServerDescriptor.MAX_BODY + 1) + "\r\n\r\n"
+        + "abc";
+        HttpRequestImpl request = parser.parseRequestBuffer(ByteBuffer.wrap(post.getBytes()));
+
+        assertTrue("Request should be finished when rejected", request.isFinished());
+        assertTrue(request.isBodyTooLarge());
+        assertFalse("Connection should not be kept alive", request.isKeepAlive());
+    }
+
+    @Test
+    public void shouldStreamChunkedBodyToHandler(){
+        final StringBuilder streamed = new StringBuilder();
+        final org.apache.awf.web.handler.StreamingBodyHandler handler = new org.apache.awf.web.handler.StreamingBodyHandler() {
+            public void onBodyData(HttpRequest request, ByteBuffer data, RequestBodyStream stream) {
+                while (data.hasRemaining()) {
+                    streamed.append((char) data.get());
+                }
+            }
+        };
+        parser = new HttpRequestParser(new HttpRequestParser.HeadersListener() {
+            public void headersParsed(HttpRequestImpl request) {
+                request.streamBodyTo(handler, new RequestBodyStream(null, null));
+            }
+        });
+        String post = "POST /upload HTTP/1.1\r\n"
+        + "Host: localhost\r\n"
+        + "Transfer-Encoding: chunked\r\n\r\n"
+        + "1a\r\nabcdefghijklmnopqrstuvwxyz\r\n"
+        + "10\r\n12345678";
+        HttpRequestImpl request = parser.parseRequestBuffer(ByteBuffer.wrap(post.getBytes()));
+        assertFalse(request.isFinished());
+        request = parser.parseRequestBuffer(ByteBuffer.wrap("90abcdef\r\n0\r\n\r\n".getBytes()), request);
+
+        assertTrue(request.isFinished());
+        assertEquals("abcdefghijklmnopqrstuvwxyz1234567890abcdef", streamed.toString());
+        assertNull(request.getBody());
+    }
+
     @Test
     public void shouldSupportChunkedEncodingOnPartialRequest(){
         String postFirst= "POST /path/script.cgi HTTP/1.0\r\n"
@@ -472,4 +530,26 @@ public class HttpRequestParserTest {
         Assert.assertEquals("value2", hr.getCookie("two"));
     }
 
+    @Test
+    public void shouldParseTokensSplitAcrossBuffers() {
+        String request = "DELETE /path/to/resource?a=1 HTTP/1.1\r\nHOST: localhost\r\n"
+                + "X-Custom-Header:   some value \r\n\r\n";
+        for (int split = 1; split < request.length(); split++) {
+            ByteBuffer first = ByteBuffer.wrap(request.substring(0, split).getBytes());
+            ByteBuffer second = ByteBuffer.wrap(request.substring(split).getBytes());
+
+            HttpRequestImpl parsed = parser.parseRequestBuffer(first);
+            // the first buffer is reused by the next read
+            Arrays.fill(first.array(), (byte) 'x');
+            parsed = parser.parseRequestBuffer(second, parsed);
+
+            assertEquals("split at " + split, "DELETE", parsed.getMethod().name());
+            assertEquals("split at " + split, "/path/to/resource", parsed.getRequestedPath());
+            assertEquals("split at " + split, "1", parsed.getParameter("a"));
+            assertEquals("split at " + split, "HTTP/1.1", parsed.getVersion());
+            assertEquals("split at " + split, "localhost", parsed.getHeader("Host"));
+            assertEquals("split at " + split, "some value", parsed.getHeader("x-custom-header"));
+        }
+    }
+
 }
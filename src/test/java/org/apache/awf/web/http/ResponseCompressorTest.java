@@ -0,0 +1,134 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.awf.web.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.awf.io.buffer.ByteBufferPool;
+import org.apache.awf.io.buffer.CompositeByteBuffer;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+public class ResponseCompressorTest {
+
+    private final DeflaterPool deflaters = new DeflaterPool(1, 6);
+    private final CompositeByteBuffer out = new CompositeByteBuffer(new ByteBufferPool(4096, 4096, 16));
+
+    private static byte[] json(int objects) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < objects; i++) {
+            sb.append("{\"id\":").append(i).append(",\"name\":\"item ").append(i).append("\"},");
+        }
+        return sb.append("{}]").toString().getBytes(Charsets.UTF_8);
+    }
+
+    /** Decodes the chunked transfer coding. */
+    private static byte[] dechunk(byte[] chunked) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        String s = new String(chunked, Charsets.ISO_8859_1);
+        int i = 0;
+        while (true) {
+            int crlf = s.indexOf("\r\n", i);
+            int length = Integer.parseInt(s.substring(i, crlf), 16);
+            if (length == 0) {
+                assertEquals("\r\n", s.substring(crlf + 2));
+                return body.toByteArray();
+            }
+            body.write(chunked, crlf + 2, length);
+            i = crlf + 2 + length;
+            assertEquals("\r\n", s.substring(i, i + 2));
+            i += 2;
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            return ByteStreams.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void gzip() throws IOException {
+        byte[] data = json(2000);
+        ResponseCompressor compressor = new ResponseCompressor(deflaters, "gzip");
+        compressor.write(ByteBuffer.wrap(data, 0, 1000), out);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length - 1000);
+        direct.put(data, 1000, data.length - 1000).flip();
+        compressor.write(direct, out);
+        assertEquals(0, direct.remaining());
+        compressor.finish(out);
+
+        byte[] compressed = dechunk(out.toByteArray());
+        assertTrue(compressed.length < data.length / 5);
+        assertArrayEquals(data, read(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        assertEquals(1, deflaters.size(true));
+    }
+
+    @Test
+    public void deflate() throws IOException {
+        byte[] data = json(100);
+        ResponseCompressor compressor = new ResponseCompressor(deflaters, "deflate");
+        compressor.write(ByteBuffer.wrap(data), out);
+        compressor.finish(out);
+
+        byte[] compressed = dechunk(out.toByteArray());
+        assertArrayEquals(data, read(new InflaterInputStream(new ByteArrayInputStream(compressed))));
+        assertEquals(1, deflaters.size(false));
+    }
+
+    @Test
+    public void deflatersAreReused() throws IOException {
+        ResponseCompressor compressor = new ResponseCompressor(deflaters, "gzip");
+        compressor.write(ByteBuffer.wrap(json(10)), out);
+        compressor.finish(out);
+        out.release();
+
+        // a reset deflater from the pool produces an independent stream
+        byte[] data = json(20);
+        compressor = new ResponseCompressor(deflaters, "gzip");
+        assertEquals(0, deflaters.size(true));
+        compressor.write(ByteBuffer.wrap(data), out);
+        compressor.finish(out);
+        byte[] compressed = dechunk(out.toByteArray());
+        assertArrayEquals(data, read(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+
+        // beyond its capacity the pool frees deflaters
+        new ResponseCompressor(deflaters, "gzip").release();
+        ResponseCompressor first = new ResponseCompressor(deflaters, "gzip");
+        ResponseCompressor second = new ResponseCompressor(deflaters, "gzip");
+        first.release();
+        second.release();
+        assertEquals(1, deflaters.size(true));
+    }
+}